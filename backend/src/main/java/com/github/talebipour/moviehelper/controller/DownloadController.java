@@ -1,27 +1,43 @@
 package com.github.talebipour.moviehelper.controller;
 
-import com.github.talebipour.moviehelper.exception.InternalServerError;
+import com.github.talebipour.moviehelper.exception.InvalidInputException;
+import com.github.talebipour.moviehelper.exception.PathNotFoundException;
+import com.github.talebipour.moviehelper.model.BufferPoolStatistics;
 import com.github.talebipour.moviehelper.model.DownloadStatus;
 import com.github.talebipour.moviehelper.model.FileModel;
+import com.github.talebipour.moviehelper.model.HostConnections;
 import com.github.talebipour.moviehelper.model.Subtitle;
 import com.github.talebipour.moviehelper.util.Downloader;
 import com.github.talebipour.moviehelper.util.FileUtil;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 @CrossOrigin
@@ -32,37 +48,106 @@ public class DownloadController {
 
     private final FileUtil fileUtil;
     private final Downloader downloader;
+    private final long streamWaitMillis;
+    private final long streamStallMillis;
 
     @Autowired
-    public DownloadController(FileUtil fileUtil, Downloader downloader) {
+    public DownloadController(FileUtil fileUtil, Downloader downloader,
+                              @Value("${downloader.stream.wait.millis:5000}") long streamWaitMillis,
+                              @Value("${downloader.stream.stall.millis:60000}") long streamStallMillis) {
         this.fileUtil = fileUtil;
         this.downloader = downloader;
+        this.streamWaitMillis = streamWaitMillis;
+        this.streamStallMillis = streamStallMillis;
     }
 
 
     @GetMapping("/subtitle")
-    public String downloadSubtitle(@RequestParam String url,
-                                   @RequestParam(required = false, defaultValue = ".") String path) {
-        try {
-            Set<String> files = downloader.downloadSubtitle(url, fileUtil.resolvePath(path));
-            return String.join("\n", files);
-        } catch (IOException | InterruptedException e) {
-            throw new InternalServerError(e.getMessage());
-        }
+    public CompletableFuture<String> downloadSubtitle(
+            @RequestParam String url, @RequestParam(required = false, defaultValue = ".") String path) {
+        return downloader.downloadSubtitle(url, fileUtil.resolvePath(path))
+                .thenApply(files -> String.join("\n", files));
     }
 
+    /**
+     * @param progressive download in order, so the file can be streamed by {@code /download/stream} while it is
+     * downloading
+     */
     @PostMapping("/file")
-    public DownloadStatus downloadFile(@RequestParam String url,
-                                       @RequestParam(required = false, defaultValue = ".") String path) {
-        try {
-            return downloader.asyncDownload(url, path);
-        } catch (IOException | InterruptedException e) {
-            throw new InternalServerError(e.getMessage());
+    public CompletableFuture<DownloadStatus> downloadFile(
+            @RequestParam String url, @RequestParam(required = false, defaultValue = ".") String path,
+            @RequestParam(required = false) String checksum,
+            @RequestParam(value = "mirror", required = false) List<String> mirrors,
+            @RequestParam(defaultValue = "false") boolean progressive) {
+        return downloader.asyncDownload(url, mirrors, path, checksum, progressive);
+    }
+
+    /**
+     * Stream the file of a download while it is downloading. Only its readable prefix is served: a range which starts
+     * after it waits up to {@code downloader.stream.wait.millis} and gets 416 if the prefix does not reach it, and the
+     * response blocks whenever it catches up with the download, for at most {@code downloader.stream.stall.millis}.
+     */
+    @GetMapping("/stream")
+    public void stream(@RequestParam String url,
+                       @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                       HttpServletResponse response) throws IOException, InterruptedException {
+        DownloadStatus status = downloader.getDownloadStatus(url).orElseThrow(PathNotFoundException::new);
+        Path path = downloader.getDownloadPath(url).orElseThrow(PathNotFoundException::new);
+        long size = status.getFile().getSize();
+        if (size <= 0) {
+            throw new InvalidInputException("Size of " + url + " is unknown.");
+        }
+        long start = 0;
+        long end = size - 1;
+        if (range != null) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(range);
+                if (ranges.size() != 1) {
+                    throw new IllegalArgumentException("Only one range is supported.");
+                }
+                start = ranges.get(0).getRangeStart(size);
+                end = ranges.get(0).getRangeEnd(size);
+            } catch (IllegalArgumentException e) {
+                notSatisfiable(response, size);
+                return;
+            }
+        }
+        if (downloader.awaitReadable(status, start + 1, streamWaitMillis) <= start) {
+            notSatisfiable(response, size);
+            return;
+        }
+        if (range != null) {
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(MediaTypeFactory.getMediaType(status.getFile().getName())
+                                        .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+        response.setContentLengthLong(end - start + 1);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long readable = downloader.awaitReadable(status, position + 1, streamStallMillis);
+                if (readable <= position) {
+                    throw new IOException("Download of " + url + " stalled at " + position + " bytes.");
+                }
+                position += channel.transferTo(position, Math.min(end + 1, readable) - position, target);
+            }
         }
     }
 
+    private static void notSatisfiable(HttpServletResponse response, long size) {
+        response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+    }
+
     @GetMapping(value = "/status", produces = MediaType.APPLICATION_JSON_VALUE)
-    public Collection<DownloadStatus> getDownloadStatus(@RequestParam(required = false) String url) {
+    public Collection<DownloadStatus> getDownloadStatus(@RequestParam(required = false) String url,
+                                                        WebRequest request) {
+        if (request.checkNotModified("W/\"" + downloader.getRevision() + "\"")) {
+            return null;
+        }
         if (url == null || url.isEmpty()) {
             return downloader.getDownloadsStatuses();
         }
@@ -70,6 +155,22 @@ public class DownloadController {
         return status.map(List::of).orElse(Collections.emptyList());
     }
 
+    /**
+     * Request statistics of every host which files are downloaded from.
+     */
+    @GetMapping(value = "/status/connections", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<HostConnections> getConnectionStatistics() {
+        return downloader.getConnectionStatistics();
+    }
+
+    /**
+     * Hit rate and allocations of the buffer pool which downloads, extractions and subtitle writes share.
+     */
+    @GetMapping(value = "/status/buffers", produces = MediaType.APPLICATION_JSON_VALUE)
+    public BufferPoolStatistics getBufferStatistics() {
+        return downloader.getBufferStatistics();
+    }
+
     @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
     public List<Subtitle> searchSubtitleForFile(@RequestParam String file) {
         return null;
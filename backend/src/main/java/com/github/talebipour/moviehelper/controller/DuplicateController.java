@@ -0,0 +1,36 @@
+package com.github.talebipour.moviehelper.controller;
+
+import com.github.talebipour.moviehelper.exception.PathNotFoundException;
+import com.github.talebipour.moviehelper.model.DuplicateReport;
+import com.github.talebipour.moviehelper.util.DuplicateFinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@CrossOrigin
+public class DuplicateController {
+
+    private final DuplicateFinder duplicateFinder;
+
+    @Autowired
+    public DuplicateController(DuplicateFinder duplicateFinder) {
+        this.duplicateFinder = duplicateFinder;
+    }
+
+    @PostMapping(value = "/duplicates", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<DuplicateReport> findDuplicates(
+            @RequestParam(required = false, defaultValue = "false") boolean verify) {
+        return ResponseEntity.accepted().body(duplicateFinder.start(verify));
+    }
+
+    @GetMapping(value = "/duplicates", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DuplicateReport getDuplicates() {
+        return duplicateFinder.getReport().orElseThrow(PathNotFoundException::new);
+    }
+}
@@ -1,41 +1,65 @@
 package com.github.talebipour.moviehelper.controller;
 
-import static java.util.Arrays.asList;
+import static com.github.talebipour.moviehelper.util.FileOperationEngine.checkCompleted;
 
-import com.github.talebipour.moviehelper.exception.InternalServerError;
 import com.github.talebipour.moviehelper.exception.InvalidInputException;
 import com.github.talebipour.moviehelper.exception.PathNotFoundException;
 import com.github.talebipour.moviehelper.model.FileModel;
 import com.github.talebipour.moviehelper.model.FileModel.FileType;
+import com.github.talebipour.moviehelper.model.FileOperation;
+import com.github.talebipour.moviehelper.model.FileOperationBatch;
+import com.github.talebipour.moviehelper.model.Job;
+import com.github.talebipour.moviehelper.model.MediaMetadata;
+import com.github.talebipour.moviehelper.util.DirectorySizeAggregator;
+import com.github.talebipour.moviehelper.util.FileOperationEngine;
+import com.github.talebipour.moviehelper.util.FileOperationEngine.FailurePolicy;
 import com.github.talebipour.moviehelper.util.FileUtil;
+import com.github.talebipour.moviehelper.util.JobManager;
+import com.github.talebipour.moviehelper.util.LibraryCache;
+import com.github.talebipour.moviehelper.util.LibraryCache.Listing;
+import com.github.talebipour.moviehelper.util.MiniDlna;
+import com.github.talebipour.moviehelper.util.RequestTracer;
+import com.github.talebipour.moviehelper.util.RequestTracer.Span;
+import com.github.talebipour.moviehelper.util.SubtitleRenamer;
+import com.github.talebipour.moviehelper.util.Volume;
+import com.github.talebipour.moviehelper.util.media.MatroskaSubtitleExtractor;
+import com.github.talebipour.moviehelper.util.media.MediaMetadataParser;
 import java.io.IOException;
-import java.io.StringWriter;
-import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import org.apache.commons.io.IOUtils;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 @CrossOrigin
@@ -43,10 +67,23 @@ public class FileController {
 
     private static final Logger logger = LoggerFactory.getLogger(FileController.class);
 
-    private static final Pattern SUBTITLE_PATTERN = Pattern.compile(".*\\.srt(.\\d+)?$", Pattern.CASE_INSENSITIVE);
-    private static final Set<String> MOVIE_EXTENSIONS = new HashSet<>(asList("mkv", "mp4"));
-
     private final FileUtil fileUtil;
+    private final DirectorySizeAggregator directorySizeAggregator;
+    private final FileOperationEngine fileOperationEngine;
+    private final MediaMetadataParser mediaMetadataParser;
+    private final MatroskaSubtitleExtractor subtitleExtractor;
+    private final SubtitleRenamer subtitleRenamer;
+    private final MiniDlna miniDlna;
+    private final JobManager jobManager;
+    private final LibraryCache libraryCache;
+    /**
+     * Requests with more file operations run as a job.
+     */
+    private final int maxInlineOperations;
+    /**
+     * Subtitles of larger movies are extracted by a job.
+     */
+    private final long maxInlineExtractBytes;
 
     private static final Comparator<FileModel> FILE_MODEL_COMPARATOR = ((Comparator<FileModel>) (o1, o2) -> {
         if (o1.getType() == o2.getType()) {
@@ -56,149 +93,309 @@ public class FileController {
     }).thenComparing(FileModel::getName);
 
     @Autowired
-    public FileController(FileUtil fileUtil) {
+    public FileController(FileUtil fileUtil, DirectorySizeAggregator directorySizeAggregator,
+                          FileOperationEngine fileOperationEngine, MediaMetadataParser mediaMetadataParser,
+                          MatroskaSubtitleExtractor subtitleExtractor, SubtitleRenamer subtitleRenamer,
+                          MiniDlna miniDlna, JobManager jobManager, LibraryCache libraryCache,
+                          @Value("${jobs.inline.max.operations:16}") int maxInlineOperations,
+                          @Value("${jobs.inline.max.extract.bytes:268435456}") long maxInlineExtractBytes) {
         this.fileUtil = fileUtil;
+        this.directorySizeAggregator = directorySizeAggregator;
+        this.fileOperationEngine = fileOperationEngine;
+        this.mediaMetadataParser = mediaMetadataParser;
+        this.subtitleExtractor = subtitleExtractor;
+        this.subtitleRenamer = subtitleRenamer;
+        this.miniDlna = miniDlna;
+        this.jobManager = jobManager;
+        this.libraryCache = libraryCache;
+        this.maxInlineOperations = maxInlineOperations;
+        this.maxInlineExtractBytes = maxInlineExtractBytes;
     }
 
     @GetMapping(value = "/files", produces = MediaType.APPLICATION_JSON_VALUE)
     public @ResponseBody
-    List<FileModel> listFilesAtPath(@RequestParam(value = "path", required = false) String path) throws IOException {
+    List<FileModel> listFilesAtPath(@RequestParam(value = "path", required = false) String path, WebRequest request)
+            throws IOException {
         logger.info("Listing files in path {}", path);
         try {
             Path target = fileUtil.resolvePath(path);
-            return Files.walk(target, 1)
-                    .filter(subPath -> !subPath.equals(target))
-                    .map(this::toFileModel)
-                    .sorted(FILE_MODEL_COMPARATOR)
-                    .collect(Collectors.toList());
+            Optional<Listing> snapshot = libraryCache.getListing(target);
+            if (snapshot.isPresent()) {
+                if (request.checkNotModified(listingEtag(target, snapshot.get().getModifiedTime()))) {
+                    return null;
+                }
+                return snapshot.get().getFiles();
+            }
+            FileTime modifiedTime;
+            Span span = RequestTracer.span("fs.stat", target);
+            try {
+                modifiedTime = Files.getLastModifiedTime(target);
+            } finally {
+                span.close();
+            }
+            if (request.checkNotModified(listingEtag(target, modifiedTime.toMillis()))) {
+                return null;
+            }
+            List<FileModel> models = fileUtil.getVolume(target).call(() -> listFiles(target));
+            libraryCache.listed(target, modifiedTime.toMillis(), models);
+            return models;
+        } catch (NotDirectoryException e) {
+            return List.of();
         } catch (NoSuchFileException e) {
             throw new PathNotFoundException();
         }
     }
 
+    private List<FileModel> listFiles(Path directory) throws IOException {
+        List<FileModel> models;
+        // Files which are moved away while the directory is listed are left out.
+        Span span = RequestTracer.span("fs.list", directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            models = files.map(this::toFileModel)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        } finally {
+            span.close();
+        }
+        if (directory.equals(fileUtil.resolvePath(null))) {
+            // Named roots are top level directories, they are not read here, so a slow volume does not stall it.
+            for (Volume volume : fileUtil.getNamedVolumes()) {
+                models.removeIf(model -> model.getName().equals(volume.getName()));
+                FileModel model = new FileModel();
+                model.setName(volume.getName());
+                model.setPath(volume.getName());
+                model.setType(FileType.DIRECTORY);
+                model.setSize(directorySizeAggregator.getSize(volume.getRoot(), null).orElse(0));
+                models.add(model);
+            }
+        }
+        models.sort(FILE_MODEL_COMPARATOR);
+        return models;
+    }
 
-    @DeleteMapping("/files")
-    public void deleteFiles(@RequestParam(value = "path", required = false) List<String> paths) throws IOException {
-        logger.info("Removing {} files.", paths);
+    @GetMapping(value = "/files/metadata", produces = MediaType.APPLICATION_JSON_VALUE)
+    public MediaMetadata getMetadata(@RequestParam String path) throws IOException {
         try {
-          for (String path : paths) {
-            Path target = fileUtil.resolvePath(path);
-            Files.delete(target);
-            logger.info("{} file removed.", path);
-          }
+            Path file = fileUtil.resolvePath(path);
+            return fileUtil.getVolume(file).call(() -> mediaMetadataParser.getMetadata(file))
+                    .orElseThrow(() -> new InvalidInputException("Not a Matroska or MP4 file: " + path));
         } catch (NoSuchFileException e) {
             throw new PathNotFoundException();
         }
     }
 
+    /**
+     * Weak ETag of a directory listing. Modification time of the directory changes when its entries change and the
+     * aggregator version changes when size of anything under it changes.
+     */
+    private String listingEtag(Path directory, long modifiedTime) {
+        StringBuilder etag = new StringBuilder("W/\"").append(modifiedTime)
+                .append('-').append(directorySizeAggregator.getVersion(directory));
+        if (directory.equals(fileUtil.resolvePath(null))) {
+            fileUtil.getNamedVolumes()
+                    .forEach(volume -> etag.append('-').append(directorySizeAggregator.getVersion(volume.getRoot())));
+        }
+        return etag.append('"').toString();
+    }
+
+    /**
+     * Delete files, more than {@code jobs.inline.max.operations} files are deleted by a job which is returned with 202
+     * status.
+     */
+    @DeleteMapping("/files")
+    public ResponseEntity<Job> deleteFiles(@RequestParam(value = "path", required = false) List<String> paths) {
+        logger.info("Removing {} files.", paths);
+        for (String path : paths) {
+            if (!Files.exists(fileUtil.resolvePath(path), LinkOption.NOFOLLOW_LINKS)) {
+                throw new PathNotFoundException();
+            }
+        }
+        List<FileOperation> plan = paths.stream().map(FileOperation::delete).collect(Collectors.toList());
+        if (plan.size() > maxInlineOperations) {
+            return ResponseEntity.accepted().body(jobManager.submit("delete-files", job -> {
+                FileOperationBatch batch = fileOperationEngine.execute(plan, FailurePolicy.CONTINUE, job);
+                checkCompleted(batch);
+                return batch;
+            }));
+        }
+        checkCompleted(fileOperationEngine.execute(plan, FailurePolicy.CONTINUE));
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping(value = "/files/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<FileOperationBatch> submitBatch(
+            @RequestBody List<FileOperation> plan,
+            @RequestParam(required = false, defaultValue = "CONTINUE") FailurePolicy policy) {
+        return ResponseEntity.accepted().body(fileOperationEngine.submit(plan, policy));
+    }
+
+    @GetMapping(value = "/files/batch/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public FileOperationBatch getBatch(@PathVariable String id) {
+        return fileOperationEngine.getBatch(id).orElseThrow(PathNotFoundException::new);
+    }
+
     @PostMapping(value = "/set-subtitle/single", produces = MediaType.TEXT_PLAIN_VALUE)
     public @ResponseBody
     String setSubtitleSingle(@RequestParam String subtitle, @RequestParam String movie) throws IOException {
         Path subtitlePath = fileUtil.resolvePath(subtitle);
-        if (!SUBTITLE_PATTERN.matcher(subtitlePath.getFileName().toString()).matches()) {
+        if (!FileUtil.isSubtitle(subtitlePath.getFileName().toString())) {
             throw new InvalidInputException();
         }
         Path moviePath = fileUtil.resolvePath(movie);
-        if (!MOVIE_EXTENSIONS.contains(FileUtil.extension(moviePath.getFileName().toString().toLowerCase()))) {
+        if (!FileUtil.isMovie(moviePath.getFileName().toString())) {
             throw new InvalidInputException();
         }
 
         return doSetSubtitle(subtitlePath, moviePath);
     }
 
+    /**
+     * Extract a text subtitle track of an mkv file and set it as subtitle of the movie. Subtitles of movies larger
+     * than {@code jobs.inline.max.extract.bytes} are extracted by a job which is returned with 202 status.
+     *
+     * @param track Matroska track number, the first text subtitle track if not given
+     */
+    @PostMapping(value = "/set-subtitle/extract")
+    public ResponseEntity<?> extractSubtitle(@RequestParam String movie, @RequestParam(required = false) Long track)
+            throws IOException {
+        Path moviePath = fileUtil.resolvePath(movie);
+        if (!"mkv".equalsIgnoreCase(FileUtil.extension(moviePath.getFileName().toString()))) {
+            throw new InvalidInputException();
+        }
+        if (!Files.isRegularFile(moviePath)) {
+            throw new PathNotFoundException();
+        }
+        if (Files.size(moviePath) > maxInlineExtractBytes) {
+            return ResponseEntity.accepted().contentType(MediaType.APPLICATION_JSON)
+                    .body(jobManager.submit("extract-subtitle", job -> extractSubtitle(moviePath, track, job)));
+        }
+        return ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN).body(extractSubtitle(moviePath, track, null));
+    }
+
+    private String extractSubtitle(Path moviePath, Long track, Job job) throws IOException {
+        Path subtitlePath = Files.createTempFile(moviePath.getParent(), ".extract-", ".srt");
+        long size = 0;
+        try {
+            fileUtil.getVolume(moviePath).call(() -> subtitleExtractor.extract(moviePath, track, subtitlePath, job));
+            size = Files.size(subtitlePath);
+            directorySizeAggregator.fileChanged(subtitlePath, size);
+            // The temporary file is only readable by its owner, the subtitle must be readable like the movie.
+            FileUtil.copyPermissions(moviePath, subtitlePath);
+            doSetSubtitle(subtitlePath, moviePath);
+        } finally {
+            if (Files.deleteIfExists(subtitlePath)) {
+                directorySizeAggregator.fileChanged(subtitlePath, -size);
+            }
+        }
+        return FileUtil.filenameWithoutExtension(moviePath.getFileName().toString()) + ".srt";
+    }
+
+    /**
+     * Set subtitles of all matching movies of a directory. When there are more than
+     * {@code jobs.inline.max.operations} renames, they are done by a job which is returned with 202 status.
+     */
     @PostMapping(value = "/set-subtitle/bulk", produces = MediaType.APPLICATION_JSON_VALUE)
-    public @ResponseBody
-    List<List<FileModel>> setSubtitleBulk(@RequestParam(value = "path", required = false) String path,
-                                 @RequestParam String movieRegex, @RequestParam String subtitleRegex)
+    public ResponseEntity<?> setSubtitleBulk(@RequestParam(value = "path", required = false) String path,
+                                             @RequestParam String movieRegex, @RequestParam String subtitleRegex)
             throws IOException {
-        List<List<FileModel>> result = new ArrayList<>();
+        List<Path> movies = new ArrayList<>();
+        List<FileOperation> plan = new ArrayList<>();
+        Set<Path> reserved = new HashSet<>();
         Pattern moviePattern = Pattern.compile(movieRegex, Pattern.CASE_INSENSITIVE);
         try {
             Path target = fileUtil.resolvePath(path);
-            Files.list(target).forEach(moviePath -> {
+            List<Path> files = fileUtil.getVolume(target).call(() -> {
+                try (Stream<Path> stream = Files.list(target)) {
+                    return stream.collect(Collectors.toList());
+                }
+            });
+            for (Path moviePath : files) {
                 Matcher matcher = moviePattern.matcher(moviePath.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
                 String replacedSubtitleRegex = subtitleRegex;
-                if (matcher.matches()) {
-                    for (int i = 0; i <= matcher.groupCount(); i++) {
-                        replacedSubtitleRegex = replacedSubtitleRegex.replace("$" + i, Pattern.quote(matcher.group(i)));
-                    }
+                for (int i = 0; i <= matcher.groupCount(); i++) {
+                    replacedSubtitleRegex = replacedSubtitleRegex.replace("$" + i, Pattern.quote(matcher.group(i)));
                 }
                 Predicate<String> subtitlePredicate = Pattern.compile(replacedSubtitleRegex, Pattern.CASE_INSENSITIVE)
                         .asMatchPredicate();
-                List<Path> subtitles;
-                try {
-                    subtitles = Files.list(target)
-                            .filter(filePath -> subtitlePredicate.test(filePath.getFileName().toString()))
-                            .collect(Collectors.toList());
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
+                List<Path> subtitles = files.stream()
+                        .filter(filePath -> subtitlePredicate.test(filePath.getFileName().toString()))
+                        .collect(Collectors.toList());
                 if (subtitles.size() > 1) {
                     throw new InvalidInputException("Subtitle regex result is not unique.");
                 }
                 if (!subtitles.isEmpty()) {
-                    try {
-                        doSetSubtitle(subtitles.get(0), moviePath);
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
-                    }
-                    result.add(List.of(toFileModel(moviePath), toFileModel(subtitles.get(0))));
+                    plan.addAll(subtitleRenamer.plan(subtitles.get(0), moviePath, reserved));
+                    movies.add(moviePath);
                 }
-            });
+            }
         } catch (NoSuchFileException e) {
             throw new PathNotFoundException();
         }
+        // All renames are done as one batch, so a failure does not leave the directory half renamed.
+        if (plan.size() > maxInlineOperations) {
+            return ResponseEntity.accepted().body(jobManager.submit("set-subtitle-bulk", job -> {
+                checkCompleted(fileOperationEngine.execute(plan, FailurePolicy.ROLL_BACK, job));
+                subtitleRenamer.intern(plan);
+                return renamedSubtitles(movies);
+            }));
+        }
+        if (!plan.isEmpty()) {
+            checkCompleted(fileOperationEngine.execute(plan, FailurePolicy.ROLL_BACK));
+            subtitleRenamer.intern(plan);
+        }
+        return ResponseEntity.ok(renamedSubtitles(movies));
+    }
+
+    /**
+     * Models of the movies and of their subtitles, which are read after the renames, so they have the new names.
+     */
+    private List<List<FileModel>> renamedSubtitles(List<Path> movies) {
+        List<List<FileModel>> result = new ArrayList<>();
+        for (Path moviePath : movies) {
+            result.add(List.of(toFileModel(moviePath), toFileModel(SubtitleRenamer.subtitleOf(moviePath))));
+        }
         return result;
     }
 
 
-    private String doSetSubtitle(Path subtitlePath, Path moviePath) throws IOException {
-        String filename = FileUtil.filenameWithoutExtension(moviePath.getFileName().toString()) + ".srt";
-        Path target = moviePath.resolveSibling(filename);
-        if (Files.exists(target)) {
-            Path backupFile;
-            int i = 1;
-            do {
-                backupFile = target.resolveSibling(target.getFileName() + "." + i);
-                i++;
-            } while (Files.exists(backupFile));
-            logger.info("Take backup from {} file to {}", target, backupFile);
-            Files.move(target, backupFile);
-        }
-        logger.info("Renaming {} file to {}", subtitlePath, target);
-        Files.move(subtitlePath, target);
+    private String doSetSubtitle(Path subtitlePath, Path moviePath) {
+        subtitleRenamer.setSubtitle(subtitlePath, moviePath);
         return subtitlePath.getFileName().toString();
     }
 
+    private String relativePath(Path path) {
+        return fileUtil.relativize(path);
+    }
+
     @PostMapping(value = "/reload-minidlna")
     public void reloadMiniDlna() throws IOException {
-        logger.info("Reloading MiniDLNA...");
-        Process process = new ProcessBuilder().command("systemctl", "force-reload", "minidlna").start();
-        try {
-            if (process.waitFor(15, TimeUnit.SECONDS)) {
-                throw new InternalServerError("MiniDLNA force-reload timed out.");
-            }
-            if (process.exitValue() != 0) {
-                StringWriter error = new StringWriter();
-                IOUtils.copy(process.getErrorStream(), error);
-                logger.error("Reload MiniDLNA failed: {}", error);
-                throw new InternalServerError("MiniDLNA force-reload failed, exit code=" + process.exitValue());
-            }
-            logger.info("MiniDLNA reloaded.");
-        } catch (InterruptedException e) {
-            throw new InternalServerError("Interrupted while waiting for MiniDLNA force-reload", e);
-        }
+        miniDlna.reload();
     }
 
+    /**
+     * @return the model or null if the file does not exist anymore
+     */
     private FileModel toFileModel(Path path) {
         FileModel model = new FileModel();
         model.setName(path.getFileName().toString());
-        model.setPath(fileUtil.getRootDir().relativize(path).toString());
-        model.setType(Files.isDirectory(path) ? FileType.DIRECTORY : FileType.REGULAR);
+        model.setPath(relativePath(path));
+        Span span = RequestTracer.span("fs.stat", path);
         try {
-            model.setSize(Files.size(path));
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            model.setType(attributes.isDirectory() ? FileType.DIRECTORY : FileType.REGULAR);
+            model.setSize(attributes.isDirectory()
+                          ? directorySizeAggregator.getSize(path, attributes.lastModifiedTime()).orElse(attributes.size())
+                          : attributes.size());
+        } catch (NoSuchFileException e) {
+            return null;
         } catch (IOException e) {
+            model.setType(Files.isDirectory(path) ? FileType.DIRECTORY : FileType.REGULAR);
             logger.error("Getting file {} size failed.", path, e);
+        } finally {
+            span.close();
         }
         return model;
     }
@@ -0,0 +1,60 @@
+package com.github.talebipour.moviehelper.controller;
+
+import com.github.talebipour.moviehelper.exception.PathNotFoundException;
+import com.github.talebipour.moviehelper.util.DirectoryWatcher;
+import com.github.talebipour.moviehelper.util.DirectoryWatcher.Subscription;
+import com.github.talebipour.moviehelper.util.FileUtil;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@CrossOrigin
+public class FileEventController {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileEventController.class);
+
+    private final FileUtil fileUtil;
+    private final DirectoryWatcher directoryWatcher;
+    private final long timeoutMillis;
+
+    @Autowired
+    public FileEventController(FileUtil fileUtil, DirectoryWatcher directoryWatcher,
+                               @Value("${files.events.timeout.millis:1800000}") long timeoutMillis) {
+        this.fileUtil = fileUtil;
+        this.directoryWatcher = directoryWatcher;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Server-sent events of changes of a directory. A {@code subscribed} event is sent once the directory is watched,
+     * then {@code changes} events with JSON arrays of {@link com.github.talebipour.moviehelper.model.FileChange}. The
+     * stream ends after {@code files.events.timeout.millis}, clients reconnect and list the directory again.
+     */
+    @GetMapping(value = "/files/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter watchFiles(@RequestParam(value = "path", required = false) String path) throws IOException {
+        Path directory = fileUtil.resolvePath(path);
+        if (!Files.isDirectory(directory)) {
+            throw new PathNotFoundException();
+        }
+        logger.info("Subscribing to changes of path {}", path);
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscription subscription = directoryWatcher.subscribe(directory, changes -> emitter.send(
+                SseEmitter.event().name("changes").data(changes, MediaType.APPLICATION_JSON)));
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+        emitter.send(SseEmitter.event().name("subscribed").data(fileUtil.relativize(directory)));
+        return emitter;
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.talebipour.moviehelper.controller;
+
+import com.github.talebipour.moviehelper.model.ImportedFile;
+import com.github.talebipour.moviehelper.util.ImportPipeline;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@CrossOrigin
+public class ImportController {
+
+    private final ImportPipeline importPipeline;
+
+    @Autowired
+    public ImportController(ImportPipeline importPipeline) {
+        this.importPipeline = importPipeline;
+    }
+
+    /**
+     * Files which are imported from the watched folders, the latest first.
+     */
+    @GetMapping(value = "/imports", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<ImportedFile> getImports() {
+        return importPipeline.getRecentImports();
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.talebipour.moviehelper.controller;
+
+import com.github.talebipour.moviehelper.exception.PathNotFoundException;
+import com.github.talebipour.moviehelper.model.Job;
+import com.github.talebipour.moviehelper.util.JobManager;
+import java.util.Collection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@CrossOrigin
+public class JobController {
+
+    private final JobManager jobManager;
+
+    @Autowired
+    public JobController(JobManager jobManager) {
+        this.jobManager = jobManager;
+    }
+
+    @GetMapping(value = "/jobs", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Collection<Job> getJobs() {
+        return jobManager.getJobs();
+    }
+
+    @GetMapping(value = "/jobs/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Job getJob(@PathVariable String id) {
+        return jobManager.getJob(id).orElseThrow(PathNotFoundException::new);
+    }
+
+    /**
+     * Request cancellation of a job, it is cancelled when it reaches a point where it can stop safely.
+     */
+    @DeleteMapping(value = "/jobs/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Job cancelJob(@PathVariable String id) {
+        return jobManager.cancel(id).orElseThrow(PathNotFoundException::new);
+    }
+}
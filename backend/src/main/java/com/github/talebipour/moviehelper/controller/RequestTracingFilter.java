@@ -0,0 +1,78 @@
+package com.github.talebipour.moviehelper.controller;
+
+import com.github.talebipour.moviehelper.util.RequestTracer;
+import com.github.talebipour.moviehelper.util.RequestTracer.Trace;
+import java.io.IOException;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Traces requests by {@link RequestTracer}. Asynchronous requests, e.g. of {@code /download/subtitle}, are finished
+ * when their response completes.
+ */
+@Component
+public class RequestTracingFilter extends OncePerRequestFilter {
+
+    private final RequestTracer requestTracer;
+
+    public RequestTracingFilter(RequestTracer requestTracer) {
+        this.requestTracer = requestTracer;
+    }
+
+    /**
+     * Streams are long by design, they would fill the buffer of slow requests.
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return uri.equals("/files/events") || uri.equals("/download/stream");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getQueryString() == null ? request.getRequestURI()
+                : request.getRequestURI() + "?" + request.getQueryString();
+        Trace trace = requestTracer.start(request.getMethod(), path);
+        if (trace == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            async = request.isAsyncStarted();
+            if (async) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        requestTracer.finish(trace, response.getStatus());
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            }
+        } finally {
+            RequestTracer.detach();
+            if (!async) {
+                requestTracer.finish(trace, response.getStatus());
+            }
+        }
+    }
+}
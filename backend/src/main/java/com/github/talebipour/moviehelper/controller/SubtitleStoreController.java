@@ -0,0 +1,27 @@
+package com.github.talebipour.moviehelper.controller;
+
+import com.github.talebipour.moviehelper.model.GarbageCollectionReport;
+import com.github.talebipour.moviehelper.util.SubtitleStore;
+import java.io.IOException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@CrossOrigin
+public class SubtitleStoreController {
+
+    private final SubtitleStore subtitleStore;
+
+    @Autowired
+    public SubtitleStoreController(SubtitleStore subtitleStore) {
+        this.subtitleStore = subtitleStore;
+    }
+
+    @PostMapping(value = "/subtitle-store/gc", produces = MediaType.APPLICATION_JSON_VALUE)
+    public GarbageCollectionReport collectGarbage() throws IOException {
+        return subtitleStore.collectGarbage();
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.talebipour.moviehelper.controller;
+
+import com.github.talebipour.moviehelper.model.RequestTrace;
+import com.github.talebipour.moviehelper.util.RequestTracer;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@CrossOrigin
+public class TraceController {
+
+    private final RequestTracer requestTracer;
+
+    @Autowired
+    public TraceController(RequestTracer requestTracer) {
+        this.requestTracer = requestTracer;
+    }
+
+    /**
+     * Traced requests which took at least {@code tracing.slow.millis}, the latest first.
+     */
+    @GetMapping(value = "/traces/slow", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<RequestTrace> getSlowRequests() {
+        return requestTracer.getSlowRequests();
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.talebipour.moviehelper.controller;
+
+import com.github.talebipour.moviehelper.model.VolumeIoStatistics;
+import com.github.talebipour.moviehelper.model.VolumeUsage;
+import com.github.talebipour.moviehelper.util.DiskSpaceMonitor;
+import com.github.talebipour.moviehelper.util.FileUtil;
+import com.github.talebipour.moviehelper.util.Volume;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@CrossOrigin
+public class VolumeController {
+
+    private final DiskSpaceMonitor diskSpaceMonitor;
+    private final FileUtil fileUtil;
+
+    @Autowired
+    public VolumeController(DiskSpaceMonitor diskSpaceMonitor, FileUtil fileUtil) {
+        this.diskSpaceMonitor = diskSpaceMonitor;
+        this.fileUtil = fileUtil;
+    }
+
+    @GetMapping(value = "/volumes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<VolumeUsage> getVolumes() {
+        return diskSpaceMonitor.getVolumes();
+    }
+
+    /**
+     * Load of the I/O executor of every root directory.
+     */
+    @GetMapping(value = "/volumes/io", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<VolumeIoStatistics> getVolumeIo() {
+        return fileUtil.getVolumes().stream().map(Volume::getStatistics).collect(Collectors.toList());
+    }
+}
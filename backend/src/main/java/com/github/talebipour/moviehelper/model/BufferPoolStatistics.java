@@ -0,0 +1,137 @@
+package com.github.talebipour.moviehelper.model;
+
+/**
+ * Usage statistics of the shared download buffer pool.
+ */
+public class BufferPoolStatistics {
+
+    private int bufferSize;
+    private int capacity;
+    private int pooled;
+    private boolean adaptive;
+    private long averageBytesPerSecond;
+    private int resizes;
+    private long acquires;
+    private long hits;
+    private int hitRatePercent;
+    private long allocatedBytes;
+    private long reusedBytes;
+    private long discards;
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Upper bound of idle buffers which are kept for reuse.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Idle buffers in the pool.
+     */
+    public int getPooled() {
+        return pooled;
+    }
+
+    public void setPooled(int pooled) {
+        this.pooled = pooled;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Average throughput of finished downloads, which adaptive sizing is based on.
+     */
+    public long getAverageBytesPerSecond() {
+        return averageBytesPerSecond;
+    }
+
+    public void setAverageBytesPerSecond(long averageBytesPerSecond) {
+        this.averageBytesPerSecond = averageBytesPerSecond;
+    }
+
+    public int getResizes() {
+        return resizes;
+    }
+
+    public void setResizes(int resizes) {
+        this.resizes = resizes;
+    }
+
+    public long getAcquires() {
+        return acquires;
+    }
+
+    public void setAcquires(long acquires) {
+        this.acquires = acquires;
+    }
+
+    /**
+     * Acquired buffers which were taken from the pool instead of being allocated.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public int getHitRatePercent() {
+        return hitRatePercent;
+    }
+
+    public void setHitRatePercent(int hitRatePercent) {
+        this.hitRatePercent = hitRatePercent;
+    }
+
+    /**
+     * Bytes of direct memory allocated for buffers, including alignment padding.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public void setAllocatedBytes(long allocatedBytes) {
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Bytes which would have been allocated without the pool.
+     */
+    public long getReusedBytes() {
+        return reusedBytes;
+    }
+
+    public void setReusedBytes(long reusedBytes) {
+        this.reusedBytes = reusedBytes;
+    }
+
+    /**
+     * Released buffers which were not pooled because the pool was full or their size is stale.
+     */
+    public long getDiscards() {
+        return discards;
+    }
+
+    public void setDiscards(long discards) {
+        this.discards = discards;
+    }
+}
@@ -1,6 +1,9 @@
 package com.github.talebipour.moviehelper.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DownloadStatus {
 
@@ -14,8 +17,22 @@ public class DownloadStatus {
 
     private volatile int progressPercent;
 
+    private volatile long downloadedBytes;
+
+    private volatile long readableBytes;
+
+    private boolean progressive;
+
+    private volatile long networkBytesPerSecond;
+
+    private volatile long diskBytesPerSecond;
+
     private String message;
 
+    private List<String> mirrors = List.of();
+
+    private final AtomicLong version = new AtomicLong();
+
     public String getUrl() {
         return url;
     }
@@ -24,12 +41,24 @@ public class DownloadStatus {
         this.url = url;
     }
 
+    /**
+     * Other URLs of the same file which are downloaded together with {@link #getUrl()}.
+     */
+    public List<String> getMirrors() {
+        return mirrors;
+    }
+
+    public void setMirrors(List<String> mirrors) {
+        this.mirrors = mirrors == null ? List.of() : mirrors;
+    }
+
     public FileModel getFile() {
         return file;
     }
 
     public void setFile(FileModel file) {
         this.file = file;
+        version.incrementAndGet();
     }
 
     public Status getStatus() {
@@ -42,10 +71,12 @@ public class DownloadStatus {
 
     public void setRangeSupported(boolean rangeSupported) {
         this.rangeSupported = rangeSupported;
+        version.incrementAndGet();
     }
 
     public void setStatus(Status status) {
         this.status = status;
+        version.incrementAndGet();
     }
 
     public int getProgressPercent() {
@@ -54,6 +85,58 @@ public class DownloadStatus {
 
     public void setProgressPercent(int progressPercent) {
         this.progressPercent = progressPercent;
+        version.incrementAndGet();
+    }
+
+    public long getDownloadedBytes() {
+        return downloadedBytes;
+    }
+
+    public void setDownloadedBytes(long downloadedBytes) {
+        this.downloadedBytes = downloadedBytes;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Length of the written prefix of the file, which can be read while the rest is downloading.
+     */
+    public long getReadableBytes() {
+        return readableBytes;
+    }
+
+    public void setReadableBytes(long readableBytes) {
+        this.readableBytes = readableBytes;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Whether mirrors download the file in order, so it can be played while it is downloading.
+     */
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+        version.incrementAndGet();
+    }
+
+    public long getNetworkBytesPerSecond() {
+        return networkBytesPerSecond;
+    }
+
+    public void setNetworkBytesPerSecond(long networkBytesPerSecond) {
+        this.networkBytesPerSecond = networkBytesPerSecond;
+        version.incrementAndGet();
+    }
+
+    public long getDiskBytesPerSecond() {
+        return diskBytesPerSecond;
+    }
+
+    public void setDiskBytesPerSecond(long diskBytesPerSecond) {
+        this.diskBytesPerSecond = diskBytesPerSecond;
+        version.incrementAndGet();
     }
 
     public String getMessage() {
@@ -62,6 +145,15 @@ public class DownloadStatus {
 
     public void setMessage(String message) {
         this.message = message;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Number of changes made to this status, it only increases.
+     */
+    @JsonIgnore
+    public long getVersion() {
+        return version.get();
     }
 
     @Override
@@ -80,6 +172,6 @@ public class DownloadStatus {
     }
 
     public enum Status {
-        IN_PROGRESS, COMPLETED, FAILED
+        IN_PROGRESS, VERIFYING, MOVING, COMPLETED, FAILED
     }
 }
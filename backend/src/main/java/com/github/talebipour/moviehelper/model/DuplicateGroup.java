@@ -0,0 +1,63 @@
+package com.github.talebipour.moviehelper.model;
+
+import java.util.List;
+
+/**
+ * Files with the same content, all but one of them can be removed.
+ */
+public class DuplicateGroup {
+
+    private long size;
+    private String hash;
+    private boolean verified;
+    private List<String> paths;
+
+    public DuplicateGroup() {
+    }
+
+    public DuplicateGroup(long size, String hash, boolean verified, List<String> paths) {
+        this.size = size;
+        this.hash = hash;
+        this.verified = verified;
+        this.paths = paths;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * OpenSubtitles hash, or the full content digest if the group is verified.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public void setVerified(boolean verified) {
+        this.verified = verified;
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public void setPaths(List<String> paths) {
+        this.paths = paths;
+    }
+
+    public long getReclaimableBytes() {
+        return size * (paths.size() - 1);
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.talebipour.moviehelper.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a duplicate search over the media directory.
+ */
+public class DuplicateReport {
+
+    private String jobId;
+    private volatile Status status = Status.RUNNING;
+    private boolean verify;
+    private long startTime;
+    private long finishTime;
+    private volatile long scannedFiles;
+    private volatile long hashedFiles;
+    private List<DuplicateGroup> groups = new ArrayList<>();
+    private String message;
+
+    public DuplicateReport() {
+    }
+
+    public DuplicateReport(boolean verify, long startTime) {
+        this.verify = verify;
+        this.startTime = startTime;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public boolean isVerify() {
+        return verify;
+    }
+
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    public void setFinishTime(long finishTime) {
+        this.finishTime = finishTime;
+    }
+
+    public long getScannedFiles() {
+        return scannedFiles;
+    }
+
+    public void setScannedFiles(long scannedFiles) {
+        this.scannedFiles = scannedFiles;
+    }
+
+    public long getHashedFiles() {
+        return hashedFiles;
+    }
+
+    public void setHashedFiles(long hashedFiles) {
+        this.hashedFiles = hashedFiles;
+    }
+
+    public List<DuplicateGroup> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<DuplicateGroup> groups) {
+        this.groups = groups;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public long getReclaimableBytes() {
+        return groups.stream().mapToLong(DuplicateGroup::getReclaimableBytes).sum();
+    }
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.talebipour.moviehelper.model;
+
+/**
+ * A change of an entry of a watched directory.
+ */
+public class FileChange {
+
+    public enum Type {
+        CREATED, DELETED, MODIFIED,
+        /**
+         * Changes are lost, the directory should be listed again.
+         */
+        OVERFLOW
+    }
+
+    private Type type;
+    private String path;
+
+    public FileChange() {
+    }
+
+    public FileChange(Type type, String path) {
+        this.type = type;
+        this.path = path;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * Path of the entry, or of the directory for {@link Type#OVERFLOW}.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + path;
+    }
+}
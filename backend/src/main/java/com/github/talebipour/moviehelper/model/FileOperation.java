@@ -0,0 +1,61 @@
+package com.github.talebipour.moviehelper.model;
+
+/**
+ * A single file operation of a batch, paths are relative to the root directory.
+ */
+public class FileOperation {
+
+    private Type type;
+    private String source;
+    private String target;
+
+    public FileOperation() {
+    }
+
+    public FileOperation(Type type, String source, String target) {
+        this.type = type;
+        this.source = source;
+        this.target = target;
+    }
+
+    public static FileOperation delete(String path) {
+        return new FileOperation(Type.DELETE, path, null);
+    }
+
+    public static FileOperation move(String source, String target) {
+        return new FileOperation(Type.MOVE, source, target);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.MOVE ? type + " " + source + " -> " + target : type + " " + source;
+    }
+
+    public enum Type {
+        DELETE, MOVE
+    }
+}
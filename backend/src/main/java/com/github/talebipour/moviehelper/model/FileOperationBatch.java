@@ -0,0 +1,91 @@
+package com.github.talebipour.moviehelper.model;
+
+import java.util.List;
+
+/**
+ * Status of a batch of file operations and result of each of them.
+ */
+public class FileOperationBatch {
+
+    private String id;
+    private volatile Status status;
+    private List<Item> items;
+
+    public FileOperationBatch() {
+    }
+
+    public FileOperationBatch(String id, List<Item> items) {
+        this.id = id;
+        this.items = items;
+        this.status = Status.RUNNING;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Item> items) {
+        this.items = items;
+    }
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED, ROLLED_BACK, CANCELLED
+    }
+
+    public static class Item {
+        private FileOperation operation;
+        private volatile ItemStatus status = ItemStatus.PENDING;
+        private volatile String message;
+
+        public Item() {
+        }
+
+        public Item(FileOperation operation) {
+            this.operation = operation;
+        }
+
+        public FileOperation getOperation() {
+            return operation;
+        }
+
+        public void setOperation(FileOperation operation) {
+            this.operation = operation;
+        }
+
+        public ItemStatus getStatus() {
+            return status;
+        }
+
+        public void setStatus(ItemStatus status) {
+            this.status = status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+
+    public enum ItemStatus {
+        PENDING, DONE, FAILED, ROLLED_BACK, CANCELLED
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.talebipour.moviehelper.model;
+
+/**
+ * Result of a garbage collection of the subtitle store.
+ */
+public class GarbageCollectionReport {
+
+    private long blobs;
+    private long deletedBlobs;
+    private long freedBytes;
+
+    public long getBlobs() {
+        return blobs;
+    }
+
+    public void setBlobs(long blobs) {
+        this.blobs = blobs;
+    }
+
+    public long getDeletedBlobs() {
+        return deletedBlobs;
+    }
+
+    public void setDeletedBlobs(long deletedBlobs) {
+        this.deletedBlobs = deletedBlobs;
+    }
+
+    public long getFreedBytes() {
+        return freedBytes;
+    }
+
+    public void setFreedBytes(long freedBytes) {
+        this.freedBytes = freedBytes;
+    }
+}
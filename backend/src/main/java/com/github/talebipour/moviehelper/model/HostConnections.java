@@ -0,0 +1,94 @@
+package com.github.talebipour.moviehelper.model;
+
+/**
+ * Request statistics of one host which files are downloaded from.
+ */
+public class HostConnections {
+
+    private String host;
+    private int maxActive;
+    private int active;
+    private int queued;
+    private long requests;
+    private long http2Responses;
+    private long failures;
+
+    public HostConnections() {
+    }
+
+    public HostConnections(String host, int maxActive, int active, int queued, long requests, long http2Responses,
+                           long failures) {
+        this.host = host;
+        this.maxActive = maxActive;
+        this.active = active;
+        this.queued = queued;
+        this.requests = requests;
+        this.http2Responses = http2Responses;
+        this.failures = failures;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    /**
+     * Upper bound of concurrent requests to the host.
+     */
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public void setActive(int active) {
+        this.active = active;
+    }
+
+    /**
+     * Requests which wait for an active one to finish.
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    public void setQueued(int queued) {
+        this.queued = queued;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public void setRequests(long requests) {
+        this.requests = requests;
+    }
+
+    /**
+     * Responses which are received over HTTP/2, they share one multiplexed connection.
+     */
+    public long getHttp2Responses() {
+        return http2Responses;
+    }
+
+    public void setHttp2Responses(long http2Responses) {
+        this.http2Responses = http2Responses;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public void setFailures(long failures) {
+        this.failures = failures;
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.talebipour.moviehelper.model;
+
+/**
+ * A file which appeared in a watched folder and was imported.
+ */
+public class ImportedFile {
+
+    public enum Type {
+        MOVIE, SUBTITLE
+    }
+
+    private String path;
+    private Type type;
+    private String hash;
+    private String pairedWith;
+    private long importTime;
+
+    public ImportedFile() {
+    }
+
+    public ImportedFile(String path, Type type, long importTime) {
+        this.path = path;
+        this.type = type;
+        this.importTime = importTime;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * OpenSubtitles hash of a movie.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * Path of the subtitle of a movie or the movie of a subtitle, null if it is not paired.
+     */
+    public String getPairedWith() {
+        return pairedWith;
+    }
+
+    public void setPairedWith(String pairedWith) {
+        this.pairedWith = pairedWith;
+    }
+
+    public long getImportTime() {
+        return importTime;
+    }
+
+    public void setImportTime(long importTime) {
+        this.importTime = importTime;
+    }
+}
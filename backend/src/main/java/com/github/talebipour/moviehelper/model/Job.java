@@ -0,0 +1,159 @@
+package com.github.talebipour.moviehelper.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long running operation which runs in background. Progress is reported by the operation itself and cancellation
+ * is cooperative, the operation checks {@link #checkCancelled()} between its steps.
+ */
+public class Job {
+
+    private String id;
+    private String type;
+    private volatile Status status = Status.QUEUED;
+    private volatile long total = -1;
+    private final AtomicLong done = new AtomicLong();
+    private volatile boolean cancelRequested;
+    private volatile String message;
+    private volatile Object result;
+    private long createTime;
+    private volatile long startTime;
+    private volatile long finishTime;
+
+    public Job() {
+    }
+
+    public Job(String id, String type, long createTime) {
+        this.id = id;
+        this.type = type;
+        this.createTime = createTime;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * Total amount of work in units of the job type, or -1 if it is not known.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getDone() {
+        return done.get();
+    }
+
+    public void setDone(long done) {
+        this.done.set(done);
+    }
+
+    public void addDone(long delta) {
+        done.addAndGet(delta);
+    }
+
+    /**
+     * Progress percent or -1 if total is not known.
+     */
+    public int getProgressPercent() {
+        long currentTotal = total;
+        if (currentTotal < 0) {
+            return -1;
+        }
+        return currentTotal == 0 ? 100 : (int) Math.min(100, done.get() * 100 / currentTotal);
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    public void setCancelRequested(boolean cancelRequested) {
+        this.cancelRequested = cancelRequested;
+    }
+
+    /**
+     * Stop the job if cancellation is requested.
+     *
+     * @throws CancellationException if cancellation is requested
+     */
+    public void checkCancelled() {
+        if (cancelRequested) {
+            throw new CancellationException("Job " + id + " is cancelled.");
+        }
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Object getResult() {
+        return result;
+    }
+
+    public void setResult(Object result) {
+        this.result = result;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(long createTime) {
+        this.createTime = createTime;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    public void setFinishTime(long finishTime) {
+        this.finishTime = finishTime;
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return status != Status.QUEUED && status != Status.RUNNING;
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.talebipour.moviehelper.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Container level information of a movie file.
+ */
+public class MediaMetadata {
+
+    private Container container;
+    private double durationSeconds;
+    private int width;
+    private int height;
+    private List<Track> tracks = new ArrayList<>();
+
+    public MediaMetadata() {
+    }
+
+    public MediaMetadata(Container container) {
+        this.container = container;
+    }
+
+    public Container getContainer() {
+        return container;
+    }
+
+    public void setContainer(Container container) {
+        this.container = container;
+    }
+
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(double durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public List<Track> getTracks() {
+        return tracks;
+    }
+
+    public void setTracks(List<Track> tracks) {
+        this.tracks = tracks;
+    }
+
+    public enum Container {
+        MATROSKA, MP4
+    }
+
+    public enum TrackType {
+        VIDEO, AUDIO, SUBTITLE, OTHER
+    }
+
+    public static class Track {
+        private long number;
+        private TrackType type;
+        private String codec;
+        private String language;
+        private String name;
+
+        public Track() {
+        }
+
+        public Track(long number) {
+            this.number = number;
+        }
+
+        public long getNumber() {
+            return number;
+        }
+
+        public void setNumber(long number) {
+            this.number = number;
+        }
+
+        public TrackType getType() {
+            return type;
+        }
+
+        public void setType(TrackType type) {
+            this.type = type;
+        }
+
+        public String getCodec() {
+            return codec;
+        }
+
+        public void setCodec(String codec) {
+            this.codec = codec;
+        }
+
+        public String getLanguage() {
+            return language;
+        }
+
+        public void setLanguage(String language) {
+            this.language = language;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "Track{" +
+                   "number=" + number +
+                   ", type=" + type +
+                   ", codec='" + codec + '\'' +
+                   ", language='" + language + '\'' +
+                   '}';
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.talebipour.moviehelper.model;
+
+import java.util.List;
+
+/**
+ * A finished request and the time it spent in file system, network and process operations.
+ */
+public class RequestTrace {
+
+    private String method;
+    private String path;
+    private int status;
+    private long startTime;
+    private long durationMillis;
+    private List<TraceSpan> spans;
+
+    public String getMethod() {
+        return method;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    /**
+     * Request URI with its query string.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Spans grouped by name, the slowest in total first. Spans may overlap, e.g. stat calls of a listing are inside
+     * its {@code fs.list} span, and spans of parallel operations may add up to more than the duration.
+     */
+    public List<TraceSpan> getSpans() {
+        return spans;
+    }
+
+    public void setSpans(List<TraceSpan> spans) {
+        this.spans = spans;
+    }
+}
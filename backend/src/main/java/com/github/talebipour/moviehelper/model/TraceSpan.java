@@ -0,0 +1,78 @@
+package com.github.talebipour.moviehelper.model;
+
+/**
+ * Spans of a request with the same name, e.g. all stat calls of a directory listing.
+ */
+public class TraceSpan {
+
+    private String name;
+    private long count;
+    private long totalMicros;
+    private long maxMicros;
+    private String slowestDetail;
+
+    public TraceSpan() {
+    }
+
+    public TraceSpan(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Add a span which took the given time.
+     */
+    public void record(long micros, String detail) {
+        count++;
+        totalMicros += micros;
+        if (micros >= maxMicros) {
+            maxMicros = micros;
+            slowestDetail = detail;
+        }
+    }
+
+    /**
+     * Kind of the operation, e.g. {@code fs.stat} or {@code http}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    public void setTotalMicros(long totalMicros) {
+        this.totalMicros = totalMicros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public void setMaxMicros(long maxMicros) {
+        this.maxMicros = maxMicros;
+    }
+
+    /**
+     * What the slowest span worked on, e.g. a path or a URL.
+     */
+    public String getSlowestDetail() {
+        return slowestDetail;
+    }
+
+    public void setSlowestDetail(String slowestDetail) {
+        this.slowestDetail = slowestDetail;
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.talebipour.moviehelper.model;
+
+/**
+ * Load of the I/O executor of a volume.
+ */
+public class VolumeIoStatistics {
+
+    private String name;
+    private String root;
+    private int threads;
+    private int active;
+    private int queued;
+    private long completed;
+    private long rejected;
+
+    /**
+     * Name of the volume, empty for the default root directory.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getRoot() {
+        return root;
+    }
+
+    public void setRoot(String root) {
+        this.root = root;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Tasks which are running now.
+     */
+    public int getActive() {
+        return active;
+    }
+
+    public void setActive(int active) {
+        this.active = active;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public void setQueued(int queued) {
+        this.queued = queued;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(long completed) {
+        this.completed = completed;
+    }
+
+    /**
+     * Requests which are rejected because the queue was full.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+}
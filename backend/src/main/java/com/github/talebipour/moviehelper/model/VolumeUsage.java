@@ -0,0 +1,64 @@
+package com.github.talebipour.moviehelper.model;
+
+/**
+ * Space usage of a volume which holds media files.
+ */
+public class VolumeUsage {
+
+    private String name;
+    private String type;
+    private long totalBytes;
+    private long usableBytes;
+    private long reservedBytes;
+
+    public VolumeUsage() {
+    }
+
+    public VolumeUsage(String name, String type, long totalBytes, long usableBytes, long reservedBytes) {
+        this.name = name;
+        this.type = type;
+        this.totalBytes = totalBytes;
+        this.usableBytes = usableBytes;
+        this.reservedBytes = reservedBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public long getUsableBytes() {
+        return usableBytes;
+    }
+
+    public void setUsableBytes(long usableBytes) {
+        this.usableBytes = usableBytes;
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public void setReservedBytes(long reservedBytes) {
+        this.reservedBytes = reservedBytes;
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.model.BufferPoolStatistics;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pool of direct buffers shared by all downloads, so concurrent downloads do not grow the heap. Buffer size is rounded
+ * up to a multiple of {@link #ALIGNMENT} and buffers are memory aligned, so full buffers are written as aligned blocks.
+ * <p>
+ * With adaptive sizing, throughput of finished downloads decides the buffer size: a buffer should hold what arrives in
+ * {@code downloader.buffer.fill.millis}, so fast downloads write fewer and larger blocks and slow ones keep less memory
+ * while waiting for data. Buffers of the previous size are dropped when they are released.
+ */
+@Component
+public class BufferPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(BufferPool.class);
+
+    public static final int ALIGNMENT = 4096;
+    /**
+     * Weight of the last observation in the average throughput.
+     */
+    private static final double THROUGHPUT_WEIGHT = 0.3;
+
+    private final int capacity;
+    private final boolean adaptive;
+    private final int minSize;
+    private final int maxSize;
+    private final long fillMillis;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final AtomicLong acquires = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong reusedBytes = new AtomicLong();
+    private final AtomicLong discards = new AtomicLong();
+    private final AtomicInteger resizes = new AtomicInteger();
+    private volatile int bufferSize;
+    private volatile long averageBytesPerSecond;
+
+    public BufferPool(@Value("${downloader.buffer.size}") int bufferSize,
+                      @Value("${downloader.buffer.pool.capacity:16}") int capacity,
+                      @Value("${downloader.buffer.adaptive:false}") boolean adaptive,
+                      @Value("${downloader.buffer.min.size:65536}") int minSize,
+                      @Value("${downloader.buffer.max.size:8388608}") int maxSize,
+                      @Value("${downloader.buffer.fill.millis:250}") long fillMillis) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size: " + bufferSize);
+        }
+        if (adaptive && (minSize <= 0 || maxSize < minSize || fillMillis <= 0)) {
+            throw new IllegalArgumentException("Invalid adaptive buffer sizes: " + minSize + "-" + maxSize);
+        }
+        this.bufferSize = align(bufferSize);
+        this.capacity = capacity;
+        this.adaptive = adaptive;
+        this.minSize = align(minSize);
+        this.maxSize = align(maxSize);
+        this.fillMillis = fillMillis;
+    }
+
+    private static int align(int size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public ByteBuffer acquire() {
+        acquires.incrementAndGet();
+        int size = bufferSize;
+        ByteBuffer buffer;
+        while ((buffer = buffers.poll()) != null) {
+            pooled.decrementAndGet();
+            if (buffer.capacity() == size) {
+                hits.incrementAndGet();
+                reusedBytes.addAndGet(size);
+                return buffer;
+            }
+            discards.incrementAndGet();
+        }
+        allocatedBytes.addAndGet(size + ALIGNMENT);
+        return ByteBuffer.allocateDirect(size + ALIGNMENT).alignedSlice(ALIGNMENT).limit(size).slice();
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (buffer.capacity() != bufferSize) {
+            discards.incrementAndGet();
+            return;
+        }
+        buffer.clear();
+        if (pooled.incrementAndGet() <= capacity) {
+            buffers.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+            discards.incrementAndGet();
+        }
+    }
+
+    /**
+     * Report throughput of a finished transfer, which resizes buffers when adaptive sizing is enabled. Transfers
+     * shorter than a few buffers say little about throughput and are ignored.
+     */
+    public void recordThroughput(long bytes, long nanos) {
+        if (!adaptive || nanos <= 0 || bytes < 4L * bufferSize) {
+            return;
+        }
+        long bytesPerSecond = (long) (bytes * 1e9 / nanos);
+        int newSize;
+        synchronized (this) {
+            averageBytesPerSecond = averageBytesPerSecond == 0 ? bytesPerSecond
+                    : (long) (THROUGHPUT_WEIGHT * bytesPerSecond + (1 - THROUGHPUT_WEIGHT) * averageBytesPerSecond);
+            long target = Math.max(minSize, Math.min(maxSize, averageBytesPerSecond * fillMillis / 1000));
+            // Sizes are powers of two, so small changes of throughput do not drop pooled buffers every time.
+            newSize = Math.max(minSize, Math.min(maxSize, Integer.highestOneBit((int) target - 1) << 1));
+            if (newSize < 2 * bufferSize && 2 * newSize > bufferSize) {
+                return;
+            }
+            bufferSize = newSize;
+            resizes.incrementAndGet();
+        }
+        logger.info("Resizing download buffers to {} bytes for {} bytes per second.", newSize, bytesPerSecond);
+    }
+
+    public BufferPoolStatistics getStatistics() {
+        long acquireCount = acquires.get();
+        long hitCount = hits.get();
+        BufferPoolStatistics statistics = new BufferPoolStatistics();
+        statistics.setBufferSize(bufferSize);
+        statistics.setCapacity(capacity);
+        statistics.setPooled(Math.max(0, pooled.get()));
+        statistics.setAdaptive(adaptive);
+        statistics.setAverageBytesPerSecond(averageBytesPerSecond);
+        statistics.setResizes(resizes.get());
+        statistics.setAcquires(acquireCount);
+        statistics.setHits(hitCount);
+        statistics.setHitRatePercent(acquireCount == 0 ? 0 : (int) (hitCount * 100 / acquireCount));
+        statistics.setAllocatedBytes(allocatedBytes.get());
+        statistics.setReusedBytes(reusedBytes.get());
+        statistics.setDiscards(discards.get());
+        return statistics;
+    }
+}
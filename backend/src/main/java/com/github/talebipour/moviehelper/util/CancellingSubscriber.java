@@ -0,0 +1,52 @@
+package com.github.talebipour.moviehelper.util;
+
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Subscriber of a body which is not needed, e.g. of a response with an unexpected status. Unlike
+ * {@link java.net.http.HttpResponse.BodySubscribers#replacing(Object)}, which reads and discards the whole body, the
+ * subscription is cancelled at once, so a multi-GB body is not transferred and the response completes as soon as its
+ * headers are read. The connection is closed rather than reused.
+ */
+class CancellingSubscriber<T> implements BodySubscriber<T> {
+
+    private final T value;
+    private final CompletableFuture<T> body = new CompletableFuture<>();
+
+    /**
+     * @param value body of the response
+     */
+    CancellingSubscriber(T value) {
+        this.value = value;
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+        return body;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.cancel();
+        body.complete(value);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        body.complete(value);
+    }
+
+    @Override
+    public void onComplete() {
+        body.complete(value);
+    }
+}
@@ -0,0 +1,290 @@
+package com.github.talebipour.moviehelper.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps total size of every directory subtree under the root directories.
+ * <p>
+ * Sizes are computed once after startup by walking the tree in parallel. Afterwards they are updated incrementally by
+ * changes made through this application. Changes made by other tools are detected when a listing sees a directory whose
+ * modification time differs from the scanned one, then that subtree is scanned again in background. Files which grow
+ * in place do not change the modification time of their directory, so the whole tree is also scanned again every
+ * {@code directory.size.rescan.millis}. A scan drops directories under it which do not exist anymore. Totals are
+ * eventually consistent, a directory which is not scanned yet has no size. Sizes which are restored from a
+ * {@link LibrarySnapshot} are served until the scan after startup replaces them, so changes made while the
+ * application was down are found too.
+ * <p>
+ * Every directory also has a version which changes whenever size of anything under it changes, whether by a change
+ * made through this application, a download which is still being written or a scan which finds a different size, so it
+ * can be used to validate cached listings. A scan keeps the version of a directory whose size and modification time are
+ * unchanged.
+ */
+@Component
+public class DirectorySizeAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectorySizeAggregator.class);
+
+    private final List<Path> roots = new ArrayList<>();
+    private final ForkJoinPool pool;
+    private final long rescanMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Path> pendingScans = ConcurrentHashMap.newKeySet();
+    private final AtomicLong versions = new AtomicLong();
+
+    public DirectorySizeAggregator(FileUtil fileUtil,
+                                   @Value("${directory.size.parallelism:0}") int parallelism,
+                                   @Value("${directory.size.rescan.millis:3600000}") long rescanMillis) {
+        // Named roots under another root are scanned with it.
+        List<Path> volumeRoots = fileUtil.getVolumes().stream().map(Volume::getRoot).collect(Collectors.toList());
+        for (Path root : volumeRoots) {
+            if (volumeRoots.stream().noneMatch(other -> !other.equals(root) && root.startsWith(other))) {
+                roots.add(root);
+            }
+        }
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.rescanMillis = rescanMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "directory-size-rescan");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scanInBackground() {
+        if (!entries.isEmpty()) {
+            logger.info("Sizes of {} directories are restored, they are served until the scan finishes.",
+                        entries.size());
+        }
+        pool.execute(this::scan);
+        if (rescanMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::scan, rescanMillis, rescanMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    /**
+     * Scan the whole tree and wait for it to finish.
+     */
+    public void scan() {
+        long start = System.currentTimeMillis();
+        long size = 0;
+        for (Path root : roots) {
+            size += scanTree(root);
+        }
+        logger.info("Scanned {} directories, total size {} bytes in {} ms.", entries.size(), size,
+                    System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Get total size of a directory subtree without any I/O.
+     *
+     * @param modifiedTime last modified time of the directory which is already read by the caller, if it differs from
+     * the scanned one the directory is scanned again in background
+     */
+    public OptionalLong getSize(Path directory, FileTime modifiedTime) {
+        Path dir = normalize(directory);
+        Entry entry = entries.get(dir);
+        if (entry == null) {
+            return OptionalLong.empty();
+        }
+        if (modifiedTime != null && modifiedTime.toMillis() != entry.modifiedTime) {
+            rescan(dir);
+        }
+        return OptionalLong.of(entry.size.get());
+    }
+
+    /**
+     * Restore size of a directory which is scanned before a restart, unless it is scanned again already.
+     *
+     * @param modifiedTime modification time of the directory when it was scanned
+     */
+    public void restore(Path directory, long size, long modifiedTime) {
+        entries.putIfAbsent(normalize(directory), new Entry(size, modifiedTime, versions.incrementAndGet()));
+    }
+
+    /**
+     * Visit every directory which has a size.
+     */
+    public void forEach(SizeConsumer consumer) {
+        entries.forEach((dir, entry) -> consumer.accept(dir, entry.size.get(), entry.modifiedTime));
+    }
+
+    /**
+     * Get version of a directory or -1 if it is not scanned yet.
+     */
+    public long getVersion(Path directory) {
+        Entry entry = entries.get(normalize(directory));
+        return entry == null ? -1 : entry.version;
+    }
+
+    /**
+     * Record that size of a file changed by the given delta, e.g. it is created, deleted or grown.
+     */
+    public void fileChanged(Path file, long delta) {
+        if (delta != 0) {
+            addToAncestors(normalize(file), delta);
+        }
+    }
+
+    public void fileMoved(Path source, Path target, long size) {
+        fileChanged(source, -size);
+        fileChanged(target, size);
+    }
+
+    public void directoryRemoved(Path directory) {
+        Path dir = normalize(directory);
+        Entry entry = entries.remove(dir);
+        if (entry == null) {
+            return;
+        }
+        entries.keySet().removeIf(path -> path.startsWith(dir));
+        addToAncestors(dir, -entry.size.get());
+    }
+
+    /**
+     * Scan the given directory again in background and apply the difference to its ancestors.
+     */
+    public void rescan(Path directory) {
+        Path dir = normalize(directory);
+        if (!pendingScans.add(dir)) {
+            return;
+        }
+        pool.execute(() -> {
+            try {
+                if (!Files.isDirectory(dir)) {
+                    directoryRemoved(dir);
+                    return;
+                }
+                Entry previous = entries.get(dir);
+                long size = scanTree(dir);
+                if (previous != null && size != previous.size.get()) {
+                    addToAncestors(dir, size - previous.size.get());
+                }
+                logger.debug("Rescanned {}, size {} bytes.", dir, size);
+            } finally {
+                pendingScans.remove(dir);
+            }
+        });
+    }
+
+    /**
+     * Scan a subtree and drop entries of directories under it which are not found anymore.
+     */
+    private long scanTree(Path directory) {
+        Set<Path> scanned = ConcurrentHashMap.newKeySet();
+        long size = pool.invoke(new ScanTask(directory, scanned));
+        entries.keySet().removeIf(path -> path.startsWith(directory) && !scanned.contains(path));
+        return size;
+    }
+
+    private void addToAncestors(Path path, long delta) {
+        Path root = roots.stream().filter(path::startsWith).findFirst().orElse(null);
+        if (root == null) {
+            return;
+        }
+        for (Path dir = path.getParent(); dir != null && dir.startsWith(root); dir = dir.getParent()) {
+            Entry entry = entries.get(dir);
+            if (entry != null) {
+                entry.size.addAndGet(delta);
+                entry.version = versions.incrementAndGet();
+            }
+        }
+    }
+
+    private Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    public interface SizeConsumer {
+        void accept(Path directory, long size, long modifiedTime);
+    }
+
+    private static class Entry {
+        private final AtomicLong size;
+        private final long modifiedTime;
+        private volatile long version;
+
+        private Entry(long size, long modifiedTime, long version) {
+            this.size = new AtomicLong(size);
+            this.modifiedTime = modifiedTime;
+            this.version = version;
+        }
+    }
+
+    private class ScanTask extends RecursiveTask<Long> {
+        private final Path directory;
+        private final Set<Path> scanned;
+
+        private ScanTask(Path directory, Set<Path> scanned) {
+            this.directory = directory;
+            this.scanned = scanned;
+        }
+
+        @Override
+        protected Long compute() {
+            long size = 0;
+            long modifiedTime;
+            List<ScanTask> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                modifiedTime = Files.getLastModifiedTime(directory).toMillis();
+                for (Path child : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class,
+                                                                          LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        ScanTask task = new ScanTask(child, scanned);
+                        task.fork();
+                        subTasks.add(task);
+                    } else if (attributes.isRegularFile()) {
+                        size += attributes.size();
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Scanning {} failed: {}", directory, e.toString());
+                subTasks.forEach(ScanTask::join);
+                return 0L;
+            }
+            for (ScanTask task : subTasks) {
+                size += task.join();
+            }
+            Entry previous = entries.get(directory);
+            if (previous == null || previous.size.get() != size || previous.modifiedTime != modifiedTime) {
+                entries.put(directory, new Entry(size, modifiedTime, versions.incrementAndGet()));
+            }
+            scanned.add(directory);
+            return size;
+        }
+    }
+}
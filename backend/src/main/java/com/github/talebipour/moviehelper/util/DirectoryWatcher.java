@@ -0,0 +1,295 @@
+package com.github.talebipour.moviehelper.util;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.github.talebipour.moviehelper.model.FileChange;
+import com.github.talebipour.moviehelper.model.FileChange.Type;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Notifies subscribers of changes of directory entries, whether they are made by this application or by others. A
+ * directory is registered once with a shared {@link WatchService}, however many subscribers it has, and is
+ * unregistered with its last subscriber. Events are collected for {@code files.events.batch.millis} and merged per
+ * entry, e.g. a file which is created and modified is only created, then the same batch is handed to every
+ * subscriber.
+ * <p>
+ * Batches are delivered on {@code files.events.threads} threads, in order per subscriber. When more than
+ * {@code files.events.max.pending.batches} batches wait for a slow subscriber, they are replaced by an
+ * {@link Type#OVERFLOW} change, so it lists the directory again instead of holding more events.
+ */
+@Component
+public class DirectoryWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+    private final FileUtil fileUtil;
+    private final long batchMillis;
+    private final int maxPendingBatches;
+    private final WatchService watchService;
+    private final Map<Path, Watch> watches = new HashMap<>();
+    private final Map<WatchKey, Watch> keys = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private final ExecutorService deliveryExecutor;
+
+    public DirectoryWatcher(FileUtil fileUtil,
+                            @Value("${files.events.batch.millis:200}") long batchMillis,
+                            @Value("${files.events.threads:2}") int threads,
+                            @Value("${files.events.max.pending.batches:16}") int maxPendingBatches)
+            throws IOException {
+        this.fileUtil = fileUtil;
+        this.batchMillis = batchMillis;
+        this.maxPendingBatches = maxPendingBatches;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "files-events-batch"));
+        AtomicInteger counter = new AtomicInteger();
+        this.deliveryExecutor = Executors.newFixedThreadPool(
+                threads, runnable -> daemon(runnable, "files-events-" + counter.incrementAndGet()));
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @PostConstruct
+    public void start() {
+        daemon(this::watch, "files-events-watcher").start();
+        flusher.scheduleWithFixedDelay(this::flush, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Subscribe to changes of entries of the directory, until the subscription is closed.
+     */
+    public synchronized Subscription subscribe(Path directory, Listener listener) throws IOException {
+        Path dir = directory.toAbsolutePath().normalize();
+        Watch watch = watches.get(dir);
+        if (watch == null) {
+            WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            watch = new Watch(dir, key);
+            watches.put(dir, watch);
+            keys.put(key, watch);
+            logger.debug("Watching {}", dir);
+        }
+        Subscription subscription = new Subscription(watch, listener);
+        watch.subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Number of directories which are registered with the watch service.
+     */
+    public synchronized int getWatchedDirectories() {
+        return watches.size();
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        Watch watch = subscription.watch;
+        if (watch.subscriptions.remove(subscription) && watch.subscriptions.isEmpty()) {
+            watch.key.cancel();
+            watches.remove(watch.directory, watch);
+            keys.remove(watch.key);
+            logger.debug("Stopped watching {}", watch.directory);
+        }
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Watch watch = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (watch != null) {
+                    watch.add(event);
+                }
+            }
+            if (!key.reset() && watch != null) {
+                // The directory is deleted, its subscribers get the last batch now.
+                synchronized (this) {
+                    watches.remove(watch.directory, watch);
+                    keys.remove(key);
+                }
+                watch.deleted();
+                flush(watch);
+            }
+        }
+    }
+
+    void flush() {
+        for (Watch watch : keys.values()) {
+            flush(watch);
+        }
+    }
+
+    private void flush(Watch watch) {
+        List<FileChange> batch = watch.drain();
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (Subscription subscription : watch.subscriptions) {
+            subscription.offer(batch);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        watchService.close();
+        flusher.shutdownNow();
+        deliveryExecutor.shutdownNow();
+    }
+
+    /**
+     * Receives batches of changes.
+     */
+    public interface Listener {
+        /**
+         * @throws IOException if the subscriber is gone, then it is unsubscribed
+         */
+        void changed(List<FileChange> changes) throws IOException;
+    }
+
+    /**
+     * A registered directory and the changes since its last batch.
+     */
+    private class Watch {
+        private final Path directory;
+        private final WatchKey key;
+        private final Set<Subscription> subscriptions = new CopyOnWriteArraySet<>();
+        private final Map<Path, Type> changes = new LinkedHashMap<>();
+        private boolean overflow;
+
+        Watch(Path directory, WatchKey key) {
+            this.directory = directory;
+            this.key = key;
+        }
+
+        synchronized void add(WatchEvent<?> event) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                return;
+            }
+            Path path = directory.resolve((Path) event.context());
+            Type type = event.kind() == ENTRY_CREATE ? Type.CREATED
+                    : event.kind() == ENTRY_DELETE ? Type.DELETED : Type.MODIFIED;
+            Type previous = changes.get(path);
+            if (previous == Type.CREATED && type == Type.MODIFIED) {
+                return;
+            }
+            if (previous == Type.CREATED && type == Type.DELETED) {
+                changes.remove(path);
+            } else if (previous == Type.DELETED && type == Type.CREATED) {
+                // Replaced, e.g. by a move.
+                changes.put(path, Type.MODIFIED);
+            } else {
+                changes.put(path, type);
+            }
+        }
+
+        synchronized void deleted() {
+            changes.clear();
+            changes.put(directory, Type.DELETED);
+        }
+
+        synchronized List<FileChange> drain() {
+            List<FileChange> batch = new ArrayList<>();
+            if (overflow) {
+                batch.add(new FileChange(Type.OVERFLOW, fileUtil.relativize(directory)));
+            } else {
+                changes.forEach((path, type) -> batch.add(new FileChange(type, fileUtil.relativize(path))));
+            }
+            overflow = false;
+            changes.clear();
+            return Collections.unmodifiableList(batch);
+        }
+    }
+
+    /**
+     * A subscriber of a directory and the batches which are not delivered to it yet.
+     */
+    public class Subscription implements AutoCloseable {
+        private final Watch watch;
+        private final Listener listener;
+        private final Deque<List<FileChange>> batches = new ArrayDeque<>();
+        private boolean delivering;
+
+        private Subscription(Watch watch, Listener listener) {
+            this.watch = watch;
+            this.listener = listener;
+        }
+
+        private void offer(List<FileChange> batch) {
+            synchronized (this) {
+                if (batches.size() >= maxPendingBatches) {
+                    batches.clear();
+                    batch = List.of(new FileChange(Type.OVERFLOW, fileUtil.relativize(watch.directory)));
+                }
+                batches.add(batch);
+                if (delivering) {
+                    return;
+                }
+                delivering = true;
+            }
+            deliveryExecutor.execute(this::deliver);
+        }
+
+        private void deliver() {
+            while (true) {
+                List<FileChange> batch;
+                synchronized (this) {
+                    batch = batches.poll();
+                    if (batch == null) {
+                        delivering = false;
+                        return;
+                    }
+                }
+                try {
+                    listener.changed(batch);
+                } catch (IOException | RuntimeException e) {
+                    logger.debug("Delivering changes of {} failed: {}", watch.directory, e.toString());
+                    close();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            unsubscribe(this);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.exception.InsufficientStorageException;
+import com.github.talebipour.moviehelper.model.VolumeUsage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Admission control for writes into media volumes. A write is admitted only when the usable space of its volume,
+ * minus the remaining bytes of all admitted writes and a safety margin, can hold it. Usable space readings are
+ * cached for a short time, so checks are cheap when many requests arrive together. File stores of the last
+ * {@value #MAX_DIRECTORIES} directories are cached too.
+ */
+@Component
+public class DiskSpaceMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskSpaceMonitor.class);
+    private static final int MAX_DIRECTORIES = 256;
+
+    private final FileUtil fileUtil;
+    private final long cacheTtlMillis;
+    private final long minFreeBytes;
+    private final SpaceSource spaceSource;
+    private final Map<Path, FileStore> stores = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, FileStore> eldest) {
+                    return size() > MAX_DIRECTORIES;
+                }
+            });
+    private final Map<FileStore, Usage> usages = new ConcurrentHashMap<>();
+    private final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DiskSpaceMonitor(FileUtil fileUtil,
+                            @Value("${disk.space.cache.ttl:5000}") long cacheTtlMillis,
+                            @Value("${disk.space.min.free:536870912}") long minFreeBytes) {
+        this(fileUtil, cacheTtlMillis, minFreeBytes, FileStore::getUsableSpace);
+    }
+
+    DiskSpaceMonitor(FileUtil fileUtil, long cacheTtlMillis, long minFreeBytes, SpaceSource spaceSource) {
+        this.fileUtil = fileUtil;
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.minFreeBytes = minFreeBytes;
+        this.spaceSource = spaceSource;
+    }
+
+    /**
+     * Reserve space for writing a file of the given size into the directory.
+     *
+     * @param key unique key of the write, used to release the reservation
+     * @param size size of the file or a negative value if it is unknown
+     * @param writtenBytes supplier of bytes which take disk space so far, e.g. written or preallocated ones, they are
+     * already deducted from usable space
+     * @throws InsufficientStorageException if volume can not hold the file
+     */
+    public synchronized void reserve(String key, Path directory, long size, LongSupplier writtenBytes) {
+        FileStore store = fileStore(directory);
+        long available = usableBytes(store) - reservedBytes(store) - minFreeBytes;
+        if (available < Math.max(size, 0)) {
+            logger.warn("Rejecting {} bytes on {}, only {} bytes available.", size, store, available);
+            throw new InsufficientStorageException(String.format("Not enough space on %s, %d bytes available but %d "
+                                                                 + "bytes needed.", store.name(), available, size));
+        }
+        reservations.put(key, new Reservation(store, Math.max(size, 0), writtenBytes));
+    }
+
+    /**
+     * Check a small write which finishes immediately and does not need a reservation.
+     */
+    public void checkFree(Path directory, long size) {
+        FileStore store = fileStore(directory);
+        long available = usableBytes(store) - reservedBytes(store) - minFreeBytes;
+        if (available < size) {
+            throw new InsufficientStorageException("Not enough space on " + store.name() + ".");
+        }
+    }
+
+    public void release(String key) {
+        Reservation reservation = reservations.remove(key);
+        if (reservation != null) {
+            // Written bytes are not part of the cached usable space yet.
+            usages.remove(reservation.store);
+        }
+    }
+
+    public List<VolumeUsage> getVolumes() {
+        Set<FileStore> volumes = new LinkedHashSet<>();
+        fileUtil.getVolumes().forEach(volume -> volumes.add(fileStore(volume.getRoot())));
+        reservations.values().forEach(reservation -> volumes.add(reservation.store));
+        List<VolumeUsage> result = new ArrayList<>();
+        for (FileStore store : volumes) {
+            Usage usage = usage(store);
+            result.add(new VolumeUsage(store.name(), store.type(), usage.totalBytes, usage.usableBytes,
+                                       reservedBytes(store)));
+        }
+        return result;
+    }
+
+    private FileStore fileStore(Path directory) {
+        return stores.computeIfAbsent(directory, dir -> {
+            try {
+                return Files.getFileStore(dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private long usableBytes(FileStore store) {
+        return usage(store).usableBytes;
+    }
+
+    private Usage usage(FileStore store) {
+        long now = System.currentTimeMillis();
+        Usage usage = usages.get(store);
+        if (usage == null || now - usage.readAt > cacheTtlMillis) {
+            try {
+                usage = new Usage(store.getTotalSpace(), spaceSource.getUsableSpace(store), now);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            usages.put(store, usage);
+        }
+        return usage;
+    }
+
+    private long reservedBytes(FileStore store) {
+        return reservations.values().stream()
+                .filter(reservation -> reservation.store.equals(store))
+                .mapToLong(Reservation::remainingBytes)
+                .sum();
+    }
+
+    /**
+     * Reads usable space of a file store.
+     */
+    interface SpaceSource {
+        long getUsableSpace(FileStore store) throws IOException;
+    }
+
+    private static class Usage {
+        private final long totalBytes;
+        private final long usableBytes;
+        private final long readAt;
+
+        private Usage(long totalBytes, long usableBytes, long readAt) {
+            this.totalBytes = totalBytes;
+            this.usableBytes = usableBytes;
+            this.readAt = readAt;
+        }
+    }
+
+    private static class Reservation {
+        private final FileStore store;
+        private final long size;
+        private final LongSupplier writtenBytes;
+
+        private Reservation(FileStore store, long size, LongSupplier writtenBytes) {
+            this.store = store;
+            this.size = size;
+            this.writtenBytes = writtenBytes;
+        }
+
+        private long remainingBytes() {
+            return Math.max(0, size - writtenBytes.getAsLong());
+        }
+    }
+}
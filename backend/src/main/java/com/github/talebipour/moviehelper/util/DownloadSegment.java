@@ -0,0 +1,82 @@
+package com.github.talebipour.moviehelper.util;
+
+/**
+ * Byte range of a file which is downloaded by one range request. End of the range can be moved back while it is
+ * downloading, so an idle mirror can take over the part which is not received yet.
+ */
+class DownloadSegment {
+
+    private final long start;
+    private final Runnable onProgress;
+    private long end;
+    private long accepted;
+    private volatile long position;
+
+    DownloadSegment(long start, long end, Runnable onProgress) {
+        this.start = start;
+        this.end = end;
+        this.accepted = start;
+        this.position = start;
+        this.onProgress = onProgress;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    synchronized long getEnd() {
+        return end;
+    }
+
+    /**
+     * Accept the next received bytes.
+     *
+     * @return number of bytes which are in the range, the rest belongs to another segment
+     */
+    synchronized long accept(long length) {
+        long allowed = Math.min(length, end - accepted);
+        accepted += allowed;
+        return allowed;
+    }
+
+    synchronized boolean isAccepted() {
+        return accepted >= end;
+    }
+
+    synchronized long remaining() {
+        return end - accepted;
+    }
+
+    /**
+     * Split off the second half of bytes which are not received yet.
+     *
+     * @return the new segment or null if less than twice the minimum size is left
+     */
+    synchronized DownloadSegment split(long minSize) {
+        long remaining = end - accepted;
+        if (remaining < 2 * minSize) {
+            return null;
+        }
+        long middle = accepted + remaining / 2;
+        DownloadSegment segment = new DownloadSegment(middle, end, onProgress);
+        end = middle;
+        return segment;
+    }
+
+    /**
+     * End of bytes which are written to the file.
+     */
+    long getPosition() {
+        return position;
+    }
+
+    void setPosition(long position) {
+        this.position = position;
+        onProgress.run();
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + getEnd() + ")";
+    }
+}
@@ -0,0 +1,448 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.model.DownloadStatus;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a response body into a file using pooled direct buffers and asynchronous writes on the executor of the
+ * file's {@link Volume}. Next chunk of the body is requested only when there is no pending write, so a slow disk
+ * throttles the socket instead of buffering in memory.
+ * <p>
+ * The file can be extended to its final size before writing, so its size is reserved from the start. Java has no
+ * portable fallocate, so on filesystems which support sparse files, e.g. ext4 and xfs, the file stays sparse and its
+ * blocks are still allocated as they are written. Forcing data to disk according to the given {@link FsyncPolicy} and
+ * truncating the file run as tasks of the volume, so they block neither the network thread nor the completion of a
+ * write. When a download is resumed, writing starts at the given offset and the digest of the task continues from
+ * where it was left.
+ * <p>
+ * {@link DownloadStatus#getDownloadedBytes()} and the digest only count fully written buffers, so they are a safe
+ * offset to resume from after a failure and the readable prefix of the file. The file is truncated to them when the
+ * download completes or fails.
+ * <p>
+ * With a {@link DownloadSegment} only bytes inside the segment are written into the existing file and the request is
+ * cancelled when the segment end is reached. Progress is then reported to the segment and no digest is computed,
+ * because segments are not written in order.
+ */
+class DownloadSubscriber implements BodySubscriber<Path>, CompletionHandler<Integer, ByteBuffer> {
+
+    private static final Logger logger = LoggerFactory.getLogger(DownloadSubscriber.class);
+
+    private final DownloadTask task;
+    private final Path path;
+    private final ExecutorService ioExecutor;
+    private final BufferPool bufferPool;
+    private final DownloadStatus status;
+    private final DownloadSegment segment;
+    private final MessageDigest digest;
+    private final boolean preallocate;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncBatchSize;
+    private final CompletableFuture<Path> result = new CompletableFuture<>();
+    private final Deque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+
+    private Flow.Subscription subscription;
+    private AsynchronousFileChannel channel;
+    private ByteBuffer current;
+    private long position;
+    private long receivedBytes;
+    private long unsyncedBytes;
+    private long startNanos;
+    private long writeStartNanos;
+    private long diskNanos;
+    private boolean writing;
+    private boolean completed;
+    private boolean cancelled;
+    private Throwable failure;
+
+    DownloadSubscriber(DownloadTask task, long offset, BufferPool bufferPool, boolean preallocate,
+                       FsyncPolicy fsyncPolicy, long fsyncBatchSize) {
+        this.task = task;
+        this.path = task.getPath();
+        this.ioExecutor = task.getIoExecutor();
+        this.bufferPool = bufferPool;
+        this.status = task.getStatus();
+        this.segment = null;
+        this.digest = task.getDigest();
+        this.position = offset;
+        this.preallocate = preallocate && offset == 0 && status.getFile().getSize() > 0;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncBatchSize = fsyncBatchSize;
+    }
+
+    DownloadSubscriber(DownloadTask task, DownloadSegment segment, BufferPool bufferPool, FsyncPolicy fsyncPolicy,
+                       long fsyncBatchSize) {
+        this.task = task;
+        this.path = task.getPath();
+        this.ioExecutor = task.getIoExecutor();
+        this.bufferPool = bufferPool;
+        this.status = task.getStatus();
+        this.segment = segment;
+        this.digest = null;
+        this.position = segment.getPosition();
+        this.preallocate = false;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncBatchSize = fsyncBatchSize;
+    }
+
+    @Override
+    public CompletionStage<Path> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            if (this.subscription != null || cancelled) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+        }
+        startNanos = System.nanoTime();
+        try {
+            if (preallocate) {
+                preallocate(status.getFile().getSize());
+            }
+            if (preallocate || position > 0 || segment != null) {
+                channel = open(StandardOpenOption.WRITE);
+            } else {
+                channel = open(StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                               StandardOpenOption.TRUNCATE_EXISTING);
+            }
+        } catch (IOException e) {
+            subscription.cancel();
+            result.completeExceptionally(e);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    /**
+     * Open the file, writes run on the executor of its volume.
+     */
+    private AsynchronousFileChannel open(OpenOption... options) throws IOException {
+        return AsynchronousFileChannel.open(path, Set.of(options), ioExecutor);
+    }
+
+    private void preallocate(long size) throws IOException {
+        logger.info("Preallocating {} bytes for {}", size, path);
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Writing the last byte extends the file without writing the rest of it.
+            file.write(ByteBuffer.allocate(1), size - 1);
+        }
+        task.setAllocatedBytes(size);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        boolean requestMore;
+        boolean endOfSegment;
+        synchronized (this) {
+            if (result.isDone()) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                receivedBytes += item.remaining();
+                if (segment != null) {
+                    // Bytes after the end of the segment belong to another request.
+                    item.limit(item.position() + (int) segment.accept(item.remaining()));
+                }
+                while (item.hasRemaining()) {
+                    if (current == null) {
+                        current = bufferPool.acquire();
+                    }
+                    copy(item, current);
+                    if (!current.hasRemaining()) {
+                        current.flip();
+                        pendingWrites.add(current);
+                        current = null;
+                    }
+                }
+            }
+            writeNext();
+            endOfSegment = segment != null && segment.isAccepted();
+            requestMore = !writing && !endOfSegment;
+        }
+        if (endOfSegment) {
+            subscription.cancel();
+            onComplete();
+        } else if (requestMore) {
+            subscription.request(1);
+        }
+    }
+
+    private static void copy(ByteBuffer src, ByteBuffer dst) {
+        int length = Math.min(src.remaining(), dst.remaining());
+        ByteBuffer slice = src.slice();
+        slice.limit(length);
+        dst.put(slice);
+        src.position(src.position() + length);
+    }
+
+    private void writeNext() {
+        if (writing || pendingWrites.isEmpty()) {
+            return;
+        }
+        writing = true;
+        writeStartNanos = System.nanoTime();
+        ByteBuffer buffer = pendingWrites.peek();
+        channel.write(buffer, position, buffer, this);
+    }
+
+    @Override
+    public void completed(Integer written, ByteBuffer buffer) {
+        boolean sync = false;
+        synchronized (this) {
+            position += written;
+            unsyncedBytes += written;
+            diskNanos += System.nanoTime() - writeStartNanos;
+            if (failure != null) {
+                writing = false;
+                fail(failure);
+                return;
+            }
+            if (buffer.hasRemaining()) {
+                writeStartNanos = System.nanoTime();
+                channel.write(buffer, position, buffer, this);
+                return;
+            }
+            pendingWrites.poll();
+            if (digest != null) {
+                digest.update(buffer.rewind());
+            }
+            bufferPool.release(buffer);
+            if (fsyncPolicy == FsyncPolicy.BATCH && unsyncedBytes >= fsyncBatchSize) {
+                // The write stays pending until the batch is forced, so no other write is started meanwhile.
+                sync = true;
+            } else {
+                writing = false;
+                if (!proceed()) {
+                    return;
+                }
+            }
+        }
+        if (sync) {
+            ioExecutor.execute(this::forceBatch);
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    /**
+     * Continue after a write, returns whether the next chunk of the body should be requested.
+     */
+    private boolean proceed() {
+        updateProgress();
+        if (!pendingWrites.isEmpty()) {
+            writeNext();
+            return false;
+        }
+        if (completed) {
+            finish();
+            return false;
+        }
+        return true;
+    }
+
+    private void forceBatch() {
+        long start = System.nanoTime();
+        IOException error = null;
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            error = e;
+        }
+        boolean requestMore;
+        synchronized (this) {
+            writing = false;
+            diskNanos += System.nanoTime() - start;
+            unsyncedBytes = 0;
+            if (error != null) {
+                subscription.cancel();
+                fail(diskFailure(error));
+                return;
+            }
+            if (failure != null) {
+                fail(failure);
+                return;
+            }
+            requestMore = proceed();
+        }
+        if (requestMore) {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void failed(Throwable exc, ByteBuffer buffer) {
+        subscription.cancel();
+        synchronized (this) {
+            writing = false;
+            fail(diskFailure(exc));
+        }
+    }
+
+    /**
+     * Disk failures are wrapped, so they are not mistaken with network failures which can be resumed.
+     */
+    private static Throwable diskFailure(Throwable throwable) {
+        return throwable instanceof IOException ? new UncheckedIOException((IOException) throwable) : throwable;
+    }
+
+    @Override
+    public synchronized void onError(Throwable throwable) {
+        if (completed) {
+            // All needed bytes are received, the request is cancelled at the end of its segment.
+            return;
+        }
+        if (writing) {
+            // Buffers can not be released while the pending write still uses them.
+            failure = throwable;
+            return;
+        }
+        fail(throwable);
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        if (current != null) {
+            current.flip();
+            pendingWrites.add(current);
+            current = null;
+        }
+        writeNext();
+        if (!writing) {
+            finish();
+        }
+    }
+
+    /**
+     * Stop reading the body, e.g. because the file is deleted. The result fails with {@link CancellationException}.
+     */
+    void cancel() {
+        Flow.Subscription current;
+        synchronized (this) {
+            cancelled = true;
+            current = subscription;
+        }
+        if (current != null) {
+            current.cancel();
+        }
+        onError(new CancellationException("Download into " + path + " is cancelled."));
+    }
+
+    private void updateProgress() {
+        if (segment != null) {
+            segment.setPosition(position);
+            return;
+        }
+        status.setDownloadedBytes(position);
+        status.setReadableBytes(position);
+        task.progressed();
+        status.setNetworkBytesPerSecond(bytesPerSecond(receivedBytes, System.nanoTime() - startNanos));
+        status.setDiskBytesPerSecond(bytesPerSecond(position, diskNanos));
+        long size = status.getFile().getSize();
+        if (size > 0) {
+            status.setProgressPercent((int) Math.min(99, position * 100 / size));
+        }
+    }
+
+    private static long bytesPerSecond(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : (long) (bytes * 1e9 / nanos);
+    }
+
+    private void finish() {
+        writing = true;
+        ioExecutor.execute(this::truncateAndForce);
+    }
+
+    private void truncateAndForce() {
+        long start = System.nanoTime();
+        try {
+            truncate();
+            if (fsyncPolicy != FsyncPolicy.NONE && unsyncedBytes > 0) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                writing = false;
+                fail(diskFailure(e));
+            }
+            return;
+        }
+        synchronized (this) {
+            writing = false;
+            diskNanos += System.nanoTime() - start;
+            unsyncedBytes = 0;
+            updateProgress();
+            bufferPool.recordThroughput(receivedBytes, System.nanoTime() - startNanos);
+            close();
+            result.complete(path);
+        }
+    }
+
+    /**
+     * Cut a preallocated file to the written bytes, segments write into a file of the final size.
+     */
+    private void truncate() throws IOException {
+        if (segment == null && channel.size() > position) {
+            channel.truncate(position);
+            task.setAllocatedBytes(position);
+        }
+    }
+
+    private void fail(Throwable throwable) {
+        if (result.isDone()) {
+            return;
+        }
+        if (channel != null) {
+            try {
+                truncate();
+            } catch (IOException e) {
+                logger.warn("Truncating {} failed.", path, e);
+            }
+        }
+        close();
+        result.completeExceptionally(throwable);
+    }
+
+    private void close() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Closing {} failed.", path, e);
+        }
+        bufferPool.release(current);
+        current = null;
+        pendingWrites.forEach(bufferPool::release);
+        pendingWrites.clear();
+    }
+}
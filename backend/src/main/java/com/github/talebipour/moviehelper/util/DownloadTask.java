@@ -0,0 +1,157 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.exception.InvalidInputException;
+import com.github.talebipour.moviehelper.model.DownloadStatus;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Internal state of a file download which is not exposed through {@link DownloadStatus}.
+ */
+class DownloadTask {
+
+    private static final Map<String, String> DIGEST_ALGORITHMS = Map.of("MD5", "MD5",
+                                                                        "SHA1", "SHA-1",
+                                                                        "SHA256", "SHA-256",
+                                                                        "SHA512", "SHA-512");
+    private static final Pattern MD5_ETAG_PATTERN = Pattern.compile("\"[0-9a-fA-F]{32}\"");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final DownloadStatus status;
+    private Path path;
+    private ExecutorService ioExecutor;
+    private String etag;
+    private MessageDigest digest;
+    private String expectedDigest;
+    private boolean digestFromEtag;
+    private volatile long allocatedBytes;
+    private final AtomicLong countedBytes = new AtomicLong();
+    private Runnable progressListener = () -> { };
+
+    DownloadTask(DownloadStatus status) {
+        this.status = status;
+    }
+
+    DownloadStatus getStatus() {
+        return status;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    void setPath(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Executor of the {@link Volume} which holds the file, writes and reads of the file run on it.
+     */
+    ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    void setIoExecutor(ExecutorService ioExecutor) {
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * Bytes of the file which take disk space, i.e. its preallocated size or the downloaded bytes if they are more.
+     */
+    long getAllocatedBytes() {
+        return Math.max(allocatedBytes, status.getDownloadedBytes());
+    }
+
+    void setAllocatedBytes(long allocatedBytes) {
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Downloaded bytes since the last call, e.g. to add them to directory sizes while the file grows.
+     */
+    long takeUncountedBytes() {
+        long downloaded = status.getDownloadedBytes();
+        return downloaded - countedBytes.getAndSet(downloaded);
+    }
+
+    /**
+     * Listener which is run whenever the downloaded bytes change.
+     */
+    void setProgressListener(Runnable progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    void progressed() {
+        progressListener.run();
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Set ETag of the resource, a strong ETag of 32 hex digits is used as MD5 of content if no checksum is expected.
+     */
+    void setEtag(String etag) {
+        this.etag = etag;
+        if (digest == null && MD5_ETAG_PATTERN.matcher(etag).matches()) {
+            digest = newDigest("MD5");
+            expectedDigest = etag.substring(1, etag.length() - 1).toLowerCase();
+            digestFromEtag = true;
+        }
+    }
+
+    /**
+     * Expect content to match the given checksum in {@code algorithm:hex} format, e.g. {@code sha256:ab12...}.
+     */
+    void expectChecksum(String checksum) {
+        int separator = checksum.indexOf(':');
+        if (separator < 0) {
+            throw new InvalidInputException("Checksum must be in algorithm:hex format.");
+        }
+        String algorithm = DIGEST_ALGORITHMS.get(checksum.substring(0, separator).replace("-", "").toUpperCase());
+        if (algorithm == null) {
+            throw new InvalidInputException("Unsupported checksum algorithm, supported: " + DIGEST_ALGORITHMS.keySet());
+        }
+        digest = newDigest(algorithm);
+        expectedDigest = checksum.substring(separator + 1).toLowerCase();
+        digestFromEtag = false;
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Digest of written content or null if no checksum is expected.
+     */
+    MessageDigest getDigest() {
+        return digest;
+    }
+
+    String getExpectedDigest() {
+        return expectedDigest;
+    }
+
+    boolean isDigestFromEtag() {
+        return digestFromEtag;
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -1,21 +1,29 @@
 package com.github.talebipour.moviehelper.util;
 
 import com.github.talebipour.moviehelper.exception.InvalidInputException;
+import com.github.talebipour.moviehelper.model.BufferPoolStatistics;
 import com.github.talebipour.moviehelper.model.DownloadStatus;
 import com.github.talebipour.moviehelper.model.DownloadStatus.Status;
 import com.github.talebipour.moviehelper.model.FileModel;
 import com.github.talebipour.moviehelper.model.FileModel.FileType;
+import com.github.talebipour.moviehelper.model.HostConnections;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -23,13 +31,17 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
@@ -41,22 +53,54 @@ public class Downloader {
 
     private static final String DOWNLOAD_USER_AGENT = "Mozilla/5.0 (Linux; Android 8.0.0; " +
             "SM-G960F Build/R16NW) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/62.0.3202.84 Mobile Safari/537.36";
-    private static final String FILENAME_DIRECTIVE = "filename=";
 
-    private final HttpClient client;
+    private static final long READABLE_POLL_MILLIS = 20;
+
+    private final HttpConnections httpConnections;
 
     private final Map<String, DownloadStatus> statusMap = new ConcurrentHashMap<>();
+    private final Map<String, DownloadTask> tasks = new ConcurrentHashMap<>();
+    private final AtomicLong revision = new AtomicLong();
 
-    private final int bufferSize;
+    private final BufferPool bufferPool;
     private final FileUtil fileUtil;
+    private final DiskSpaceMonitor diskSpaceMonitor;
+    private final DirectorySizeAggregator directorySizeAggregator;
+    private final SubtitleStore subtitleStore;
+    private final StagingMover stagingMover;
+    private final boolean preallocate;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncBatchSize;
+    private final int resumeAttempts;
+    private final long mirrorChunkSize;
+    private final int progressiveWindowChunks;
 
-    public Downloader(@Value("${downloader.buffer.size}") int bufferSize, FileUtil fileUtil) {
-        this.bufferSize = bufferSize;
+    public Downloader(HttpConnections httpConnections, BufferPool bufferPool, FileUtil fileUtil,
+                      DiskSpaceMonitor diskSpaceMonitor,
+                      DirectorySizeAggregator directorySizeAggregator, SubtitleStore subtitleStore,
+                      StagingMover stagingMover,
+                      @Value("${downloader.preallocate:false}") boolean preallocate,
+                      @Value("${downloader.fsync.policy:NONE}") FsyncPolicy fsyncPolicy,
+                      @Value("${downloader.fsync.batch.size:67108864}") long fsyncBatchSize,
+                      @Value("${downloader.resume.attempts:3}") int resumeAttempts,
+                      @Value("${downloader.mirror.chunk.size:16777216}") long mirrorChunkSize,
+                      @Value("${downloader.progressive.window.chunks:4}") int progressiveWindowChunks) {
+        this.httpConnections = httpConnections;
+        this.bufferPool = bufferPool;
         this.fileUtil = fileUtil;
-        client = HttpClient.newBuilder().build();
+        this.diskSpaceMonitor = diskSpaceMonitor;
+        this.directorySizeAggregator = directorySizeAggregator;
+        this.subtitleStore = subtitleStore;
+        this.stagingMover = stagingMover;
+        this.preallocate = preallocate;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncBatchSize = fsyncBatchSize;
+        this.resumeAttempts = resumeAttempts;
+        this.mirrorChunkSize = mirrorChunkSize;
+        this.progressiveWindowChunks = progressiveWindowChunks;
     }
 
-    public Set<String> downloadSubtitle(String url, Path path) throws IOException, InterruptedException {
+    public CompletableFuture<Set<String>> downloadSubtitle(String url, Path path) {
         logger.info("Downloading subtitle from {} into {}", url, path);
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
@@ -64,13 +108,19 @@ public class Downloader {
                 .header(HttpHeaders.USER_AGENT, DOWNLOAD_USER_AGENT)
                 .GET()
                 .build();
-        HttpResponse<byte[]> response = client.send(request, BodyHandlers.ofByteArray());
-        if (isNotSuccessful(response.statusCode())) {
-            throw new InvalidInputException();
-        }
-        Set<String> files = saveSubtitles(response.body(), path);
-        logger.info("Download subtitles: {} succeed.", files);
-        return files;
+        return httpConnections.send(request, BodyHandlers.ofByteArray()).thenApply(response -> {
+            if (isNotSuccessful(response.statusCode())) {
+                throw new InvalidInputException();
+            }
+            diskSpaceMonitor.checkFree(path, response.body().length);
+            try {
+                Set<String> files = fileUtil.getVolume(path).call(() -> saveSubtitles(response.body(), path));
+                logger.info("Download subtitles: {} succeed.", files);
+                return files;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
     private static boolean isNotSuccessful(int statusCode) {
@@ -81,22 +131,54 @@ public class Downloader {
     private Set<String> saveSubtitles(byte[] zipContent, Path path) throws IOException {
         ByteArrayInputStream bais = new ByteArrayInputStream(zipContent);
         HashSet<String> files = new HashSet<>();
+        ByteBuffer buffer = bufferPool.acquire();
         try (ZipInputStream zis = new ZipInputStream(bais)) {
+            ReadableByteChannel channel = Channels.newChannel(zis);
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
                 Path entryName = Paths.get(entry.getName());
                 if (entry.getName().toLowerCase().endsWith(".srt")) {
-                    Files.write(path.resolve(entryName.getFileName()), IOUtils.toByteArray(zis));
+                    Path target = path.resolve(entryName.getFileName());
+                    long previousSize = Files.exists(target) ? Files.size(target) : 0;
+                    ByteBuffer content = readEntry(channel, buffer);
+                    long size = content.remaining();
+                    if (subtitleStore.write(target, content)) {
+                        directorySizeAggregator.fileChanged(target, size - previousSize);
+                    } else {
+                        logger.info("{} is unchanged.", target);
+                    }
                     files.add(entryName.getFileName().toString());
                 }
                 zis.closeEntry();
             }
+        } finally {
+            bufferPool.release(buffer);
         }
         return files;
     }
 
-    public DownloadStatus asyncDownload(String url, String path) throws IOException, InterruptedException {
-        if (statusMap.containsKey(url) && statusMap.get(url).getStatus() == Status.IN_PROGRESS) {
+    /**
+     * Read the current zip entry into the pooled buffer, or into a larger heap buffer if it does not fit.
+     */
+    private static ByteBuffer readEntry(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        ByteBuffer content = buffer.clear();
+        while (channel.read(content) >= 0) {
+            if (!content.hasRemaining()) {
+                content = ByteBuffer.allocate(content.capacity() * 2).put(content.flip());
+            }
+        }
+        return content.flip();
+    }
+
+    /**
+     * Download a file in background.
+     *
+     * @param mirrors other URLs of the same file, the file is downloaded from all of them at once
+     * @param progressive download the file nearly in order, so it can be streamed while it is downloading
+     */
+    public CompletableFuture<DownloadStatus> asyncDownload(String url, List<String> mirrors, String path,
+                                                           String checksum, boolean progressive) {
+        if (statusMap.containsKey(url) && isActive(statusMap.get(url))) {
             throw new InvalidInputException("Download is already in progress");
         }
         DownloadStatus status = new DownloadStatus();
@@ -106,13 +188,50 @@ public class Downloader {
         file.setType(FileType.REGULAR);
         file.setPath(path);
         status.setFile(file);
-        statusMap.put(url, status);
-        findFileInfo(status);
-        startDownload(status);
-        return status;
+        status.setMirrors(mirrors);
+        status.setProgressive(progressive);
+        DownloadTask task = new DownloadTask(status);
+        if (checksum != null && !checksum.isEmpty()) {
+            task.expectChecksum(checksum);
+        }
+        tasks.put(url, task);
+        DownloadStatus previous = statusMap.put(url, status);
+        // Keep revision monotonic when versions of the replaced status leave the sum.
+        revision.addAndGet(previous == null ? 1 : previous.getVersion() + 1);
+        return probe(task, status.getMirrors().isEmpty()).thenCompose(probeDownload -> {
+            if (probeDownload != null) {
+                complete(task, probeDownload);
+                return CompletableFuture.completedFuture(status);
+            }
+            return checkMirrors(task).thenApply(ignored -> {
+                prepare(task);
+                complete(task, transfer(task));
+                return status;
+            });
+        }).whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                diskSpaceMonitor.release(url);
+                diskSpaceMonitor.release(stagingKey(url));
+                failed(status, throwable);
+            }
+        });
+    }
+
+    private static boolean isActive(DownloadStatus status) {
+        return status.getStatus() == Status.IN_PROGRESS || status.getStatus() == Status.VERIFYING
+               || status.getStatus() == Status.MOVING;
     }
 
-    private void findFileInfo(DownloadStatus status) throws IOException, InterruptedException {
+    /**
+     * Request the first two bytes to find name, size and range support of the file. A server which does not support
+     * ranges sends the whole file instead, then the probe response is downloaded rather than discarded and requested
+     * again. A whole file which is not downloaded, e.g. because it is rejected or it is of a mirror, is not read.
+     *
+     * @param download whether a response with the whole file can be downloaded
+     * @return future of the download which continues the probe response, or of null when the probe is finished
+     */
+    private CompletableFuture<CompletableFuture<Void>> probe(DownloadTask task, boolean download) {
+        DownloadStatus status = task.getStatus();
         logger.info("Finding file info of {}", status.getUrl());
         URI uri = URI.create(status.getUrl());
         HttpRequest request = HttpRequest.newBuilder()
@@ -120,17 +239,52 @@ public class Downloader {
                 .header(HttpHeaders.RANGE, "bytes=0-1")
                 .GET()
                 .build();
-        HttpResponse<Void> response = client.send(request, BodyHandlers.discarding());
-        if (isNotSuccessful(response.statusCode())) {
+        CompletableFuture<Boolean> headersRead = new CompletableFuture<>();
+        BodyHandler<Path> bodyHandler = responseInfo -> {
+            boolean whole = download && responseInfo.statusCode() == HttpStatus.OK.value();
+            try {
+                readFileInfo(task, uri, responseInfo);
+                if (whole) {
+                    prepare(task);
+                }
+            } catch (RuntimeException e) {
+                headersRead.completeExceptionally(e);
+                return new CancellingSubscriber<>(null);
+            }
+            headersRead.complete(whole);
+            if (whole) {
+                return new DownloadSubscriber(task, 0, bufferPool, preallocate, fsyncPolicy, fsyncBatchSize);
+            }
+            // Only the two requested bytes are read, so the connection is reused, a whole file is not.
+            return responseInfo.statusCode() == HttpStatus.PARTIAL_CONTENT.value() ? BodySubscribers.replacing(null)
+                                                                                    : new CancellingSubscriber<>(null);
+        };
+        CompletableFuture<Void> response = httpConnections.send(request, bodyHandler).thenAccept(ignored -> {
+        });
+        response.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                headersRead.completeExceptionally(throwable);
+            }
+        });
+        // A probe finishes after its body is read, so its connection is back in the pool for the next request.
+        return headersRead.thenCompose(whole -> whole ? CompletableFuture.completedFuture(response)
+                                                      : response.thenApply(ignored -> null));
+    }
+
+    private void readFileInfo(DownloadTask task, URI uri, ResponseInfo responseInfo) {
+        int statusCode = responseInfo.statusCode();
+        var headers = responseInfo.headers();
+        if (isNotSuccessful(statusCode)) {
             throw new InvalidInputException();
         }
-
+        DownloadStatus status = task.getStatus();
         FileModel file = status.getFile();
-        file.setName(findFilename(response.headers().allValues(HttpHeaders.CONTENT_DISPOSITION))
-                             .orElse(uri.getPath().substring(1)));
+        file.setName(findFilename(headers.allValues(HttpHeaders.CONTENT_DISPOSITION))
+                             .orElse(uri.getPath().substring(uri.getPath().lastIndexOf('/') + 1)));
+        headers.firstValue(HttpHeaders.ETAG).ifPresent(task::setEtag);
 
-        if (response.statusCode() == HttpStatus.PARTIAL_CONTENT.value()) {
-            String contentRange = response.headers().firstValue(HttpHeaders.CONTENT_RANGE)
+        if (statusCode == HttpStatus.PARTIAL_CONTENT.value()) {
+            String contentRange = headers.firstValue(HttpHeaders.CONTENT_RANGE)
                     .orElseThrow(() -> new InvalidInputException("Content-Range header not found."));
 
             int slashPos = contentRange.indexOf("/");
@@ -139,45 +293,243 @@ public class Downloader {
                 status.setRangeSupported(true);
             }
         } else {
-            file.setSize(response.headers().firstValueAsLong(HttpHeaders.CONTENT_LENGTH).orElse(-1));
+            file.setSize(headers.firstValueAsLong(HttpHeaders.CONTENT_LENGTH).orElse(-1));
         }
     }
 
+    /**
+     * Probe all mirrors and check that they serve ranges of a file with the same size.
+     */
+    private CompletableFuture<Void> checkMirrors(DownloadTask task) {
+        DownloadStatus status = task.getStatus();
+        if (status.getMirrors().isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!status.isRangeSupported() || status.getFile().getSize() <= 0) {
+            throw new InvalidInputException("Mirrors are only supported when " + status.getUrl() + " supports ranges.");
+        }
+        List<CompletableFuture<DownloadStatus>> probes = new ArrayList<>();
+        for (String mirror : status.getMirrors()) {
+            DownloadStatus probe = new DownloadStatus();
+            probe.setUrl(mirror);
+            probe.setFile(new FileModel());
+            probes.add(probe(new DownloadTask(probe), false).thenApply(ignored -> probe));
+        }
+        return CompletableFuture.allOf(probes.toArray(CompletableFuture[]::new)).thenRun(() -> {
+            for (CompletableFuture<DownloadStatus> future : probes) {
+                DownloadStatus probe = future.join();
+                if (!probe.isRangeSupported() || probe.getFile().getSize() != status.getFile().getSize()) {
+                    throw new InvalidInputException(String.format(
+                            "Mirror %s has size %d and range support %s, expected size %d.", probe.getUrl(),
+                            probe.getFile().getSize(), probe.isRangeSupported(), status.getFile().getSize()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Find the filename of Content-Disposition headers, which may be quoted or encoded as {@code filename*}. Only the
+     * last path segment is kept, so a server can not choose a file outside of the target directory.
+     */
     private Optional<String> findFilename(List<String> contentDispositions) {
         for (String disposition : contentDispositions) {
-            int index = disposition.indexOf(FILENAME_DIRECTIVE);
-            if (index >= 0) {
-                return Optional.of(disposition.substring(index + FILENAME_DIRECTIVE.length()));
+            String filename;
+            try {
+                filename = ContentDisposition.parse(disposition).getFilename();
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring invalid Content-Disposition {}", disposition);
+                continue;
+            }
+            if (filename != null) {
+                filename = filename.substring(Math.max(filename.lastIndexOf('/'), filename.lastIndexOf('\\')) + 1);
+            }
+            if (filename != null && !filename.isBlank() && !filename.equals(".") && !filename.equals("..")) {
+                return Optional.of(filename);
             }
         }
         return Optional.empty();
     }
 
-    private void startDownload(DownloadStatus status) {
+    /**
+     * Reserve disk space and choose the output file. With a staging directory, the file is written there and space
+     * is reserved on both volumes until it is moved into the library.
+     */
+    private void prepare(DownloadTask task) {
+        DownloadStatus status = task.getStatus();
+        long size = status.getFile().getSize();
+        boolean staging = stagingMover.isEnabled();
+        diskSpaceMonitor.reserve(status.getUrl(), fileUtil.resolvePath(status.getFile().getPath()), size,
+                                 staging ? () -> 0 : task::getAllocatedBytes);
         status.setStatus(Status.IN_PROGRESS);
-        // TODO: Download files by chunk using Range header
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(status.getUrl()))
-                .GET()
-                .build();
         Path downloadPath = downloadPath(status.getFile());
         // Set filename again based on output file.
         status.getFile().setName(downloadPath.getFileName().toString());
+        if (staging) {
+            diskSpaceMonitor.reserve(stagingKey(status.getUrl()), stagingMover.getStagingDir(), size,
+                                     task::getAllocatedBytes);
+            try {
+                downloadPath = stagingMover.createStagingFile(status.getFile().getName());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            task.setIoExecutor(stagingMover.getStagingVolume().getExecutor());
+        } else {
+            task.setIoExecutor(fileUtil.getVolume(downloadPath).getExecutor());
+        }
+        task.setPath(downloadPath);
+        // Sizes of the directories grow with the file, so their listings are not answered with a stale 304.
+        task.setProgressListener(() -> directorySizeAggregator.fileChanged(task.getPath(), task.takeUncountedBytes()));
         logger.info("Start downloading {} into {}", status, downloadPath);
-        CompletableFuture<HttpResponse<Path>> future = client.sendAsync(request, BodyHandlers.ofFile(downloadPath));
-        future.whenComplete((pathHttpResponse, throwable) -> {
+    }
+
+    private static String stagingKey(String url) {
+        return "staging:" + url;
+    }
+
+    private CompletableFuture<Void> transfer(DownloadTask task) {
+        DownloadStatus status = task.getStatus();
+        if (status.getMirrors().isEmpty()) {
+            return fetch(task, 0, resumeAttempts);
+        }
+        List<String> urls = new ArrayList<>();
+        urls.add(status.getUrl());
+        urls.addAll(status.getMirrors());
+        long window = status.isProgressive() ? progressiveWindowChunks * mirrorChunkSize : 0;
+        return new MirrorDownload(task, urls, httpConnections, bufferPool, fsyncPolicy, fsyncBatchSize,
+                                  mirrorChunkSize, resumeAttempts, window).start();
+    }
+
+    private void complete(DownloadTask task, CompletableFuture<Void> download) {
+        DownloadStatus status = task.getStatus();
+        Path downloadPath = task.getPath();
+        download.thenRun(() -> verify(task)).whenComplete((ignored, throwable) -> {
+            diskSpaceMonitor.release(stagingKey(status.getUrl()));
+            directorySizeAggregator.fileChanged(downloadPath, task.takeUncountedBytes());
+        }).thenCompose(ignored -> moveToLibrary(task)).whenComplete((ignored, throwable) -> {
+            diskSpaceMonitor.release(status.getUrl());
             if (throwable == null) {
                 logger.info("Downloading {} finished.", status.getUrl());
+                status.setReadableBytes(status.getDownloadedBytes());
                 status.setProgressPercent(100);
                 status.setStatus(Status.COMPLETED);
+            } else if (status.getStatus() == Status.MOVING) {
+                // The download is complete, so it is kept for moving it by hand.
+                logger.error("Moving {} into the library failed, it is kept in staging.", task.getPath());
+                failed(status, throwable);
             } else {
-                logger.error("Downloading {} failed. {}", status.getUrl(), throwable.getMessage());
-                status.setStatus(Status.FAILED);
-                status.setMessage(throwable.getMessage());
+                failed(status, throwable);
+                if (stagingMover.isEnabled()) {
+                    deleteStagingFile(task.getPath());
+                }
             }
         });
     }
 
+    /**
+     * Move a staged download into its library directory. Status and directory sizes are updated together when the
+     * file appears in the library.
+     */
+    private CompletableFuture<Void> moveToLibrary(DownloadTask task) {
+        if (!stagingMover.isEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        DownloadStatus status = task.getStatus();
+        status.setStatus(Status.MOVING);
+        Path staged = task.getPath();
+        return stagingMover.move(staged, fileUtil.resolvePath(status.getFile().getPath()), status.getFile().getName())
+                .thenAccept(target -> {
+                    directorySizeAggregator.fileMoved(staged, target, status.getDownloadedBytes());
+                    task.setPath(target);
+                    status.getFile().setName(target.getFileName().toString());
+                });
+    }
+
+    private static void deleteStagingFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Deleting staged file {} failed: {}", path, e.toString());
+        }
+    }
+
+    /**
+     * Fetch content from the given offset to the end. If the server supports ranges, an interrupted or truncated
+     * transfer is resumed from the last written byte instead of downloading the whole file again.
+     */
+    private CompletableFuture<Void> fetch(DownloadTask task, long offset, int attempts) {
+        DownloadStatus status = task.getStatus();
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(status.getUrl()))
+                .GET();
+        if (offset > 0) {
+            builder.header(HttpHeaders.RANGE, "bytes=" + offset + "-");
+            if (task.getEtag() != null) {
+                builder.header(HttpHeaders.IF_RANGE, task.getEtag());
+            }
+        }
+        // A resumed request must continue the same content, otherwise it is not appended and its body is not read.
+        IntPredicate unexpectedStatus = offset > 0 ? statusCode -> statusCode != HttpStatus.PARTIAL_CONTENT.value()
+                                                   : Downloader::isNotSuccessful;
+        BodyHandler<Path> bodyHandler = responseInfo -> unexpectedStatus.test(responseInfo.statusCode())
+                ? new CancellingSubscriber<>(task.getPath())
+                : new DownloadSubscriber(task, offset, bufferPool, preallocate, fsyncPolicy, fsyncBatchSize);
+        return httpConnections.send(builder.build(), bodyHandler).handle((response, throwable) -> {
+            if (throwable == null && unexpectedStatus.test(response.statusCode())) {
+                return CompletableFuture.<Void>failedFuture(
+                        new InvalidInputException("Unexpected response status: " + response.statusCode()));
+            }
+            long size = status.getFile().getSize();
+            long downloaded = status.getDownloadedBytes();
+            boolean incomplete = throwable != null ? isNetworkFailure(throwable) : size > 0 && downloaded < size;
+            if (incomplete && status.isRangeSupported() && attempts > 0) {
+                logger.warn("Downloading {} stopped at {} bytes, resuming.", status.getUrl(), downloaded);
+                return fetch(task, downloaded, attempts - 1);
+            }
+            return throwable == null ? CompletableFuture.<Void>completedFuture(null)
+                                     : CompletableFuture.<Void>failedFuture(throwable);
+        }).thenCompose(Function.identity());
+    }
+
+    private static boolean isNetworkFailure(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable instanceof IOException;
+    }
+
+    private void verify(DownloadTask task) {
+        DownloadStatus status = task.getStatus();
+        status.setStatus(Status.VERIFYING);
+        long size = status.getFile().getSize();
+        if (size >= 0 && status.getDownloadedBytes() != size) {
+            throw new IllegalStateException(
+                    "Downloaded " + status.getDownloadedBytes() + " bytes but expected " + size + " bytes.");
+        }
+        if (task.getDigest() == null) {
+            return;
+        }
+        String digest = DownloadTask.toHex(task.getDigest().digest());
+        if (digest.equals(task.getExpectedDigest())) {
+            logger.info("Checksum of {} verified.", task.getPath());
+        } else if (task.isDigestFromEtag()) {
+            // ETag is not guaranteed to be MD5 of the content, so a mismatch is only reported.
+            logger.warn("MD5 of {} is {} which does not match ETag {}", task.getPath(), digest, task.getEtag());
+            status.setMessage("Content MD5 does not match ETag.");
+        } else {
+            throw new IllegalStateException(
+                    "Checksum mismatch, expected " + task.getExpectedDigest() + " but was " + digest);
+        }
+    }
+
+    private static void failed(DownloadStatus status, Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        logger.error("Downloading {} failed. {}", status.getUrl(), throwable.getMessage());
+        status.setStatus(Status.FAILED);
+        status.setMessage(throwable.getMessage());
+    }
+
     private Path downloadPath(FileModel file) {
         Path path = fileUtil.resolvePath(file.getPath()).resolve(file.getName());
         int i = 2;
@@ -189,6 +541,17 @@ public class Downloader {
         return path;
     }
 
+    /**
+     * Revision of all download statuses, it increases whenever any status changes.
+     */
+    public long getRevision() {
+        long result = revision.get();
+        for (DownloadStatus status : statusMap.values()) {
+            result += status.getVersion();
+        }
+        return result;
+    }
+
     public Collection<DownloadStatus> getDownloadsStatuses() {
         return statusMap.values();
     }
@@ -196,4 +559,33 @@ public class Downloader {
     public Optional<DownloadStatus> getDownloadStatus(String url) {
         return Optional.ofNullable(statusMap.get(url));
     }
+
+    /**
+     * File which the download is written into, it is empty until the download starts writing.
+     */
+    public Optional<Path> getDownloadPath(String url) {
+        return Optional.ofNullable(tasks.get(url)).map(DownloadTask::getPath);
+    }
+
+    /**
+     * Wait until the readable prefix of the download reaches the given length, or the download stops, or the
+     * timeout passes.
+     *
+     * @return the readable length, which is less than the given one if it is not reached
+     */
+    public long awaitReadable(DownloadStatus status, long length, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (status.getReadableBytes() < length && isActive(status) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(READABLE_POLL_MILLIS);
+        }
+        return status.getReadableBytes();
+    }
+
+    public List<HostConnections> getConnectionStatistics() {
+        return httpConnections.getStatistics();
+    }
+
+    public BufferPoolStatistics getBufferStatistics() {
+        return bufferPool.getStatistics();
+    }
 }
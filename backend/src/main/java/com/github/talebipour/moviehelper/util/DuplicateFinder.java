@@ -0,0 +1,278 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.exception.ServiceUnavailableException;
+import com.github.talebipour.moviehelper.model.DuplicateGroup;
+import com.github.talebipour.moviehelper.model.DuplicateReport;
+import com.github.talebipour.moviehelper.model.DuplicateReport.Status;
+import com.github.talebipour.moviehelper.model.Job;
+import com.github.talebipour.moviehelper.util.Volume.IoTask;
+import com.github.talebipour.moviehelper.util.opensubtitles.OpenSubtitlesHasher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Finds files with the same content under all root directories. Files are bucketed by size first, which needs no
+ * reads, then files in buckets with more than one file are compared by {@link OpenSubtitlesHasher} hash, which reads
+ * 128 KB of each file. Optionally the remaining candidates are confirmed by a full SHA-256 digest. Hard links of the
+ * same file are counted once.
+ * <p>
+ * A search runs as a {@link JobManager} job, progress of the job is the number of hashed files. Files are read on
+ * the executor of their {@link Volume}, a full digest in chunks of {@code duplicates.digest.chunk.size} bytes, so a
+ * large file does not hold a volume thread for minutes. A volume with a full queue is retried after a backoff.
+ */
+@Component
+public class DuplicateFinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateFinder.class);
+
+    private static final long MIN_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private final FileUtil fileUtil;
+    private final BufferPool bufferPool;
+    private final JobManager jobManager;
+    private final long minSize;
+    private final long digestChunkSize;
+    private volatile DuplicateReport report;
+    private volatile Job job;
+
+    public DuplicateFinder(FileUtil fileUtil, BufferPool bufferPool, JobManager jobManager,
+                           @Value("${duplicates.min.size:1048576}") long minSize,
+                           @Value("${duplicates.digest.chunk.size:67108864}") long digestChunkSize) {
+        this.fileUtil = fileUtil;
+        this.bufferPool = bufferPool;
+        this.jobManager = jobManager;
+        this.minSize = minSize;
+        this.digestChunkSize = digestChunkSize;
+    }
+
+    /**
+     * Start a search in background unless one is running.
+     *
+     * @param verify confirm duplicates by a full content digest
+     * @return report of the running search
+     */
+    public synchronized DuplicateReport start(boolean verify) {
+        finishCancelled();
+        if (report != null && report.getStatus() == Status.RUNNING) {
+            return report;
+        }
+        DuplicateReport newReport = new DuplicateReport(verify, System.currentTimeMillis());
+        Job newJob = jobManager.submit("duplicates", submitted -> {
+            run(newReport, submitted);
+            return newReport;
+        });
+        newReport.setJobId(newJob.getId());
+        report = newReport;
+        job = newJob;
+        return newReport;
+    }
+
+    /**
+     * Report of the last search.
+     */
+    public synchronized Optional<DuplicateReport> getReport() {
+        finishCancelled();
+        return Optional.ofNullable(report);
+    }
+
+    /**
+     * A job which is cancelled while it is queued never runs, so its report is marked cancelled here.
+     */
+    private void finishCancelled() {
+        if (report != null && report.getStatus() == Status.RUNNING && job.isFinished()) {
+            report.setStatus(Status.CANCELLED);
+            report.setFinishTime(job.getFinishTime());
+        }
+    }
+
+    void run(DuplicateReport report, Job job) {
+        try {
+            // OpenSubtitles hash includes the size, so it is unique across buckets.
+            Map<String, List<Path>> candidates = new LinkedHashMap<>();
+            Map<Long, List<Path>> buckets = sizeBuckets(report, job);
+            job.setTotal(buckets.values().stream().mapToLong(List::size).sum());
+            for (List<Path> bucket : buckets.values()) {
+                candidates.putAll(groupBy(bucket, file -> {
+                    job.checkCancelled();
+                    report.setHashedFiles(report.getHashedFiles() + 1);
+                    job.addDone(1);
+                    return callVolume(file, job, () -> OpenSubtitlesHasher.computeHash(file.toFile()));
+                }));
+            }
+            List<DuplicateGroup> groups = new ArrayList<>();
+            for (Map.Entry<String, List<Path>> candidate : candidates.entrySet()) {
+                job.checkCancelled();
+                long size = Files.size(candidate.getValue().get(0));
+                if (report.isVerify()) {
+                    groupBy(candidate.getValue(), file -> digest(file, job))
+                            .forEach((digest, files) -> groups.add(group(size, digest, true, files)));
+                } else {
+                    groups.add(group(size, candidate.getKey(), false, candidate.getValue()));
+                }
+            }
+            groups.sort(Comparator.comparingLong(DuplicateGroup::getReclaimableBytes).reversed());
+            report.setGroups(groups);
+            report.setStatus(Status.COMPLETED);
+            logger.info("Found {} duplicate groups, {} bytes reclaimable.", groups.size(),
+                        report.getReclaimableBytes());
+        } catch (CancellationException e) {
+            logger.info("Finding duplicates is cancelled.");
+            report.setStatus(Status.CANCELLED);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Finding duplicates failed.", e);
+            report.setMessage(e.toString());
+            report.setStatus(Status.FAILED);
+        } finally {
+            report.setFinishTime(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Group regular files by size, keeping only sizes which have more than one distinct file.
+     */
+    private Map<Long, List<Path>> sizeBuckets(DuplicateReport report, Job job) throws IOException {
+        Map<Long, List<Path>> buckets = new HashMap<>();
+        Set<Object> fileKeys = new HashSet<>();
+        for (Volume volume : fileUtil.getVolumes()) {
+            walk(volume.getRoot(), report, job, buckets, fileKeys);
+        }
+        buckets.values().removeIf(files -> files.size() < 2);
+        return buckets;
+    }
+
+    private void walk(Path root, DuplicateReport report, Job job, Map<Long, List<Path>> buckets,
+                      Set<Object> fileKeys) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                job.checkCancelled();
+                report.setScannedFiles(report.getScannedFiles() + 1);
+                Object fileKey = attributes.fileKey();
+                if (attributes.isRegularFile() && attributes.size() >= minSize
+                    && (fileKey == null || fileKeys.add(fileKey))) {
+                    buckets.computeIfAbsent(attributes.size(), size -> new ArrayList<>()).add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                logger.warn("Skipping {}: {}", file, e.toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static Map<String, List<Path>> groupBy(List<Path> files, Hash hash) throws IOException {
+        Map<String, List<Path>> groups = new LinkedHashMap<>();
+        for (Path file : files) {
+            groups.computeIfAbsent(hash.compute(file), key -> new ArrayList<>()).add(file);
+        }
+        groups.values().removeIf(group -> group.size() < 2);
+        return groups;
+    }
+
+    private DuplicateGroup group(long size, String hash, boolean verified, List<Path> files) {
+        return new DuplicateGroup(size, hash, verified, files.stream()
+                .map(fileUtil::relativize)
+                .sorted()
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Run the task on the volume of the file. When the queue of the volume is full, e.g. during a burst of listings,
+     * the task is retried with an exponential backoff instead of failing the search.
+     */
+    private <T> T callVolume(Path file, Job job, IoTask<T> task) throws IOException {
+        long backoffMillis = MIN_BACKOFF_MILLIS;
+        while (true) {
+            try {
+                return fileUtil.getVolume(file).call(task);
+            } catch (ServiceUnavailableException e) {
+                job.checkCancelled();
+                logger.debug("{} Retrying {} in {} ms.", e.getMessage(), file, backoffMillis);
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Finding duplicates is interrupted.");
+                }
+                backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private String digest(Path file, Job job) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = callVolume(file, job, () -> FileChannel.open(file, StandardOpenOption.READ))) {
+            long position = 0;
+            long read;
+            do {
+                job.checkCancelled();
+                long chunkPosition = position;
+                read = callVolume(file, job, () -> readChunk(channel, chunkPosition, digest));
+                position += read;
+            } while (read == digestChunkSize);
+        }
+        return DownloadTask.toHex(digest.digest());
+    }
+
+    /**
+     * Add at most one chunk of the file to the digest.
+     *
+     * @return number of read bytes, less than the chunk size at the end of the file
+     */
+    private long readChunk(FileChannel channel, long position, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            long read = 0;
+            while (read < digestChunkSize) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), digestChunkSize - read));
+                int length = channel.read(buffer, position + read);
+                if (length < 0) {
+                    break;
+                }
+                digest.update(buffer.flip());
+                read += length;
+            }
+            return read;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private interface Hash {
+        String compute(Path file) throws IOException;
+    }
+}
@@ -0,0 +1,462 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.exception.InternalServerError;
+import com.github.talebipour.moviehelper.exception.InvalidInputException;
+import com.github.talebipour.moviehelper.model.FileOperation;
+import com.github.talebipour.moviehelper.model.FileOperation.Type;
+import com.github.talebipour.moviehelper.model.FileOperationBatch;
+import com.github.talebipour.moviehelper.model.FileOperationBatch.Item;
+import com.github.talebipour.moviehelper.model.FileOperationBatch.ItemStatus;
+import com.github.talebipour.moviehelper.model.FileOperationBatch.Status;
+import com.github.talebipour.moviehelper.model.Job;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs batches of delete and move operations asynchronously. Operations are executed by the executor of their
+ * {@link Volume} in plan order, so different disks work in parallel and a slow disk only delays its own operations.
+ * <p>
+ * Each batch is written to a journal before it starts and every finished operation is appended to it. If the
+ * application stops in the middle of a batch, the batch is rolled forward or back according to its
+ * {@link FailurePolicy} on next startup. Status of a submitted batch is kept for {@code files.batch.result.ttl}
+ * after it finishes.
+ */
+@Component
+public class FileOperationEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileOperationEngine.class);
+
+    private static final String JOURNAL_EXTENSION = ".journal";
+    private static final String OPERATION = "OP";
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+    private static final String UNDONE = "UNDONE";
+
+    private final FileUtil fileUtil;
+    private final DirectorySizeAggregator directorySizeAggregator;
+    private final Path journalDir;
+    private final long resultTtl;
+    private final Map<String, FileOperationBatch> batches = new ConcurrentHashMap<>();
+    private final Map<String, Long> finishTimes = new ConcurrentHashMap<>();
+
+    public FileOperationEngine(FileUtil fileUtil, DirectorySizeAggregator directorySizeAggregator,
+                               @Value("${state.directory.path:${user.home}/.movie-helper}") String stateDir,
+                               @Value("${files.batch.result.ttl:3600000}") long resultTtl) throws IOException {
+        this.fileUtil = fileUtil;
+        this.directorySizeAggregator = directorySizeAggregator;
+        this.journalDir = Files.createDirectories(Paths.get(stateDir, "journal"));
+        this.resultTtl = resultTtl;
+    }
+
+    /**
+     * What to do when an operation of a batch fails.
+     */
+    public enum FailurePolicy {
+        /**
+         * Run remaining operations, an interrupted batch is rolled forward on startup.
+         */
+        CONTINUE,
+        /**
+         * Undo finished operations in reverse order, an interrupted batch is rolled back on startup. Only move
+         * operations can be undone.
+         */
+        ROLL_BACK
+    }
+
+    /**
+     * Start running the plan in background.
+     *
+     * @return status of the batch which is updated while it runs
+     */
+    public FileOperationBatch submit(List<FileOperation> plan, FailurePolicy policy) {
+        evictExpired();
+        FileOperationBatch batch = newBatch(plan, policy);
+        batches.put(batch.getId(), batch);
+        try {
+            start(batch, plan, policy, null).thenRun(() -> finishTimes.put(batch.getId(),
+                                                                           System.currentTimeMillis()));
+        } catch (RuntimeException e) {
+            batches.remove(batch.getId());
+            throw e;
+        }
+        return batch;
+    }
+
+    /**
+     * Run the plan and wait for it to finish.
+     */
+    public FileOperationBatch execute(List<FileOperation> plan, FailurePolicy policy) {
+        return execute(plan, policy, null);
+    }
+
+    /**
+     * Run the plan as part of a job and wait for it to finish. Progress of the job is the number of finished
+     * operations. When the job is cancelled, remaining operations are skipped, or finished ones are undone if the
+     * policy is {@link FailurePolicy#ROLL_BACK}.
+     */
+    public FileOperationBatch execute(List<FileOperation> plan, FailurePolicy policy, Job job) {
+        FileOperationBatch batch = newBatch(plan, policy);
+        if (job != null) {
+            job.setTotal(plan.size());
+        }
+        return start(batch, plan, policy, job).join();
+    }
+
+    private FileOperationBatch newBatch(List<FileOperation> plan, FailurePolicy policy) {
+        if (plan == null || plan.isEmpty()) {
+            throw new InvalidInputException("Plan is empty.");
+        }
+        for (FileOperation operation : plan) {
+            validate(operation, policy);
+        }
+        return new FileOperationBatch(UUID.randomUUID().toString(), plan.stream().map(Item::new)
+                .collect(Collectors.toList()));
+    }
+
+    private CompletableFuture<FileOperationBatch> start(FileOperationBatch batch, List<FileOperation> plan,
+                                                        FailurePolicy policy, Job job) {
+        String id = batch.getId();
+        Journal journal;
+        try {
+            journal = Journal.create(journalDir.resolve(id + JOURNAL_EXTENSION), policy, plan);
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing journal of batch failed.", e);
+        }
+        logger.info("Starting batch {} with {} operations.", id, plan.size());
+        CompletableFuture<Void> future;
+        if (policy == FailurePolicy.ROLL_BACK) {
+            future = CompletableFuture.runAsync(() -> runAll(batch, batch.getItems(), journal, true, job),
+                                                executor(plan.get(0)));
+        } else {
+            Map<ExecutorService, List<Item>> groups = new LinkedHashMap<>();
+            batch.getItems().forEach(item -> groups.computeIfAbsent(executor(item.getOperation()),
+                                                                    executor -> new ArrayList<>()).add(item));
+            future = CompletableFuture.allOf(groups.entrySet().stream()
+                    .map(group -> CompletableFuture.runAsync(
+                            () -> runAll(batch, group.getValue(), journal, false, job), group.getKey()))
+                    .toArray(CompletableFuture[]::new));
+        }
+        return future.handle((ignored, throwable) -> {
+            if (throwable != null) {
+                logger.error("Batch {} failed.", id, throwable);
+                batch.setStatus(Status.FAILED);
+            } else if (batch.getStatus() == Status.RUNNING) {
+                boolean failed = batch.getItems().stream().anyMatch(item -> item.getStatus() == ItemStatus.FAILED);
+                boolean cancelled = batch.getItems().stream()
+                        .anyMatch(item -> item.getStatus() == ItemStatus.CANCELLED);
+                batch.setStatus(failed ? Status.FAILED : cancelled ? Status.CANCELLED : Status.COMPLETED);
+            }
+            journal.delete();
+            logger.info("Batch {} finished with status {}.", id, batch.getStatus());
+            return batch;
+        });
+    }
+
+    /**
+     * Get status of a batch which is started by {@link #submit(List, FailurePolicy)}.
+     */
+    public Optional<FileOperationBatch> getBatch(String id) {
+        evictExpired();
+        return Optional.ofNullable(batches.get(id));
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        finishTimes.entrySet().removeIf(finished -> {
+            boolean expired = now - finished.getValue() > resultTtl;
+            if (expired) {
+                batches.remove(finished.getKey());
+            }
+            return expired;
+        });
+    }
+
+    /**
+     * @throws InternalServerError with messages of the failed items if the batch is not completed
+     */
+    public static void checkCompleted(FileOperationBatch batch) {
+        if (batch.getStatus() != Status.COMPLETED) {
+            String errors = batch.getItems().stream()
+                    .filter(item -> item.getMessage() != null)
+                    .map(item -> item.getOperation() + ": " + item.getMessage())
+                    .collect(Collectors.joining(", "));
+            throw new InternalServerError("Batch " + batch.getId() + " " + batch.getStatus() + ". " + errors);
+        }
+    }
+
+    private void validate(FileOperation operation, FailurePolicy policy) {
+        if (operation.getType() == null || operation.getSource() == null) {
+            throw new InvalidInputException("Invalid operation: " + operation);
+        }
+        fileUtil.resolvePath(operation.getSource());
+        if (operation.getType() == Type.MOVE) {
+            if (operation.getTarget() == null) {
+                throw new InvalidInputException("Move target is missing: " + operation);
+            }
+            fileUtil.resolvePath(operation.getTarget());
+        } else if (policy == FailurePolicy.ROLL_BACK) {
+            throw new InvalidInputException("Delete can not be rolled back: " + operation);
+        }
+    }
+
+    private void runAll(FileOperationBatch batch, List<Item> items, Journal journal, boolean rollBackOnFailure,
+                        Job job) {
+        List<Item> all = batch.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            int index = all.indexOf(item);
+            if (job != null && job.isCancelRequested()) {
+                if (rollBackOnFailure) {
+                    rollBack(batch, items.subList(0, i), journal);
+                } else {
+                    cancel(items.subList(i, items.size()), all, journal);
+                }
+                return;
+            }
+            try {
+                apply(item.getOperation());
+                journal.append(DONE, index);
+                item.setStatus(ItemStatus.DONE);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("{} failed: {}", item.getOperation(), e.toString());
+                journal.append(FAILED, index);
+                item.setStatus(ItemStatus.FAILED);
+                item.setMessage(e.toString());
+                if (rollBackOnFailure) {
+                    rollBack(batch, items.subList(0, i), journal);
+                    return;
+                }
+            }
+            if (job != null) {
+                job.addDone(1);
+            }
+        }
+    }
+
+    /**
+     * Skip operations which are not started, they are journaled as finished so they are not rolled forward.
+     */
+    private static void cancel(List<Item> items, List<Item> all, Journal journal) {
+        for (Item item : items) {
+            journal.append(FAILED, all.indexOf(item));
+            item.setStatus(ItemStatus.CANCELLED);
+        }
+    }
+
+    private void rollBack(FileOperationBatch batch, List<Item> done, Journal journal) {
+        for (int i = done.size() - 1; i >= 0; i--) {
+            Item item = done.get(i);
+            try {
+                undo(item.getOperation());
+                journal.append(UNDONE, batch.getItems().indexOf(item));
+                item.setStatus(ItemStatus.ROLLED_BACK);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Rolling back {} failed.", item.getOperation(), e);
+                item.setMessage("Rollback failed: " + e);
+            }
+        }
+        batch.setStatus(Status.ROLLED_BACK);
+    }
+
+    /**
+     * Apply an operation, it is a no-op if the operation is already applied, so a journal can be replayed.
+     */
+    private void apply(FileOperation operation) throws IOException {
+        Path source = fileUtil.resolvePath(operation.getSource());
+        if (operation.getType() == Type.DELETE) {
+            if (!Files.exists(source, LinkOption.NOFOLLOW_LINKS)) {
+                return;
+            }
+            BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class,
+                                                                  LinkOption.NOFOLLOW_LINKS);
+            Files.delete(source);
+            if (attributes.isDirectory()) {
+                directorySizeAggregator.directoryRemoved(source);
+            } else {
+                directorySizeAggregator.fileChanged(source, -attributes.size());
+            }
+            logger.info("{} file removed.", operation.getSource());
+        } else {
+            move(source, fileUtil.resolvePath(operation.getTarget()));
+        }
+    }
+
+    private void undo(FileOperation operation) throws IOException {
+        Path target = fileUtil.resolvePath(operation.getTarget());
+        if (operation.getType() == Type.MOVE && Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            move(target, fileUtil.resolvePath(operation.getSource()));
+        }
+    }
+
+    private void move(Path source, Path target) throws IOException {
+        if (!Files.exists(source, LinkOption.NOFOLLOW_LINKS) && Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class,
+                                                              LinkOption.NOFOLLOW_LINKS);
+        logger.info("Renaming {} file to {}", source, target);
+        Files.move(source, target);
+        if (attributes.isDirectory()) {
+            directorySizeAggregator.directoryRemoved(source);
+            directorySizeAggregator.rescan(target);
+        } else {
+            directorySizeAggregator.fileMoved(source, target, attributes.size());
+        }
+    }
+
+    private ExecutorService executor(FileOperation operation) {
+        return fileUtil.getVolume(fileUtil.resolvePath(operation.getSource())).getExecutor();
+    }
+
+    @PostConstruct
+    public void recover() throws IOException {
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(journalDir, "*" + JOURNAL_EXTENSION)) {
+            for (Path path : journals) {
+                recover(path);
+            }
+        }
+    }
+
+    private void recover(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path);
+        if (lines.isEmpty()) {
+            Files.delete(path);
+            return;
+        }
+        FailurePolicy policy = FailurePolicy.valueOf(lines.get(0));
+        List<FileOperation> plan = new ArrayList<>();
+        Set<Integer> finished = new HashSet<>();
+        Set<Integer> done = new HashSet<>();
+        Set<Integer> undone = new HashSet<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t", -1);
+            if (fields[0].equals(OPERATION)) {
+                plan.add(new FileOperation(Type.valueOf(fields[1]), decode(fields[2]), decode(fields[3])));
+            } else if (fields[0].equals(DONE)) {
+                finished.add(Integer.parseInt(fields[1]));
+                done.add(Integer.parseInt(fields[1]));
+            } else if (fields[0].equals(FAILED)) {
+                finished.add(Integer.parseInt(fields[1]));
+            } else if (fields[0].equals(UNDONE)) {
+                undone.add(Integer.parseInt(fields[1]));
+            }
+        }
+        logger.warn("Recovering interrupted batch {}, policy {}.", path.getFileName(), policy);
+        if (policy == FailurePolicy.ROLL_BACK) {
+            // Only operations which are journaled as done are undone, undoing a move which did not happen would move
+            // a file which already exists at its target.
+            for (int i = plan.size() - 1; i >= 0; i--) {
+                if (done.contains(i) && !undone.contains(i)) {
+                    recover(plan.get(i), this::undo);
+                }
+            }
+        } else {
+            for (int i = 0; i < plan.size(); i++) {
+                if (!finished.contains(i)) {
+                    recover(plan.get(i), this::apply);
+                }
+            }
+        }
+        Files.delete(path);
+    }
+
+    private void recover(FileOperation operation, OperationAction action) {
+        try {
+            action.run(operation);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Recovering {} failed.", operation, e);
+        }
+    }
+
+    private interface OperationAction {
+        void run(FileOperation operation) throws IOException;
+    }
+
+    private static String decode(String value) {
+        return value.isEmpty() ? null : URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append only journal of a batch, every record is forced to disk before the operation is reported.
+     */
+    private static class Journal {
+        private final Path path;
+        private final FileChannel channel;
+
+        private Journal(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        static Journal create(Path path, FailurePolicy policy, List<FileOperation> plan) throws IOException {
+            StringBuilder content = new StringBuilder(policy.name()).append('\n');
+            for (FileOperation operation : plan) {
+                content.append(OPERATION).append('\t').append(operation.getType()).append('\t')
+                        .append(encode(operation.getSource())).append('\t').append(encode(operation.getTarget()))
+                        .append('\n');
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                                                   StandardOpenOption.APPEND);
+            Journal journal = new Journal(path, channel);
+            journal.write(content.toString());
+            return journal;
+        }
+
+        private static String encode(String value) {
+            return value == null ? "" : URLEncoder.encode(value, StandardCharsets.UTF_8);
+        }
+
+        synchronized void append(String record, int index) {
+            try {
+                write(record + "\t" + index + "\n");
+            } catch (IOException e) {
+                logger.error("Writing journal {} failed.", path, e);
+            }
+        }
+
+        private void write(String content) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+
+        synchronized void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.error("Deleting journal {} failed.", path, e);
+            }
+        }
+    }
+}
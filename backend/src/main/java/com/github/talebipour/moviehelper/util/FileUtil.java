@@ -2,28 +2,95 @@ package com.github.talebipour.moviehelper.util;
 
 import com.github.talebipour.moviehelper.exception.InvalidInputException;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+/**
+ * Resolves request paths to files. Paths are relative to {@code directory.path}, except for named roots of
+ * {@code directory.roots}, e.g. {@code usb=/mnt/usb,ssd=/mnt/ssd}, which appear as top level directories, so
+ * {@code usb/movies/a.mkv} is {@code /mnt/usb/movies/a.mkv}. Every root is a {@link Volume} with its own I/O executor.
+ */
 @Component
 public class FileUtil {
     private static final Pattern EXTENSION_PATTERN = Pattern.compile("(.*)\\.(.*)$");
+    private static final Pattern SUBTITLE_PATTERN = Pattern.compile(".*\\.srt(.\\d+)?$", Pattern.CASE_INSENSITIVE);
+    private static final Set<String> MOVIE_EXTENSIONS = Set.of("mkv", "mp4");
 
     private final Path rootDir;
+    private final Volume defaultVolume;
+    private final Map<String, Volume> namedVolumes = new LinkedHashMap<>();
 
-    public FileUtil(@Value("${directory.path}") String rootDir) {
-        File dir = new File(rootDir);
+    public FileUtil(@Value("${directory.path}") String rootDir,
+                    @Value("${directory.roots:}") String roots,
+                    @Value("${volume.io.threads:4}") int ioThreads,
+                    @Value("${volume.io.queue.capacity:100}") int ioQueueCapacity) {
+        this.rootDir = directory(rootDir);
+        this.defaultVolume = new Volume("", this.rootDir, ioThreads, ioQueueCapacity);
+        for (String root : roots.split(",")) {
+            if (root.isBlank()) {
+                continue;
+            }
+            String[] parts = root.split("=", 2);
+            String name = parts[0].trim();
+            if (parts.length != 2 || name.isEmpty() || name.contains("/") || name.contains("..")
+                || namedVolumes.containsKey(name)) {
+                throw new IllegalArgumentException("Invalid root: " + root);
+            }
+            namedVolumes.put(name, new Volume(name, directory(parts[1].trim()), ioThreads, ioQueueCapacity));
+        }
+    }
+
+    private static Path directory(String path) {
+        File dir = new File(path);
         if (!dir.exists() || !dir.isDirectory()) {
-            throw new IllegalArgumentException("Invalid directory: " + rootDir);
+            throw new IllegalArgumentException("Invalid directory: " + path);
         }
-        this.rootDir = dir.toPath();
+        return dir.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * All volumes, the default root directory first.
+     */
+    public List<Volume> getVolumes() {
+        List<Volume> volumes = new ArrayList<>();
+        volumes.add(defaultVolume);
+        volumes.addAll(namedVolumes.values());
+        return volumes;
+    }
+
+    /**
+     * Volumes of {@code directory.roots}, which are listed as top level directories.
+     */
+    public Collection<Volume> getNamedVolumes() {
+        return Collections.unmodifiableCollection(namedVolumes.values());
     }
 
-    public Path getRootDir() {
-        return rootDir;
+    /**
+     * Volume which holds the file, i.e. the named root with the longest match or the default one.
+     */
+    public Volume getVolume(Path path) {
+        Path file = path.toAbsolutePath().normalize();
+        Volume owner = defaultVolume;
+        for (Volume volume : namedVolumes.values()) {
+            if (file.startsWith(volume.getRoot())
+                && (owner == defaultVolume || volume.getRoot().getNameCount() > owner.getRoot().getNameCount())) {
+                owner = volume;
+            }
+        }
+        return owner;
     }
 
     public static String extension(String filename) {
@@ -34,6 +101,30 @@ public class FileUtil {
         return matcher.group(2);
     }
 
+    /**
+     * Whether the file is a subtitle, or a backup of one, e.g. {@code movie.srt.1}.
+     */
+    public static boolean isSubtitle(String filename) {
+        return SUBTITLE_PATTERN.matcher(filename).matches();
+    }
+
+    public static boolean isMovie(String filename) {
+        Matcher matcher = EXTENSION_PATTERN.matcher(filename);
+        return matcher.matches() && MOVIE_EXTENSIONS.contains(matcher.group(2).toLowerCase());
+    }
+
+    /**
+     * Give a file the POSIX permissions of another one, e.g. a temporary file which is created with mode 0600 before
+     * it is renamed next to a movie. It does nothing on file systems without POSIX permissions.
+     */
+    public static void copyPermissions(Path source, Path target) throws IOException {
+        try {
+            Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+        } catch (UnsupportedOperationException e) {
+            // Permissions are not supported by the file system.
+        }
+    }
+
     public static String filenameWithoutExtension(String filename) {
         Matcher matcher = EXTENSION_PATTERN.matcher(filename);
         if (!matcher.matches()) {
@@ -46,6 +137,32 @@ public class FileUtil {
         if (path != null && path.contains("..")) {
             throw new InvalidInputException();
         }
-        return path == null || path.isEmpty() ? rootDir : rootDir.resolve(path);
+        if (path == null || path.isEmpty()) {
+            return rootDir;
+        }
+        int separator = path.indexOf('/');
+        Volume volume = namedVolumes.get(separator < 0 ? path : path.substring(0, separator));
+        if (volume == null) {
+            return rootDir.resolve(path);
+        }
+        return separator < 0 ? volume.getRoot() : volume.getRoot().resolve(path.substring(separator + 1));
+    }
+
+    /**
+     * Path of a file as it is given to {@link #resolvePath(String)}.
+     */
+    public String relativize(Path path) {
+        Path file = path.toAbsolutePath().normalize();
+        Volume volume = getVolume(file);
+        String relative = volume.getRoot().relativize(file).toString();
+        if (volume == defaultVolume) {
+            return relative;
+        }
+        return relative.isEmpty() ? volume.getName() : volume.getName() + "/" + relative;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        getVolumes().forEach(Volume::shutdown);
     }
 }
@@ -0,0 +1,19 @@
+package com.github.talebipour.moviehelper.util;
+
+/**
+ * When downloaded data is forced to the storage device.
+ */
+public enum FsyncPolicy {
+    /**
+     * Leave flushing to the operating system.
+     */
+    NONE,
+    /**
+     * Force after every {@code downloader.fsync.batch.size} written bytes and at the end of download.
+     */
+    BATCH,
+    /**
+     * Force once when download completes.
+     */
+    COMPLETE
+}
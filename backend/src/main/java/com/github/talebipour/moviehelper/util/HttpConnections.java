@@ -0,0 +1,179 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.model.HostConnections;
+import com.github.talebipour.moviehelper.util.RequestTracer.Span;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends download requests through one shared {@link HttpClient}, so connections of a host are pooled and kept alive
+ * between requests, and servers which support HTTP/2 multiplex all requests over one connection.
+ * <p>
+ * Concurrent requests of a host are limited, a request over the limit waits in a queue of that host until an active
+ * one finishes. The client runs on a fixed size executor and is built on first use.
+ */
+@Component
+public class HttpConnections {
+
+    private final int maxPerHost;
+    private final Duration connectTimeout;
+    private final Version version;
+    private final int threads;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private volatile HttpClient client;
+    private volatile ExecutorService executor;
+
+    public HttpConnections(@Value("${downloader.connections.per.host:4}") int maxPerHost,
+                           @Value("${downloader.connect.timeout:10000}") long connectTimeoutMillis,
+                           @Value("${downloader.http.version:HTTP_2}") Version version,
+                           @Value("${downloader.http.threads:4}") int threads) {
+        if (maxPerHost <= 0) {
+            throw new IllegalArgumentException("Invalid connections per host: " + maxPerHost);
+        }
+        this.maxPerHost = maxPerHost;
+        this.connectTimeout = Duration.ofMillis(connectTimeoutMillis);
+        this.version = version;
+        this.threads = threads;
+    }
+
+    /**
+     * Send the request when the host has a free slot. The slot is held until the whole body is received. The wait for
+     * the slot and the whole call are spans of the caller's trace.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, BodyHandler<T> bodyHandler) {
+        Host host = hosts.computeIfAbsent(key(request.uri()), Host::new);
+        Span call = RequestTracer.span("http", request.method() + " " + request.uri());
+        Span slot = RequestTracer.span("http.slot", key(request.uri()));
+        return host.acquire()
+                .thenCompose(ignored -> {
+                    slot.close();
+                    return client().sendAsync(request, bodyHandler);
+                })
+                .whenComplete((response, throwable) -> {
+                    host.release(response, throwable);
+                    call.close();
+                });
+    }
+
+    public List<HostConnections> getStatistics() {
+        return hosts.values().stream()
+                .map(Host::statistics)
+                .sorted(Comparator.comparing(HostConnections::getHost))
+                .collect(Collectors.toList());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * HTTP client is built on first use, it starts its selector thread and loads the SSL context which slows down
+     * startup.
+     */
+    private HttpClient client() {
+        HttpClient result = client;
+        if (result == null) {
+            synchronized (this) {
+                result = client;
+                if (result == null) {
+                    executor = Executors.newFixedThreadPool(threads, daemonThreads());
+                    result = HttpClient.newBuilder()
+                            .version(version)
+                            .connectTimeout(connectTimeout)
+                            .followRedirects(Redirect.NORMAL)
+                            .executor(executor)
+                            .build();
+                    client = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "http-client-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static String key(URI uri) {
+        int port = uri.getPort() >= 0 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        return uri.getScheme() + "://" + uri.getHost() + ":" + port;
+    }
+
+    private class Host {
+        private final String name;
+        private final Deque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+        private int active;
+        private long requests;
+        private long http2Responses;
+        private long failures;
+
+        private Host(String name) {
+            this.name = name;
+        }
+
+        private CompletableFuture<Void> acquire() {
+            synchronized (this) {
+                requests++;
+                if (active < maxPerHost) {
+                    active++;
+                    return CompletableFuture.completedFuture(null);
+                }
+                CompletableFuture<Void> slot = new CompletableFuture<>();
+                waiting.add(slot);
+                return slot;
+            }
+        }
+
+        private void release(HttpResponse<?> response, Throwable throwable) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                if (throwable != null) {
+                    failures++;
+                } else if (response.version() == Version.HTTP_2) {
+                    http2Responses++;
+                }
+                // The slot is handed to the next waiting request, so active does not change.
+                next = waiting.poll();
+                if (next == null) {
+                    active--;
+                }
+            }
+            if (next != null) {
+                next.complete(null);
+            }
+        }
+
+        private synchronized HostConnections statistics() {
+            return new HostConnections(name, maxPerHost, active, waiting.size(), requests, http2Responses, failures);
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.github.talebipour.moviehelper.util;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.github.talebipour.moviehelper.exception.ServiceUnavailableException;
+import com.github.talebipour.moviehelper.model.ImportedFile;
+import com.github.talebipour.moviehelper.model.ImportedFile.Type;
+import com.github.talebipour.moviehelper.util.opensubtitles.OpenSubtitlesHasher;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Imports movies and subtitles which are copied into the folders of {@code import.watch.paths} by other tools. The
+ * stages run on their own threads and hand files over by bounded queues:
+ * <ol>
+ * <li>a watcher thread records created and modified files of the folders and their subdirectories</li>
+ * <li>a debouncer passes a file on once it had no event for {@code import.stable.millis} and its size and
+ * modification time did not change since the previous check, so files which are still copied are not imported</li>
+ * <li>{@code import.hash.threads} threads classify files by name and compute the OpenSubtitles hash of movies on the
+ * executor of their {@link Volume}</li>
+ * <li>one thread pairs subtitles with movies of the same directory, by name or as the only movie, and sets them by
+ * {@link SubtitleRenamer}</li>
+ * <li>imports request a {@link MiniDlna} reload, which is coalesced</li>
+ * </ol>
+ * When the hash queue is full, stable files wait in the debouncer, and when the pair queue is full, hash threads pair
+ * files themselves, so a burst of files waits in the debouncer instead of growing the queues.
+ */
+@Component
+public class ImportPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportPipeline.class);
+
+    private static final int RECENT_IMPORTS = 100;
+
+    private final FileUtil fileUtil;
+    private final SubtitleRenamer subtitleRenamer;
+    private final MiniDlna miniDlna;
+    private final DirectorySizeAggregator directorySizeAggregator;
+    private final List<Path> folders = new ArrayList<>();
+    private final long stableNanos;
+    private final long checkMillis;
+    private final Map<Path, Candidate> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService debouncer;
+    private final ThreadPoolExecutor hashExecutor;
+    private final ThreadPoolExecutor pairExecutor;
+    private final Deque<ImportedFile> recentImports = new ArrayDeque<>();
+    private WatchService watchService;
+
+    public ImportPipeline(FileUtil fileUtil, SubtitleRenamer subtitleRenamer, MiniDlna miniDlna,
+                          DirectorySizeAggregator directorySizeAggregator,
+                          @Value("${import.watch.paths:}") String paths,
+                          @Value("${import.stable.millis:5000}") long stableMillis,
+                          @Value("${import.hash.threads:2}") int hashThreads,
+                          @Value("${import.queue.capacity:100}") int queueCapacity) {
+        this.fileUtil = fileUtil;
+        this.subtitleRenamer = subtitleRenamer;
+        this.miniDlna = miniDlna;
+        this.directorySizeAggregator = directorySizeAggregator;
+        for (String path : paths.split(",")) {
+            if (path.isBlank()) {
+                continue;
+            }
+            Path folder = fileUtil.resolvePath(path.trim());
+            if (!Files.isDirectory(folder)) {
+                throw new IllegalArgumentException("Invalid import folder: " + path);
+            }
+            folders.add(folder);
+        }
+        this.stableNanos = TimeUnit.MILLISECONDS.toNanos(stableMillis);
+        this.checkMillis = Math.max(10, stableMillis / 4);
+        this.debouncer = Executors.newSingleThreadScheduledExecutor(threadFactory("import-debounce"));
+        this.hashExecutor = new ThreadPoolExecutor(hashThreads, hashThreads, 0, TimeUnit.MILLISECONDS,
+                                                   new ArrayBlockingQueue<>(queueCapacity),
+                                                   threadFactory("import-hash"));
+        this.pairExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                                                   new ArrayBlockingQueue<>(queueCapacity),
+                                                   threadFactory("import-pair"),
+                                                   new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (folders.isEmpty()) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        for (Path folder : folders) {
+            register(folder, false);
+        }
+        Thread watcher = new Thread(this::watch, "import-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        debouncer.scheduleWithFixedDelay(this::checkPending, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+        logger.info("Watching {} for new movies and subtitles.", folders);
+    }
+
+    /**
+     * Newly imported files, the latest first.
+     */
+    public List<ImportedFile> getRecentImports() {
+        synchronized (recentImports) {
+            return new ArrayList<>(recentImports);
+        }
+    }
+
+    /**
+     * Watch the directory and its subdirectories.
+     *
+     * @param addFiles whether existing files are imported too, e.g. of a directory which is copied into a folder
+     */
+    private void register(Path directory, boolean addFiles) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (!dir.equals(directory) && isHidden(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (addFiles) {
+                    addCandidate(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                try {
+                    if (event.kind() == OVERFLOW) {
+                        logger.warn("Events of {} are lost, scanning it again.", directory);
+                        register(directory, true);
+                        continue;
+                    }
+                    Path path = directory.resolve((Path) event.context());
+                    if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        if (!isHidden(path)) {
+                            register(path, true);
+                        }
+                    } else {
+                        addCandidate(path);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Watching new files of {} failed: {}", directory, e.toString());
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private void addCandidate(Path path) {
+        String name = path.getFileName().toString();
+        if (isHidden(path) || !FileUtil.isMovie(name) && !isNewSubtitle(name)) {
+            return;
+        }
+        pending.computeIfAbsent(path, key -> new Candidate()).lastEvent = System.nanoTime();
+    }
+
+    private static boolean isHidden(Path path) {
+        // Partial files of downloads, moves and extracts are hidden.
+        return path.getFileName().toString().startsWith(".");
+    }
+
+    /**
+     * Whether it is a subtitle but not a backup, which is created by setting another subtitle.
+     */
+    private static boolean isNewSubtitle(String name) {
+        return name.toLowerCase().endsWith(".srt");
+    }
+
+    private void checkPending() {
+        long now = System.nanoTime();
+        for (Map.Entry<Path, Candidate> entry : pending.entrySet()) {
+            Path path = entry.getKey();
+            Candidate candidate = entry.getValue();
+            if (now - candidate.lastEvent < stableNanos) {
+                continue;
+            }
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                                                                      LinkOption.NOFOLLOW_LINKS);
+                if (!attributes.isRegularFile()) {
+                    pending.remove(path, candidate);
+                    continue;
+                }
+                if (!candidate.isUnchanged(attributes)) {
+                    continue;
+                }
+            } catch (IOException e) {
+                // Removed or renamed before it became stable.
+                pending.remove(path, candidate);
+                continue;
+            }
+            if (hashExecutor.getQueue().remainingCapacity() == 0) {
+                // The next check passes it on when the queue has room.
+                return;
+            }
+            try {
+                hashExecutor.execute(() -> classify(path));
+                pending.remove(path, candidate);
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    private void classify(Path path) {
+        directorySizeAggregator.rescan(path.getParent());
+        try {
+            if (FileUtil.isMovie(path.getFileName().toString())) {
+                ImportedFile movie = new ImportedFile(fileUtil.relativize(path), Type.MOVIE,
+                                                      System.currentTimeMillis());
+                movie.setHash(fileUtil.getVolume(path).call(() -> OpenSubtitlesHasher.computeHash(path.toFile())));
+                pairExecutor.execute(() -> pairMovie(path, movie));
+            } else {
+                pairExecutor.execute(() -> pairSubtitle(path));
+            }
+        } catch (ServiceUnavailableException e) {
+            // The volume is busy, try again later.
+            addCandidate(path);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Importing {} failed: {}", path, e.toString());
+        }
+    }
+
+    private void pairMovie(Path moviePath, ImportedFile movie) {
+        try {
+            if (!Files.isRegularFile(moviePath)) {
+                return;
+            }
+            List<Path> movies = listFiles(moviePath.getParent(), FileUtil::isMovie);
+            List<Path> subtitles = unpairedSubtitles(moviePath.getParent(), movies).stream()
+                    .filter(subtitle -> moviePath.equals(movieOf(subtitle, movies)))
+                    .collect(Collectors.toList());
+            Path subtitlePath = SubtitleRenamer.subtitleOf(moviePath);
+            if (subtitles.size() == 1) {
+                subtitleRenamer.setSubtitle(subtitles.get(0), moviePath);
+                logger.info("Set {} as subtitle of imported movie {}", subtitles.get(0), moviePath);
+            } else if (subtitles.size() > 1) {
+                logger.info("Subtitle of imported movie {} is not unique: {}", moviePath, subtitles);
+            }
+            if (Files.exists(subtitlePath)) {
+                movie.setPairedWith(fileUtil.relativize(subtitlePath));
+            }
+            imported(movie);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Pairing imported movie {} failed: {}", moviePath, e.toString());
+        }
+    }
+
+    private void pairSubtitle(Path subtitlePath) {
+        try {
+            if (!Files.isRegularFile(subtitlePath)) {
+                return;
+            }
+            List<Path> movies = listFiles(subtitlePath.getParent(), FileUtil::isMovie);
+            if (movies.stream().anyMatch(movie -> SubtitleRenamer.subtitleOf(movie).equals(subtitlePath))) {
+                // It is set already, e.g. it is renamed by this pipeline.
+                return;
+            }
+            ImportedFile subtitle = new ImportedFile(fileUtil.relativize(subtitlePath), Type.SUBTITLE,
+                                                     System.currentTimeMillis());
+            Path moviePath = movieOf(subtitlePath, movies);
+            if (moviePath == null || unpairedSubtitles(subtitlePath.getParent(), movies).stream()
+                    .filter(other -> moviePath.equals(movieOf(other, movies))).count() > 1) {
+                logger.info("Movie of imported subtitle {} is not found or not unique.", subtitlePath);
+            } else {
+                subtitleRenamer.setSubtitle(subtitlePath, moviePath);
+                subtitle.setPairedWith(fileUtil.relativize(moviePath));
+                logger.info("Set imported subtitle {} for {}", subtitlePath, moviePath);
+            }
+            imported(subtitle);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Pairing imported subtitle {} failed: {}", subtitlePath, e.toString());
+        }
+    }
+
+    /**
+     * The movie which the subtitle name starts with, or the only movie of the directory.
+     *
+     * @return null if no movie or more than one matches
+     */
+    private static Path movieOf(Path subtitlePath, List<Path> movies) {
+        String subtitleName = subtitlePath.getFileName().toString().toLowerCase();
+        List<Path> matching = movies.stream()
+                .filter(movie -> subtitleName.startsWith(
+                        FileUtil.filenameWithoutExtension(movie.getFileName().toString()).toLowerCase()))
+                .collect(Collectors.toList());
+        if (matching.size() == 1) {
+            return matching.get(0);
+        }
+        return matching.isEmpty() && movies.size() == 1 ? movies.get(0) : null;
+    }
+
+    /**
+     * Subtitles of the directory which are not named after a movie.
+     */
+    private List<Path> unpairedSubtitles(Path directory, List<Path> movies) throws IOException {
+        List<Path> named = movies.stream().map(SubtitleRenamer::subtitleOf).collect(Collectors.toList());
+        return listFiles(directory, name -> isNewSubtitle(name) && !name.startsWith(".")).stream()
+                .filter(subtitle -> !named.contains(subtitle))
+                .collect(Collectors.toList());
+    }
+
+    private List<Path> listFiles(Path directory, Predicate<String> name) throws IOException {
+        return fileUtil.getVolume(directory).call(() -> {
+            try (Stream<Path> files = Files.list(directory)) {
+                return files.filter(file -> name.test(file.getFileName().toString()))
+                        .filter(Files::isRegularFile)
+                        .collect(Collectors.toList());
+            }
+        });
+    }
+
+    private void imported(ImportedFile file) {
+        synchronized (recentImports) {
+            recentImports.addFirst(file);
+            if (recentImports.size() > RECENT_IMPORTS) {
+                recentImports.removeLast();
+            }
+        }
+        miniDlna.requestReload();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        debouncer.shutdownNow();
+        hashExecutor.shutdownNow();
+        pairExecutor.shutdownNow();
+    }
+
+    /**
+     * A file which is waiting to become stable.
+     */
+    private static class Candidate {
+        private volatile long lastEvent = System.nanoTime();
+        private long size = -1;
+        private FileTime modifiedTime;
+
+        /**
+         * Whether size and modification time are the same as in the previous check.
+         */
+        boolean isUnchanged(BasicFileAttributes attributes) {
+            boolean unchanged = attributes.size() == size && attributes.lastModifiedTime().equals(modifiedTime);
+            size = attributes.size();
+            modifiedTime = attributes.lastModifiedTime();
+            return unchanged;
+        }
+    }
+}
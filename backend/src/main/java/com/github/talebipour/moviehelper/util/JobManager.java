@@ -0,0 +1,140 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.exception.ServiceUnavailableException;
+import com.github.talebipour.moviehelper.model.Job;
+import com.github.talebipour.moviehelper.model.Job.Status;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs long operations as jobs on a bounded executor, so request threads only start them and return a job handle.
+ * Finished jobs are kept for a TTL, so their result can be fetched after they finish.
+ */
+@Component
+public class JobManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobManager.class);
+
+    private final ThreadPoolExecutor executor;
+    private final long resultTtl;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public JobManager(@Value("${jobs.threads:2}") int threads,
+                      @Value("${jobs.queue.capacity:100}") int queueCapacity,
+                      @Value("${jobs.result.ttl:3600000}") long resultTtl) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<>(queueCapacity));
+        this.resultTtl = resultTtl;
+    }
+
+    /**
+     * Queue a job.
+     *
+     * @param type name of the operation, e.g. {@code delete-files}
+     * @throws ServiceUnavailableException if the queue is full
+     */
+    public Job submit(String type, JobTask task) {
+        evictExpired();
+        Job job = new Job(UUID.randomUUID().toString(), type, System.currentTimeMillis());
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new ServiceUnavailableException("Job queue is full.");
+        }
+        logger.info("Job {} of type {} queued.", job.getId(), type);
+        return job;
+    }
+
+    public Optional<Job> getJob(String id) {
+        evictExpired();
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public Collection<Job> getJobs() {
+        evictExpired();
+        return jobs.values().stream()
+                .sorted(Comparator.comparingLong(Job::getCreateTime))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Request cancellation of a job. A queued job is cancelled at once, a running one when it checks for it.
+     */
+    public Optional<Job> cancel(String id) {
+        Optional<Job> job = getJob(id);
+        job.ifPresent(existing -> {
+            synchronized (existing) {
+                existing.setCancelRequested(true);
+                if (existing.getStatus() == Status.QUEUED) {
+                    finish(existing, Status.CANCELLED);
+                }
+            }
+        });
+        return job;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(Job job, JobTask task) {
+        synchronized (job) {
+            if (job.getStatus() != Status.QUEUED) {
+                return;
+            }
+            job.setStatus(Status.RUNNING);
+            job.setStartTime(System.currentTimeMillis());
+        }
+        try {
+            job.setResult(task.run(job));
+            finish(job, Status.COMPLETED);
+        } catch (Exception e) {
+            if (job.isCancelRequested() || e instanceof CancellationException) {
+                finish(job, Status.CANCELLED);
+            } else {
+                logger.error("Job {} failed.", job.getId(), e);
+                job.setMessage(e.getMessage() == null ? e.toString() : e.getMessage());
+                finish(job, Status.FAILED);
+            }
+        }
+    }
+
+    private static void finish(Job job, Status status) {
+        job.setFinishTime(System.currentTimeMillis());
+        job.setStatus(status);
+        logger.info("Job {} finished with status {}.", job.getId(), status);
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> job.isFinished() && now - job.getFinishTime() > resultTtl);
+    }
+
+    /**
+     * Work of a job, it reports progress on the job and stops when {@link Job#checkCancelled()} throws.
+     */
+    public interface JobTask {
+        /**
+         * @return result of the job, it is serialized into the job status
+         */
+        Object run(Job job) throws Exception;
+    }
+}
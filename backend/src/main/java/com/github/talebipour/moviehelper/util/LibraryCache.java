@@ -0,0 +1,205 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.model.FileModel;
+import com.github.talebipour.moviehelper.model.FileModel.FileType;
+import com.github.talebipour.moviehelper.util.LibrarySnapshot.Directory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps listings and directory sizes across restarts in a {@link LibrarySnapshot} at {@code library.snapshot.path},
+ * which is written every {@code library.snapshot.interval.millis} and on shutdown. An empty path disables it.
+ * <p>
+ * At startup the snapshot is mapped and sizes are restored into the {@link DirectorySizeAggregator}, so they are
+ * served while the disks are scanned again in background. The first listing of a directory after a restart is served
+ * from the snapshot without any I/O, then the directory is validated in background by its modification time and later
+ * listings read the disk. A directory which changed is left out of the next snapshot until it is listed again.
+ */
+@Component
+public class LibraryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LibraryCache.class);
+
+    private final FileUtil fileUtil;
+    private final DirectorySizeAggregator directorySizeAggregator;
+    private final Path snapshotPath;
+    private final long intervalMillis;
+    private final String roots;
+    private final LibrarySnapshot snapshot;
+    private final Map<String, Listing> listings = new ConcurrentHashMap<>();
+    private final Set<String> served = ConcurrentHashMap.newKeySet();
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService writer;
+
+    public LibraryCache(FileUtil fileUtil, DirectorySizeAggregator directorySizeAggregator,
+                        @Value("${library.snapshot.path:${state.directory.path}/library.snapshot}") String path,
+                        @Value("${library.snapshot.interval.millis:300000}") long intervalMillis) {
+        this.fileUtil = fileUtil;
+        this.directorySizeAggregator = directorySizeAggregator;
+        this.snapshotPath = path.isBlank() ? null : Paths.get(path);
+        this.intervalMillis = intervalMillis;
+        this.roots = fileUtil.getVolumes().stream().map(volume -> volume.getName() + "=" + volume.getRoot())
+                .collect(Collectors.joining(","));
+        this.snapshot = snapshotPath == null ? null : load(snapshotPath);
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "library-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (snapshot != null) {
+            restoreSizes();
+        }
+    }
+
+    private LibrarySnapshot load(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            LibrarySnapshot loaded = LibrarySnapshot.map(path);
+            if (!loaded.getRoots().equals(roots)) {
+                logger.info("Ignoring library snapshot of other roots: {}", loaded.getRoots());
+                return null;
+            }
+            logger.info("Mapped library snapshot of {} directories.", loaded.getDirectoryCount());
+            return loaded;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Reading library snapshot {} failed: {}", path, e.toString());
+            return null;
+        }
+    }
+
+    private void restoreSizes() {
+        for (int i = 0; i < snapshot.getDirectoryCount(); i++) {
+            Directory directory = snapshot.getDirectory(i);
+            if (directory.getTotalSize() >= 0) {
+                directorySizeAggregator.restore(fileUtil.resolvePath(directory.getPath()), directory.getTotalSize(),
+                                                directory.getModifiedTime());
+            }
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (snapshotPath != null && intervalMillis > 0) {
+            writer.scheduleWithFixedDelay(this::write, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdownNow();
+        if (snapshotPath != null) {
+            write();
+        }
+    }
+
+    /**
+     * Get the listing of a directory from the snapshot, only once after a restart. The directory is validated in
+     * background.
+     */
+    public Optional<Listing> getListing(Path directory) {
+        if (snapshot == null) {
+            return Optional.empty();
+        }
+        String path = fileUtil.relativize(directory);
+        if (!served.add(path)) {
+            return Optional.empty();
+        }
+        Optional<Directory> record = snapshot.find(path).filter(Directory::hasListing);
+        if (record.isEmpty()) {
+            return Optional.empty();
+        }
+        long modifiedTime = record.get().getModifiedTime();
+        List<FileModel> files = record.get().getListing();
+        for (FileModel file : files) {
+            if (file.getType() == FileType.DIRECTORY) {
+                directorySizeAggregator.getSize(fileUtil.resolvePath(file.getPath()), null).ifPresent(file::setSize);
+            }
+        }
+        fileUtil.getVolume(directory).submit(() -> {
+            if (Files.getLastModifiedTime(directory).toMillis() != modifiedTime) {
+                logger.debug("Snapshot listing of {} is outdated.", directory);
+                changed.add(path);
+            }
+            return null;
+        }).exceptionally(e -> {
+            changed.add(path);
+            return null;
+        });
+        return Optional.of(new Listing(modifiedTime, files));
+    }
+
+    /**
+     * Record a listing which is read from the disk, for the next snapshot.
+     */
+    public void listed(Path directory, long modifiedTime, List<FileModel> files) {
+        if (snapshotPath != null) {
+            listings.put(fileUtil.relativize(directory), new Listing(modifiedTime, List.copyOf(files)));
+        }
+    }
+
+    /**
+     * Write a snapshot of the listings and sizes which are known now.
+     */
+    public synchronized void write() {
+        long start = System.currentTimeMillis();
+        LibrarySnapshot.Writer snapshotWriter = new LibrarySnapshot.Writer(roots);
+        if (snapshot != null) {
+            for (int i = 0; i < snapshot.getDirectoryCount(); i++) {
+                Directory directory = snapshot.getDirectory(i);
+                String path = directory.getPath();
+                if (directory.hasListing() && !changed.contains(path) && !listings.containsKey(path)) {
+                    snapshotWriter.addListing(path, directory.getModifiedTime(), directory.getListing());
+                }
+            }
+        }
+        listings.forEach((path, listing) -> snapshotWriter.addListing(path, listing.modifiedTime, listing.files));
+        directorySizeAggregator.forEach((directory, size, modifiedTime) -> snapshotWriter.addSize(
+                fileUtil.relativize(directory), modifiedTime, size));
+        try {
+            snapshotWriter.write(snapshotPath);
+            logger.debug("Wrote library snapshot in {} ms.", System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            logger.warn("Writing library snapshot {} failed: {}", snapshotPath, e.toString());
+        }
+    }
+
+    /**
+     * Entries of a directory and its modification time when they were read.
+     */
+    public static class Listing {
+        private final long modifiedTime;
+        private final List<FileModel> files;
+
+        private Listing(long modifiedTime, List<FileModel> files) {
+            this.modifiedTime = modifiedTime;
+            this.files = files;
+        }
+
+        public long getModifiedTime() {
+            return modifiedTime;
+        }
+
+        public List<FileModel> getFiles() {
+            return files;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.model.FileModel;
+import com.github.talebipour.moviehelper.model.FileModel.FileType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Binary snapshot of the library which is memory-mapped, so nothing is parsed before it is used. The file has a
+ * header, fixed-width directory records sorted by path, fixed-width entry records and a string table of UTF-8 names:
+ * <pre>
+ * header:    int magic, int version, long createTime, int directories, int entries, int stringTableSize,
+ *            int rootsRef, int rootsLength, int reserved
+ * directory: int pathRef, int pathLength, int firstEntry, int entryCount, long modifiedTime, long totalSize
+ * entry:     int nameRef, int nameLength, int type, long size
+ * </pre>
+ * Paths are request paths as given to {@link FileUtil#resolvePath(String)}. A directory whose listing is not known
+ * has entry count -1 and one whose size is not known has total size -1. The roots are a description of the volumes,
+ * a snapshot of other roots is not used.
+ */
+public class LibrarySnapshot {
+
+    private static final int MAGIC = 0x4D484C53;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int DIRECTORY_SIZE = 32;
+    private static final int ENTRY_SIZE = 20;
+    private static final int TYPE_REGULAR = 0;
+    private static final int TYPE_DIRECTORY = 1;
+
+    private final ByteBuffer buffer;
+    private final int directories;
+    private final int entries;
+    private final int entriesOffset;
+    private final int stringsOffset;
+
+    private LibrarySnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a library snapshot of version " + VERSION);
+        }
+        directories = buffer.getInt(16);
+        entries = buffer.getInt(20);
+        int stringTableSize = buffer.getInt(24);
+        entriesOffset = HEADER_SIZE + directories * DIRECTORY_SIZE;
+        stringsOffset = entriesOffset + entries * ENTRY_SIZE;
+        if (directories < 0 || entries < 0 || stringTableSize < 0
+            || (long) stringsOffset + stringTableSize != buffer.capacity()) {
+            throw new IOException("Library snapshot is truncated.");
+        }
+    }
+
+    /**
+     * Map a snapshot file.
+     *
+     * @throws IOException if the file can not be read or is not a valid snapshot
+     */
+    public static LibrarySnapshot map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new LibrarySnapshot(buffer);
+        }
+    }
+
+    public long getCreateTime() {
+        return buffer.getLong(8);
+    }
+
+    public String getRoots() {
+        return string(buffer.getInt(28), buffer.getInt(32));
+    }
+
+    public int getDirectoryCount() {
+        return directories;
+    }
+
+    /**
+     * Find the record of a directory by binary search, no other records are read.
+     */
+    public Optional<Directory> find(String path) {
+        byte[] target = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = directories - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = HEADER_SIZE + middle * DIRECTORY_SIZE;
+            int compared = compare(buffer.getInt(record), buffer.getInt(record + 4), target);
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                return Optional.of(new Directory(middle));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Directory record by its index.
+     */
+    public Directory getDirectory(int index) {
+        return new Directory(index);
+    }
+
+    private int compare(int ref, int length, byte[] target) {
+        int common = Math.min(length, target.length);
+        for (int i = 0; i < common; i++) {
+            int compared = Integer.compare(buffer.get(stringsOffset + ref + i) & 0xff, target[i] & 0xff);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return Integer.compare(length, target.length);
+    }
+
+    private String string(int ref, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(stringsOffset + ref);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A directory record, its fields are read from the mapped file when they are needed.
+     */
+    public class Directory {
+        private final int record;
+
+        private Directory(int index) {
+            this.record = HEADER_SIZE + index * DIRECTORY_SIZE;
+        }
+
+        public String getPath() {
+            return string(buffer.getInt(record), buffer.getInt(record + 4));
+        }
+
+        public long getModifiedTime() {
+            return buffer.getLong(record + 16);
+        }
+
+        /**
+         * Total size of the subtree, or -1 if it is not known.
+         */
+        public long getTotalSize() {
+            return buffer.getLong(record + 24);
+        }
+
+        public boolean hasListing() {
+            return buffer.getInt(record + 12) >= 0;
+        }
+
+        /**
+         * Entries of the directory with their paths and sizes when the snapshot was written.
+         */
+        public List<FileModel> getListing() {
+            String path = getPath();
+            int first = buffer.getInt(record + 8);
+            int count = buffer.getInt(record + 12);
+            List<FileModel> files = new ArrayList<>(Math.max(count, 0));
+            for (int i = first; i < first + count; i++) {
+                int entry = entriesOffset + i * ENTRY_SIZE;
+                FileModel model = new FileModel();
+                model.setName(string(buffer.getInt(entry), buffer.getInt(entry + 4)));
+                model.setPath(path.isEmpty() ? model.getName() : path + "/" + model.getName());
+                model.setType(buffer.getInt(entry + 8) == TYPE_DIRECTORY ? FileType.DIRECTORY : FileType.REGULAR);
+                model.setSize(buffer.getLong(entry + 12));
+                files.add(model);
+            }
+            return files;
+        }
+    }
+
+    /**
+     * Collects directories and writes them as a snapshot file.
+     */
+    public static class Writer {
+        private final String roots;
+        private final Map<String, DirectoryData> directories = new TreeMap<>(
+                (first, second) -> Arrays.compareUnsigned(first.getBytes(StandardCharsets.UTF_8),
+                                                          second.getBytes(StandardCharsets.UTF_8)));
+
+        public Writer(String roots) {
+            this.roots = roots;
+        }
+
+        /**
+         * Add the listing of a directory, it replaces a listing which is added before.
+         */
+        public void addListing(String path, long modifiedTime, List<FileModel> files) {
+            directory(path, modifiedTime).files = files;
+        }
+
+        /**
+         * Add the total size of a directory.
+         */
+        public void addSize(String path, long modifiedTime, long totalSize) {
+            directory(path, modifiedTime).totalSize = totalSize;
+        }
+
+        private DirectoryData directory(String path, long modifiedTime) {
+            DirectoryData data = directories.get(path);
+            if (data == null) {
+                data = new DirectoryData();
+                data.modifiedTime = modifiedTime;
+                directories.put(path, data);
+            } else {
+                // A listing and a size may be read at different times, the older one is kept so the other one is
+                // validated too when the directory is read again.
+                data.modifiedTime = Math.min(data.modifiedTime, modifiedTime);
+            }
+            return data;
+        }
+
+        /**
+         * Write the snapshot into a temporary file and move it to the target, so readers never see a partial one and
+         * a mapping of the previous file stays valid.
+         */
+        public void write(Path target) throws IOException {
+            StringTable strings = new StringTable();
+            int rootsRef = strings.add(roots);
+            int entryCount = directories.values().stream()
+                    .mapToInt(data -> data.files == null ? 0 : data.files.size()).sum();
+            ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE + directories.size() * DIRECTORY_SIZE
+                                                     + entryCount * ENTRY_SIZE);
+            records.position(HEADER_SIZE);
+            int entriesOffset = HEADER_SIZE + directories.size() * DIRECTORY_SIZE;
+            int entry = 0;
+            for (Map.Entry<String, DirectoryData> directory : directories.entrySet()) {
+                DirectoryData data = directory.getValue();
+                records.putInt(strings.add(directory.getKey())).putInt(strings.length(directory.getKey()))
+                        .putInt(entry).putInt(data.files == null ? -1 : data.files.size())
+                        .putLong(data.modifiedTime).putLong(data.totalSize);
+                if (data.files == null) {
+                    continue;
+                }
+                for (FileModel file : data.files) {
+                    int position = entriesOffset + entry * ENTRY_SIZE;
+                    records.putInt(position, strings.add(file.getName()))
+                            .putInt(position + 4, strings.length(file.getName()))
+                            .putInt(position + 8, file.getType() == FileType.DIRECTORY ? TYPE_DIRECTORY
+                                                                                       : TYPE_REGULAR)
+                            .putLong(position + 12, file.getSize());
+                    entry++;
+                }
+            }
+            records.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, System.currentTimeMillis())
+                    .putInt(16, directories.size()).putInt(20, entryCount).putInt(24, strings.size())
+                    .putInt(28, rootsRef).putInt(32, strings.length(roots)).putInt(36, 0);
+            records.clear();
+
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (ByteBuffer part : List.of(records, strings.toBuffer())) {
+                    while (part.hasRemaining()) {
+                        channel.write(part);
+                    }
+                }
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static class DirectoryData {
+        private long modifiedTime;
+        private long totalSize = -1;
+        private List<FileModel> files;
+    }
+
+    /**
+     * UTF-8 strings, each distinct one is stored once.
+     */
+    private static class StringTable {
+        private final Map<String, byte[]> encoded = new HashMap<>();
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<byte[]> parts = new ArrayList<>();
+        private int size;
+
+        int add(String value) {
+            return refs.computeIfAbsent(value, key -> {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                encoded.put(key, bytes);
+                parts.add(bytes);
+                int ref = size;
+                size += bytes.length;
+                return ref;
+            });
+        }
+
+        int length(String value) {
+            return encoded.get(value).length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            parts.forEach(buffer::put);
+            return buffer.flip();
+        }
+    }
+}
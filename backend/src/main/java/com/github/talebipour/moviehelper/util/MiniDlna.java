@@ -0,0 +1,105 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.exception.InternalServerError;
+import com.github.talebipour.moviehelper.util.RequestTracer.Span;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reloads MiniDLNA by {@code minidlna.reload.command}, so it indexes new media. Reloads requested by
+ * {@link #requestReload()} are coalesced: the first request schedules a reload after
+ * {@code minidlna.reload.delay.millis} and the requests until it starts are served by it.
+ */
+@Component
+public class MiniDlna {
+
+    private static final Logger logger = LoggerFactory.getLogger(MiniDlna.class);
+
+    private final List<String> command;
+    private final long reloadDelayMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "minidlna-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong reloads = new AtomicLong();
+
+    public MiniDlna(@Value("${minidlna.reload.command:systemctl force-reload minidlna}") String command,
+                    @Value("${minidlna.reload.delay.millis:5000}") long reloadDelayMillis) {
+        this.command = List.of(command.trim().split("\\s+"));
+        this.reloadDelayMillis = reloadDelayMillis;
+    }
+
+    /**
+     * Reload MiniDLNA and wait for it.
+     *
+     * @throws InternalServerError if the reload fails or does not finish in 15 seconds
+     */
+    public void reload() throws IOException {
+        logger.info("Reloading MiniDLNA...");
+        Span span = RequestTracer.span("process", command);
+        try {
+            Process process = new ProcessBuilder().command(command).start();
+            if (!process.waitFor(15, TimeUnit.SECONDS)) {
+                process.destroy();
+                throw new InternalServerError("MiniDLNA force-reload timed out.");
+            }
+            if (process.exitValue() != 0) {
+                StringWriter error = new StringWriter();
+                IOUtils.copy(process.getErrorStream(), error);
+                logger.error("Reload MiniDLNA failed: {}", error);
+                throw new InternalServerError("MiniDLNA force-reload failed, exit code=" + process.exitValue());
+            }
+            reloads.incrementAndGet();
+            logger.info("MiniDLNA reloaded.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerError("Interrupted while waiting for MiniDLNA force-reload", e);
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * Schedule a reload unless one is scheduled already.
+     */
+    public void requestReload() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        scheduler.schedule(() -> {
+            // Requests from now on need another reload, as this one may miss their files.
+            scheduled.set(false);
+            try {
+                reload();
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Scheduled MiniDLNA reload failed: {}", e.toString());
+            }
+        }, reloadDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Number of successful reloads.
+     */
+    public long getReloadCount() {
+        return reloads.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
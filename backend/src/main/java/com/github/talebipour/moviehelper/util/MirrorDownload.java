@@ -0,0 +1,298 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.exception.InvalidInputException;
+import com.github.talebipour.moviehelper.model.DownloadStatus;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandler;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Downloads one file from several mirrors at once. The file is split into chunks which are handed out to mirrors one
+ * at a time, so a fast mirror comes back for the next chunk sooner and downloads more of the file. When no chunk is
+ * left, an idle mirror steals the second half of the largest range which is still downloading, so a slow mirror does
+ * not hold the download back at the end.
+ * <p>
+ * Failed ranges are handed out again from their last written byte. A mirror which fails too many times in a row is
+ * dropped, the download fails only when no mirror is left.
+ * <p>
+ * A progressive download only hands out chunks which start within a window after the readable prefix of the file, so
+ * the file is written nearly in order and can be played while it is downloading.
+ */
+class MirrorDownload {
+
+    private static final Logger logger = LoggerFactory.getLogger(MirrorDownload.class);
+
+    private final DownloadTask task;
+    private final HttpConnections httpConnections;
+    private final BufferPool bufferPool;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncBatchSize;
+    private final long chunkSize;
+    private final int attempts;
+    /**
+     * Bytes after the readable prefix which chunks may start in, or zero to hand out chunks in any order.
+     */
+    private final long window;
+    private final List<Mirror> mirrors = new ArrayList<>();
+    private final Deque<DownloadSegment> pending = new ArrayDeque<>();
+    private final List<DownloadSegment> active = new ArrayList<>();
+    private final Deque<Mirror> idle = new ArrayDeque<>();
+    /**
+     * Subscribers of active segments, which are cancelled when the download fails.
+     */
+    private final Map<DownloadSegment, DownloadSubscriber> subscribers = new HashMap<>();
+    /**
+     * Written bytes of segments which are not active anymore.
+     */
+    private final AtomicLong finishedBytes = new AtomicLong();
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+    private long startNanos;
+
+    MirrorDownload(DownloadTask task, List<String> urls, HttpConnections httpConnections, BufferPool bufferPool,
+                   FsyncPolicy fsyncPolicy, long fsyncBatchSize, long chunkSize, int attempts, long window) {
+        this.task = task;
+        this.httpConnections = httpConnections;
+        this.bufferPool = bufferPool;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncBatchSize = fsyncBatchSize;
+        this.chunkSize = chunkSize;
+        this.attempts = attempts;
+        this.window = window;
+        urls.forEach(url -> mirrors.add(new Mirror(URI.create(url))));
+    }
+
+    CompletableFuture<Void> start() {
+        long size = task.getStatus().getFile().getSize();
+        // Ranges are written out of order, so the file is created with its final size.
+        try (RandomAccessFile file = new RandomAccessFile(task.getPath().toFile(), "rw")) {
+            file.setLength(size);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        for (long start = 0; start < size; start += chunkSize) {
+            pending.add(new DownloadSegment(start, Math.min(start + chunkSize, size), this::updateProgress));
+        }
+        startNanos = System.nanoTime();
+        logger.info("Downloading {} chunks of {} from {} mirrors.", pending.size(), task.getPath(), mirrors.size());
+        new ArrayList<>(mirrors).forEach(this::next);
+        return result.thenRunAsync(this::digest, task.getIoExecutor());
+    }
+
+    private void next(Mirror mirror) {
+        DownloadSegment segment;
+        synchronized (this) {
+            segment = claim();
+            if (segment == null) {
+                idle.add(mirror);
+                if (active.isEmpty()) {
+                    finish();
+                }
+                return;
+            }
+        }
+        fetch(mirror, segment).whenComplete((ignored, throwable) -> {
+            List<Mirror> restarted = new ArrayList<>();
+            synchronized (this) {
+                active.remove(segment);
+                subscribers.remove(segment);
+                finishedBytes.addAndGet(segment.getPosition() - segment.getStart());
+                if (segment.getPosition() < segment.getEnd()) {
+                    pending.addFirst(new DownloadSegment(segment.getPosition(), segment.getEnd(),
+                                                         this::updateProgress));
+                    restarted.addAll(idle);
+                    idle.clear();
+                }
+                if (window > 0 && !pending.isEmpty()) {
+                    // The readable prefix may have moved, so chunks which were out of the window may be claimed now.
+                    restarted.addAll(idle);
+                    idle.clear();
+                }
+                if (throwable == null) {
+                    mirror.failures = 0;
+                    mirror.bytes += segment.getPosition() - segment.getStart();
+                } else if (++mirror.failures > attempts) {
+                    logger.warn("Dropping mirror {} after {} failures: {}", mirror.uri, mirror.failures,
+                                throwable.toString());
+                    mirrors.remove(mirror);
+                    if (mirrors.isEmpty()) {
+                        result.completeExceptionally(throwable);
+                    }
+                } else {
+                    logger.warn("Range {} from {} failed, retrying: {}", segment, mirror.uri, throwable.toString());
+                    restarted.add(mirror);
+                }
+                if (throwable == null) {
+                    restarted.add(mirror);
+                }
+                if (active.isEmpty()) {
+                    finish();
+                }
+            }
+            if (result.isCompletedExceptionally()) {
+                cancelActive();
+            } else {
+                restarted.forEach(this::next);
+            }
+        });
+    }
+
+    /**
+     * Stop the other requests of a failed download, so they do not keep writing into a file which is deleted. They are
+     * cancelled outside of the lock, because subscribers report progress while holding their own lock.
+     */
+    private void cancelActive() {
+        List<DownloadSubscriber> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(subscribers.values());
+            subscribers.clear();
+        }
+        cancelled.forEach(DownloadSubscriber::cancel);
+    }
+
+    /**
+     * Take the next pending chunk, or split the active range with most remaining bytes.
+     */
+    private DownloadSegment claim() {
+        if (result.isDone()) {
+            return null;
+        }
+        DownloadSegment segment = pending.peek();
+        if (segment != null && (window <= 0 || segment.getStart() < readableBytes() + window)) {
+            pending.poll();
+        } else {
+            segment = active.stream()
+                    .max(Comparator.comparingLong(DownloadSegment::remaining))
+                    .map(victim -> victim.split(bufferPool.getBufferSize()))
+                    .orElse(null);
+        }
+        if (segment != null) {
+            active.add(segment);
+        }
+        return segment;
+    }
+
+    private void finish() {
+        if (!pending.isEmpty() || result.isDone()) {
+            return;
+        }
+        mirrors.forEach(mirror -> logger.info("Downloaded {} bytes of {} from {}", mirror.bytes, task.getPath(),
+                                              mirror.uri));
+        result.complete(null);
+    }
+
+    private CompletableFuture<Void> fetch(Mirror mirror, DownloadSegment segment) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(mirror.uri)
+                .header(HttpHeaders.RANGE, "bytes=" + segment.getStart() + "-" + (segment.getEnd() - 1))
+                .GET()
+                .build();
+        int partialContent = HttpStatus.PARTIAL_CONTENT.value();
+        BodyHandler<Path> bodyHandler = responseInfo -> {
+            // A mirror which ignores the range sends the whole file, so its body is not read.
+            if (responseInfo.statusCode() != partialContent) {
+                return new CancellingSubscriber<>(task.getPath());
+            }
+            DownloadSubscriber subscriber = new DownloadSubscriber(task, segment, bufferPool, fsyncPolicy,
+                                                                   fsyncBatchSize);
+            synchronized (this) {
+                if (result.isCompletedExceptionally()) {
+                    return new CancellingSubscriber<>(task.getPath());
+                }
+                subscribers.put(segment, subscriber);
+            }
+            return subscriber;
+        };
+        return httpConnections.send(request, bodyHandler).thenAccept(response -> {
+            if (response.statusCode() != partialContent) {
+                throw new InvalidInputException("Unexpected response status: " + response.statusCode());
+            }
+            if (segment.getPosition() < segment.getEnd()) {
+                throw new IllegalStateException("Range " + segment + " stopped at " + segment.getPosition());
+            }
+        });
+    }
+
+    /**
+     * End of the written prefix of the file, every byte before the first unwritten byte of an active or pending range.
+     */
+    private long readableBytes() {
+        long readable = task.getStatus().getFile().getSize();
+        for (DownloadSegment segment : active) {
+            readable = Math.min(readable, segment.getPosition());
+        }
+        for (DownloadSegment segment : pending) {
+            readable = Math.min(readable, segment.getStart());
+        }
+        return readable;
+    }
+
+    private void updateProgress() {
+        long downloaded;
+        long readable;
+        synchronized (this) {
+            downloaded = finishedBytes.get();
+            for (DownloadSegment segment : active) {
+                downloaded += segment.getPosition() - segment.getStart();
+            }
+            readable = readableBytes();
+        }
+        DownloadStatus status = task.getStatus();
+        status.setDownloadedBytes(downloaded);
+        status.setReadableBytes(readable);
+        status.setProgressPercent((int) Math.min(99, downloaded * 100 / status.getFile().getSize()));
+        long nanos = System.nanoTime() - startNanos;
+        status.setNetworkBytesPerSecond(nanos <= 0 ? 0 : (long) (downloaded * 1e9 / nanos));
+        task.progressed();
+    }
+
+    /**
+     * Compute digest of the written file, which can not be done while ranges arrive out of order.
+     */
+    private void digest() {
+        MessageDigest digest = task.getDigest();
+        if (digest == null) {
+            return;
+        }
+        ByteBuffer buffer = bufferPool.acquire();
+        try (FileChannel channel = FileChannel.open(task.getPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                digest.update(buffer.flip());
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Reading " + task.getPath() + " failed.", e);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private static class Mirror {
+        private final URI uri;
+        private int failures;
+        private long bytes;
+
+        private Mirror(URI uri) {
+            this.uri = uri;
+        }
+    }
+}
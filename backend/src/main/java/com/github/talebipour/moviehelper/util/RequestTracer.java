@@ -0,0 +1,190 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.model.RequestTrace;
+import com.github.talebipour.moviehelper.model.TraceSpan;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Traces requests with spans around file system, network and process operations. A {@code tracing.sample.rate}
+ * fraction of requests is traced, and traced requests which take at least {@code tracing.slow.millis} are kept in a
+ * ring buffer of the last {@code tracing.buffer.size} ones.
+ * <p>
+ * Spans are opened by {@link #span(String, String)} on the request thread, or on threads of a {@link Volume} which
+ * run work of the request, and are no-ops when the request is not traced. Spans of the same name are aggregated, so
+ * a listing of a large directory does not keep a span per file.
+ */
+@Component
+public class RequestTracer {
+
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    private final double sampleRate;
+    private final long slowNanos;
+    private final int bufferSize;
+    private final Deque<RequestTrace> slowRequests = new ArrayDeque<>();
+
+    public RequestTracer(@Value("${tracing.sample.rate:0.1}") double sampleRate,
+                         @Value("${tracing.slow.millis:1000}") long slowMillis,
+                         @Value("${tracing.buffer.size:100}") int bufferSize) {
+        this.sampleRate = sampleRate;
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Start tracing a request on the current thread, unless it is not sampled.
+     *
+     * @return the trace, or null if the request is not traced
+     */
+    public Trace start(String method, String path) {
+        if (sampleRate <= 0 || sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return null;
+        }
+        Trace trace = new Trace(method, path);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Record the end of the request, slow ones are added to the ring buffer.
+     */
+    public void finish(Trace trace, int status) {
+        long duration = System.nanoTime() - trace.start;
+        if (duration < slowNanos) {
+            return;
+        }
+        RequestTrace finished = new RequestTrace();
+        finished.setMethod(trace.method);
+        finished.setPath(trace.path);
+        finished.setStatus(status);
+        finished.setStartTime(trace.startTime);
+        finished.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(duration));
+        finished.setSpans(trace.getSpans());
+        synchronized (slowRequests) {
+            slowRequests.addFirst(finished);
+            if (slowRequests.size() > bufferSize) {
+                slowRequests.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Slow requests, the latest first.
+     */
+    public List<RequestTrace> getSlowRequests() {
+        synchronized (slowRequests) {
+            return new ArrayList<>(slowRequests);
+        }
+    }
+
+    /**
+     * Trace of the current thread, or null.
+     */
+    public static Trace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Stop tracing on the current thread.
+     */
+    public static void detach() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Run the task on the current thread as part of the trace, e.g. on an executor which runs work of a request.
+     */
+    public static <T> T callWith(Trace trace, Supplier<T> task) {
+        Trace previous = CURRENT.get();
+        CURRENT.set(trace);
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Open a span of the current trace, which ends when it is closed.
+     *
+     * @param name kind of the operation, e.g. {@code fs.stat}
+     * @param detail what it works on, e.g. a path, only kept for the slowest span of the name
+     */
+    public static Span span(String name, Object detail) {
+        Trace trace = CURRENT.get();
+        return trace == null ? Span.NOOP : new Span(trace, name, detail);
+    }
+
+    /**
+     * Spans of a traced request so far.
+     */
+    public static class Trace {
+        private final String method;
+        private final String path;
+        private final long startTime = System.currentTimeMillis();
+        private final long start = System.nanoTime();
+        private final Map<String, TraceSpan> spans = new ConcurrentHashMap<>();
+
+        private Trace(String method, String path) {
+            this.method = method;
+            this.path = path;
+        }
+
+        private void record(String name, Object detail, long nanos) {
+            spans.compute(name, (key, span) -> {
+                TraceSpan stats = span == null ? new TraceSpan(name) : span;
+                stats.record(TimeUnit.NANOSECONDS.toMicros(nanos), String.valueOf(detail));
+                return stats;
+            });
+        }
+
+        private List<TraceSpan> getSpans() {
+            return spans.values().stream()
+                    .sorted(Comparator.comparingLong(TraceSpan::getTotalMicros).reversed())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * A timed operation of a trace. It may be closed on another thread than the one which opened it, e.g. when an
+     * asynchronous call completes.
+     */
+    public static class Span implements AutoCloseable {
+        private static final Span NOOP = new Span(null, null, null);
+
+        private final Trace trace;
+        private final String name;
+        private final Object detail;
+        private final long start;
+
+        private Span(Trace trace, String name, Object detail) {
+            this.trace = trace;
+            this.name = name;
+            this.detail = detail;
+            this.start = trace == null ? 0 : System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (trace != null) {
+                trace.record(name, detail, System.nanoTime() - start);
+            }
+        }
+    }
+}
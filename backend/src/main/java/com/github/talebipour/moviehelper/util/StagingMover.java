@@ -0,0 +1,190 @@
+package com.github.talebipour.moviehelper.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves finished downloads from the staging directory into the library. Downloads are written to
+ * {@code downloader.staging.path}, which should be on a fast disk, so they are not slowed down by random writes of
+ * a slow library disk. Finished files are then moved sequentially: a rename on the same filesystem, otherwise a copy
+ * by {@link FileChannel#transferTo} into a hidden file next to the target, which is linked into place once its size
+ * is verified, so listings never see a partial file. A file at the target name is never replaced, the file is linked at
+ * the next free name instead.
+ * <p>
+ * At most {@code downloader.staging.moves.per.volume} moves run at once into each target volume.
+ */
+@Component
+public class StagingMover {
+
+    private static final Logger logger = LoggerFactory.getLogger(StagingMover.class);
+
+    private static final String PARTIAL_PREFIX = ".moving-";
+
+    private final FileUtil fileUtil;
+    private final Path stagingDir;
+    private final Volume stagingVolume;
+    private final int movesPerVolume;
+    private final Map<Volume, ExecutorService> executors = new ConcurrentHashMap<>();
+
+    public StagingMover(FileUtil fileUtil,
+                        @Value("${downloader.staging.path:}") String stagingDir,
+                        @Value("${downloader.staging.moves.per.volume:1}") int movesPerVolume,
+                        @Value("${volume.io.threads:4}") int ioThreads,
+                        @Value("${volume.io.queue.capacity:100}") int ioQueueCapacity) throws IOException {
+        this.fileUtil = fileUtil;
+        this.stagingDir = stagingDir.isEmpty() ? null : Files.createDirectories(Paths.get(stagingDir));
+        this.stagingVolume = this.stagingDir == null ? null
+                : new Volume("staging", this.stagingDir, ioThreads, ioQueueCapacity);
+        this.movesPerVolume = movesPerVolume;
+    }
+
+    public boolean isEnabled() {
+        return stagingDir != null;
+    }
+
+    public Path getStagingDir() {
+        return stagingDir;
+    }
+
+    /**
+     * Volume of the staging directory, downloads are written on its executor.
+     */
+    public Volume getStagingVolume() {
+        return stagingVolume;
+    }
+
+    /**
+     * A new file of the staging directory for downloading the named file. It has the permissions of any new file, not
+     * the owner only ones of a temporary file, because it keeps them when it is renamed into the library.
+     */
+    public Path createStagingFile(String name) throws IOException {
+        return Files.createFile(stagingDir.resolve(".download-" + UUID.randomUUID() + "-" + name));
+    }
+
+    /**
+     * Move a staged file into the directory, a number is appended to the name if the target exists.
+     *
+     * @return future of the moved file
+     */
+    public CompletableFuture<Path> move(Path source, Path directory, String name) {
+        Volume volume = fileUtil.getVolume(directory);
+        ExecutorService executor = executors.computeIfAbsent(volume,
+                                                             key -> Executors.newFixedThreadPool(movesPerVolume));
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return moveNow(source, directory, name);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private Path moveNow(Path source, Path directory, String name) throws IOException {
+        long start = System.currentTimeMillis();
+        long size = Files.size(source);
+        Path target;
+        FileStore sourceStore = Files.getFileStore(source);
+        if (sourceStore.equals(Files.getFileStore(directory))) {
+            target = moveToUniquePath(source, directory, name);
+        } else {
+            Path partial = directory.resolve(PARTIAL_PREFIX + UUID.randomUUID() + "-" + name);
+            try {
+                copy(source, partial);
+                long copied = Files.size(partial);
+                if (copied != size) {
+                    throw new IOException("Copied " + copied + " bytes of " + source + " but expected " + size);
+                }
+                target = moveToUniquePath(partial, directory, name);
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+            Files.delete(source);
+        }
+        logger.info("Moved {} bytes from {} to {} in {} ms.", size, source, target,
+                    System.currentTimeMillis() - start);
+        return target;
+    }
+
+    /**
+     * Move the file into the directory, a number is appended to the name if the target exists.
+     */
+    private static Path moveToUniquePath(Path file, Path directory, String name) throws IOException {
+        for (int i = 1; ; i++) {
+            Path path = directory.resolve(i == 1 ? name : name + "." + i);
+            try {
+                moveNoReplace(file, path);
+                return path;
+            } catch (FileAlreadyExistsException e) {
+                // The name is taken, maybe by a file which is created since it was checked.
+            }
+        }
+    }
+
+    /**
+     * Move the file unless the target exists. A hard link is created and the file is removed, so a target which is
+     * created concurrently is never replaced. Without hard links, e.g. on FAT, the file is renamed if the target does
+     * not exist.
+     *
+     * @throws FileAlreadyExistsException if the target exists
+     */
+    private static void moveNoReplace(Path file, Path target) throws IOException {
+        try {
+            Files.createLink(target, file);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.debug("Can not link {} to {}, renaming it: {}", file, target, e.toString());
+            Files.move(file, target);
+            return;
+        }
+        Files.delete(file);
+    }
+
+    /**
+     * Copy the file with {@link FileChannel#transferTo}, so the kernel copies it without user space buffers, and
+     * force it to disk.
+     */
+    static void copy(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    // The source is truncated, the size check fails.
+                    break;
+                }
+                position += transferred;
+            }
+            out.force(true);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(ExecutorService::shutdown);
+        if (stagingVolume != null) {
+            stagingVolume.shutdown();
+        }
+    }
+}
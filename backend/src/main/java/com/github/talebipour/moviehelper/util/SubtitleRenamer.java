@@ -0,0 +1,102 @@
+package com.github.talebipour.moviehelper.util;
+
+import static com.github.talebipour.moviehelper.util.FileOperationEngine.checkCompleted;
+
+import com.github.talebipour.moviehelper.exception.InternalServerError;
+import com.github.talebipour.moviehelper.model.FileOperation;
+import com.github.talebipour.moviehelper.util.FileOperationEngine.FailurePolicy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sets subtitles of movies by renaming them to the movie name with srt extension. An existing subtitle of the movie
+ * is kept as a backup, i.e. {@code movie.srt.1}, {@code movie.srt.2}, ... Renamed subtitles are interned into the
+ * {@link SubtitleStore}.
+ */
+@Component
+public class SubtitleRenamer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubtitleRenamer.class);
+
+    private final FileUtil fileUtil;
+    private final FileOperationEngine fileOperationEngine;
+    private final SubtitleStore subtitleStore;
+
+    public SubtitleRenamer(FileUtil fileUtil, FileOperationEngine fileOperationEngine, SubtitleStore subtitleStore) {
+        this.fileUtil = fileUtil;
+        this.fileOperationEngine = fileOperationEngine;
+        this.subtitleStore = subtitleStore;
+    }
+
+    /**
+     * Rename the subtitle to the movie name, the renames are rolled back if one of them fails.
+     *
+     * @throws InternalServerError if the renames failed
+     */
+    public void setSubtitle(Path subtitlePath, Path moviePath) {
+        List<FileOperation> plan = plan(subtitlePath, moviePath, new HashSet<>());
+        if (!plan.isEmpty()) {
+            checkCompleted(fileOperationEngine.execute(plan, FailurePolicy.ROLL_BACK));
+            intern(plan);
+        }
+    }
+
+    /**
+     * Plan renaming the subtitle to the movie name with srt extension. If the target exists, it is moved to the first
+     * free backup name.
+     *
+     * @param reserved targets of the plans which run before this one, they are taken as existing and the targets of
+     *                 this plan are added to them, so plans of one batch do not choose the same backup name
+     * @return an empty plan if the subtitle is already named after the movie
+     */
+    public List<FileOperation> plan(Path subtitlePath, Path moviePath, Set<Path> reserved) {
+        Path target = subtitleOf(moviePath);
+        if (target.equals(subtitlePath)) {
+            return List.of();
+        }
+        List<FileOperation> plan = new ArrayList<>();
+        if (reserved.contains(target) || Files.exists(target)) {
+            Path backupFile;
+            int i = 1;
+            do {
+                backupFile = target.resolveSibling(target.getFileName() + "." + i);
+                i++;
+            } while (reserved.contains(backupFile) || Files.exists(backupFile));
+            logger.info("Take backup from {} file to {}", target, backupFile);
+            plan.add(FileOperation.move(fileUtil.relativize(target), fileUtil.relativize(backupFile)));
+            reserved.add(backupFile);
+        }
+        plan.add(FileOperation.move(fileUtil.relativize(subtitlePath), fileUtil.relativize(target)));
+        reserved.add(target);
+        return plan;
+    }
+
+    /**
+     * The subtitle file of the movie, which is named after it.
+     */
+    public static Path subtitleOf(Path moviePath) {
+        return moviePath.resolveSibling(FileUtil.filenameWithoutExtension(moviePath.getFileName().toString()) + ".srt");
+    }
+
+    /**
+     * Link moved subtitles and their backups into the subtitle store, so identical ones share their data.
+     */
+    public void intern(List<FileOperation> plan) {
+        for (FileOperation operation : plan) {
+            Path target = fileUtil.resolvePath(operation.getTarget());
+            try {
+                subtitleStore.intern(target);
+            } catch (IOException e) {
+                logger.warn("Adding {} to the subtitle store failed: {}", target, e.toString());
+            }
+        }
+    }
+}
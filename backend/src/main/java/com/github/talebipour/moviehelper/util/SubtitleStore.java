@@ -0,0 +1,278 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.model.GarbageCollectionReport;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Content addressed store of subtitle files. Each distinct content is kept once as a blob named by its SHA-256 digest,
+ * subtitle files in the media directory are hard links to the blobs, so identical subtitles and backups share their
+ * data. Only subtitles on the {@link FileStore} of the store are linked, others are written as plain files and no blob
+ * is written for them.
+ * <p>
+ * Subtitles are never written in place, a new file is renamed over the old one, so a linked subtitle is copied on
+ * write and the blob and other links keep their content. A blob which is not linked from anywhere else is orphaned and
+ * removed by {@link #collectGarbage()}. A subtitle which is edited in place by another tool changes the blob too, so
+ * blobs are compared with the content before they are linked again.
+ * <p>
+ * Contents are read into buffers of {@link BufferPool}, only files larger than a buffer are read into the heap.
+ */
+@Component
+public class SubtitleStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubtitleStore.class);
+
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    private final BufferPool bufferPool;
+    private final Path storeDir;
+    private FileStore fileStore;
+
+    public SubtitleStore(BufferPool bufferPool,
+                         @Value("${subtitle.store.path:${state.directory.path}/subtitles}") String storePath) {
+        this.bufferPool = bufferPool;
+        this.storeDir = Paths.get(storePath);
+    }
+
+    /**
+     * Write the content to the target, unless the target already has the same content.
+     *
+     * @return false if the target is unchanged
+     */
+    public synchronized boolean write(Path target, ByteBuffer content) throws IOException {
+        if (Files.isRegularFile(target) && matches(target, content)) {
+            return false;
+        }
+        if (!isLinkable(target) || !replaceWithLink(target, blob(content))) {
+            replaceWithCopy(target, content);
+        }
+        return true;
+    }
+
+    /**
+     * Add an existing subtitle file to the store. If its content is stored already, the file is replaced by a link to
+     * the blob, otherwise the file becomes the blob.
+     */
+    public synchronized void intern(Path file) throws IOException {
+        if (!isLinkable(file)) {
+            return;
+        }
+        ByteBuffer buffer = bufferPool.acquire();
+        Path blob;
+        try {
+            ByteBuffer content = read(file, buffer);
+            blob = blobPath(digest(content));
+            if (Files.exists(blob) && !matches(blob, content)) {
+                logger.warn("Blob {} was modified through one of its links, removing it.", blob);
+                Files.delete(blob);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        if (!Files.exists(blob)) {
+            Files.createDirectories(blob.getParent());
+            try {
+                Files.createLink(blob, file);
+            } catch (FileAlreadyExistsException e) {
+                // Interned concurrently.
+            } catch (IOException | UnsupportedOperationException e) {
+                logger.debug("Can not link {} into the store: {}", file, e.toString());
+            }
+            return;
+        }
+        if (!Files.isSameFile(blob, file)) {
+            replaceWithLink(file, blob);
+        }
+    }
+
+    /**
+     * Remove blobs which have no other link and blobs whose content does not match their name anymore.
+     */
+    public synchronized GarbageCollectionReport collectGarbage() throws IOException {
+        GarbageCollectionReport report = new GarbageCollectionReport();
+        if (!Files.isDirectory(storeDir)) {
+            return report;
+        }
+        Files.walkFileTree(storeDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                report.setBlobs(report.getBlobs() + 1);
+                if (isGarbage(file)) {
+                    Files.deleteIfExists(file);
+                    report.setDeletedBlobs(report.getDeletedBlobs() + 1);
+                    report.setFreedBytes(report.getFreedBytes() + attributes.size());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        logger.info("Subtitle store garbage collection deleted {} of {} blobs, {} bytes.",
+                    report.getDeletedBlobs(), report.getBlobs(), report.getFreedBytes());
+        return report;
+    }
+
+    private boolean isGarbage(Path file) throws IOException {
+        if (file.getFileName().toString().startsWith(TEMP_PREFIX)) {
+            return true;
+        }
+        int links;
+        try {
+            links = (Integer) Files.getAttribute(file, "unix:nlink");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // Without link counts nothing is known to be orphaned.
+            return false;
+        }
+        if (links <= 1) {
+            return true;
+        }
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            return !file.getFileName().toString().equals(digest(read(file, buffer)));
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Return the blob of the content, writing it if it is not stored yet.
+     */
+    private Path blob(ByteBuffer content) throws IOException {
+        Path blob = blobPath(digest(content));
+        if (Files.exists(blob)) {
+            if (matches(blob, content)) {
+                return blob;
+            }
+            logger.warn("Blob {} was modified through one of its links, replacing it.", blob);
+        }
+        Files.createDirectories(blob.getParent());
+        Path temp = storeDir.resolve(TEMP_PREFIX + UUID.randomUUID());
+        try {
+            write(temp, content, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+            Files.move(temp, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return blob;
+    }
+
+    /**
+     * Whether the file is on the same file store as the blobs, so it can be linked to them.
+     */
+    private boolean isLinkable(Path file) throws IOException {
+        if (fileStore == null) {
+            fileStore = Files.getFileStore(Files.createDirectories(storeDir));
+        }
+        return fileStore.equals(Files.getFileStore(file.toAbsolutePath().getParent()));
+    }
+
+    /**
+     * Atomically replace the target by a new file with the content, a file which is linked elsewhere is left intact.
+     */
+    private static void replaceWithCopy(Path target, ByteBuffer content) throws IOException {
+        Path temp = target.resolveSibling(TEMP_PREFIX + target.getFileName());
+        Files.deleteIfExists(temp);
+        try {
+            write(temp, content, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Atomically replace the target by a hard link to the blob.
+     *
+     * @return false if the blob can not be linked at the target, e.g. it is on another volume
+     */
+    private boolean replaceWithLink(Path target, Path blob) throws IOException {
+        Path temp = target.resolveSibling(TEMP_PREFIX + target.getFileName());
+        Files.deleteIfExists(temp);
+        try {
+            Files.createLink(temp, blob);
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.debug("Can not link {} to {}: {}", target, blob, e.toString());
+            return false;
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return true;
+    }
+
+    private boolean matches(Path file, ByteBuffer content) throws IOException {
+        if (Files.size(file) != content.remaining()) {
+            return false;
+        }
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            return read(file, buffer).equals(content);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Read the whole file into the buffer, or into a new heap buffer if it does not fit.
+     *
+     * @return the flipped buffer which holds the content
+     */
+    private static ByteBuffer read(Path file, ByteBuffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > buffer.capacity()) {
+                buffer = ByteBuffer.allocate((int) channel.size());
+            }
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            return buffer.flip();
+        }
+    }
+
+    private static void write(Path file, ByteBuffer content, StandardOpenOption... options) throws IOException {
+        ByteBuffer data = content.duplicate();
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    /**
+     * Blobs are spread over directories by the first two digits of their digest.
+     */
+    private Path blobPath(String digest) {
+        return storeDir.resolve(digest.substring(0, 2)).resolve(digest);
+    }
+
+    private static String digest(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content.duplicate());
+            return DownloadTask.toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
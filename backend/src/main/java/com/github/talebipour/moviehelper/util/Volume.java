@@ -0,0 +1,138 @@
+package com.github.talebipour.moviehelper.util;
+
+import com.github.talebipour.moviehelper.exception.ServiceUnavailableException;
+import com.github.talebipour.moviehelper.model.VolumeIoStatistics;
+import com.github.talebipour.moviehelper.util.RequestTracer.Trace;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named root directory with its own bounded I/O executor, so a slow disk only queues work of its own volume. Requests
+ * are rejected with {@link ServiceUnavailableException} when the queue is full, so they do not pile up behind a stalled
+ * disk. Writes of downloads and file operations which find the queue full run on the calling thread instead.
+ */
+public class Volume {
+
+    private static final ThreadLocal<Volume> CURRENT = new ThreadLocal<>();
+
+    private final String name;
+    private final Path root;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    Volume(String name, Path root, int threads, int queueCapacity) {
+        this.name = name;
+        this.root = root;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<>(queueCapacity), this::newThread,
+                                               new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(() -> {
+            CURRENT.set(this);
+            runnable.run();
+        }, "volume-" + (name.isEmpty() ? "default" : name) + "-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Name of the volume, which is the first segment of its paths, or empty for the default root directory.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Executor of the volume, e.g. for asynchronous file channels.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Run the task on the volume executor and wait for it. Tasks of the volume's own threads are run directly.
+     *
+     * @throws ServiceUnavailableException if the queue of the volume is full
+     */
+    public <T> T call(IoTask<T> task) throws IOException {
+        if (CURRENT.get() == this) {
+            return task.run();
+        }
+        try {
+            return submit(task).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Queue the task on the volume executor, spans which it opens belong to the trace of the caller.
+     *
+     * @throws ServiceUnavailableException if the queue of the volume is full
+     */
+    public <T> CompletableFuture<T> submit(IoTask<T> task) {
+        if (executor.getQueue().remainingCapacity() == 0) {
+            rejected.incrementAndGet();
+            throw new ServiceUnavailableException("Volume " + name + " is busy.");
+        }
+        Trace trace = RequestTracer.current();
+        return CompletableFuture.supplyAsync(() -> RequestTracer.callWith(trace, () -> {
+            try {
+                return task.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), executor);
+    }
+
+    public VolumeIoStatistics getStatistics() {
+        VolumeIoStatistics statistics = new VolumeIoStatistics();
+        statistics.setName(name);
+        statistics.setRoot(root.toString());
+        statistics.setThreads(executor.getMaximumPoolSize());
+        statistics.setActive(executor.getActiveCount());
+        statistics.setQueued(executor.getQueue().size());
+        statistics.setCompleted(executor.getCompletedTaskCount());
+        statistics.setRejected(rejected.get());
+        return statistics;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return name.isEmpty() ? root.toString() : name + "=" + root;
+    }
+
+    /**
+     * Blocking I/O work of a volume.
+     */
+    public interface IoTask<T> {
+        T run() throws IOException;
+    }
+}
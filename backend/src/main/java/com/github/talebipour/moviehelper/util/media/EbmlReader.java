@@ -0,0 +1,159 @@
+package com.github.talebipour.moviehelper.util.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads EBML elements, the binary format of Matroska, with positional reads. Only element headers are read from the
+ * file unless the caller asks for the data of an element, so large elements are skipped without any I/O.
+ */
+class EbmlReader {
+
+    static final long UNKNOWN_SIZE = -1;
+
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(12);
+
+    EbmlReader(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Read header of the element at the given position.
+     *
+     * @return the element or null at end of file
+     */
+    Element element(long position) throws IOException {
+        header.clear();
+        MediaChannels.read(channel, header, position);
+        header.flip();
+        if (header.remaining() < 2) {
+            return null;
+        }
+        long id = readId(header);
+        long size = readSize(header);
+        return new Element(id, position + header.position(), size);
+    }
+
+    /**
+     * Read data of an element, at most {@code maxLength} bytes.
+     */
+    ByteBuffer data(Element element, int maxLength) throws IOException {
+        int length = element.size == UNKNOWN_SIZE ? maxLength : (int) Math.min(element.size, maxLength);
+        return read(element.dataPosition, length);
+    }
+
+    ByteBuffer read(long position, int length) throws IOException {
+        return read(position, length, null);
+    }
+
+    /**
+     * Read into the given buffer if it is large enough, so a caller which reads many elements reuses one buffer.
+     */
+    ByteBuffer read(long position, int length, ByteBuffer buffer) throws IOException {
+        if (buffer == null || buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(length);
+        }
+        buffer.clear().limit(length);
+        MediaChannels.read(channel, buffer, position);
+        return buffer.flip();
+    }
+
+    static long readId(ByteBuffer buffer) throws IOException {
+        int first = buffer.get() & 0xff;
+        int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (length < 1 || length > 4) {
+            throw new IOException("Invalid EBML element id.");
+        }
+        long id = first;
+        for (int i = 1; i < length; i++) {
+            id = (id << 8) | (buffer.get() & 0xff);
+        }
+        return id;
+    }
+
+    /**
+     * Read a variable size integer without its length marker.
+     *
+     * @return the value or {@link #UNKNOWN_SIZE} if all value bits are set
+     */
+    static long readSize(ByteBuffer buffer) throws IOException {
+        int first = buffer.get() & 0xff;
+        int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (length < 1 || length > 8) {
+            throw new IOException("Invalid EBML size.");
+        }
+        long value = first & (0xff >> length);
+        for (int i = 1; i < length; i++) {
+            value = (value << 8) | (buffer.get() & 0xff);
+        }
+        return value == (1L << (7 * length)) - 1 ? UNKNOWN_SIZE : value;
+    }
+
+    static long readUnsigned(ByteBuffer data) {
+        long value = 0;
+        while (data.hasRemaining()) {
+            value = (value << 8) | (data.get() & 0xff);
+        }
+        return value;
+    }
+
+    static double readFloat(ByteBuffer data) {
+        if (data.remaining() == 4) {
+            return data.getFloat();
+        }
+        return data.remaining() == 8 ? data.getDouble() : 0;
+    }
+
+    static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == 0) {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Call the handler for every child element in the data of a master element which is already read.
+     */
+    static void children(ByteBuffer data, ChildHandler handler) throws IOException {
+        while (data.remaining() >= 2) {
+            long id = readId(data);
+            long size = readSize(data);
+            if (size == UNKNOWN_SIZE || size > data.remaining()) {
+                return;
+            }
+            ByteBuffer child = data.slice().limit((int) size);
+            data.position(data.position() + (int) size);
+            handler.accept(id, child);
+        }
+    }
+
+    interface ChildHandler {
+        void accept(long id, ByteBuffer data) throws IOException;
+    }
+
+    static class Element {
+        final long id;
+        final long dataPosition;
+        final long size;
+
+        Element(long id, long dataPosition, long size) {
+            this.id = id;
+            this.dataPosition = dataPosition;
+            this.size = size;
+        }
+
+        long end() {
+            return size == UNKNOWN_SIZE ? Long.MAX_VALUE : dataPosition + size;
+        }
+    }
+}
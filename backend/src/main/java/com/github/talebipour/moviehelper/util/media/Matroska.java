@@ -0,0 +1,54 @@
+package com.github.talebipour.moviehelper.util.media;
+
+/**
+ * Matroska element ids which are used by this package.
+ */
+class Matroska {
+
+    static final long EBML = 0x1A45DFA3L;
+    static final long SEGMENT = 0x18538067L;
+    static final long SEEK_HEAD = 0x114D9B74L;
+    static final long SEEK = 0x4DBB;
+    static final long SEEK_ID = 0x53AB;
+    static final long SEEK_POSITION = 0x53AC;
+    static final long INFO = 0x1549A966L;
+    static final long TIMECODE_SCALE = 0x2AD7B1;
+    static final long DURATION = 0x4489;
+    static final long TRACKS = 0x1654AE6BL;
+    static final long TRACK_ENTRY = 0xAE;
+    static final long TRACK_NUMBER = 0xD7;
+    static final long TRACK_TYPE = 0x83;
+    static final long CODEC_ID = 0x86;
+    static final long LANGUAGE = 0x22B59C;
+    static final long LANGUAGE_BCP47 = 0x22B59D;
+    static final long NAME = 0x536E;
+    static final long VIDEO = 0xE0;
+    static final long PIXEL_WIDTH = 0xB0;
+    static final long PIXEL_HEIGHT = 0xBA;
+    static final long CONTENT_ENCODINGS = 0x6D80;
+    static final long CONTENT_ENCODING = 0x6240;
+    static final long CONTENT_COMPRESSION = 0x5034;
+    static final long CONTENT_COMP_ALGO = 0x4254;
+    static final long CONTENT_COMP_SETTINGS = 0x4255;
+    static final long CONTENT_ENCRYPTION = 0x5035;
+    static final long CLUSTER = 0x1F43B675L;
+    static final long TIMECODE = 0xE7;
+    static final long SIMPLE_BLOCK = 0xA3;
+    static final long BLOCK_GROUP = 0xA0;
+    static final long BLOCK = 0xA1;
+    static final long BLOCK_DURATION = 0x9B;
+    static final long CUES = 0x1C53BB6BL;
+    static final long CHAPTERS = 0x1043A770L;
+    static final long TAGS = 0x1254C367L;
+    static final long ATTACHMENTS = 0x1941A469L;
+
+    static final long DEFAULT_TIMECODE_SCALE = 1_000_000;
+    static final int TRACK_TYPE_VIDEO = 1;
+    static final int TRACK_TYPE_AUDIO = 2;
+    static final int TRACK_TYPE_SUBTITLE = 0x11;
+    static final int COMPRESSION_ZLIB = 0;
+    static final int COMPRESSION_HEADER_STRIPPING = 3;
+
+    private Matroska() {
+    }
+}
@@ -0,0 +1,244 @@
+package com.github.talebipour.moviehelper.util.media;
+
+import static com.github.talebipour.moviehelper.util.media.Matroska.*;
+
+import com.github.talebipour.moviehelper.model.MediaMetadata;
+import com.github.talebipour.moviehelper.model.MediaMetadata.Container;
+import com.github.talebipour.moviehelper.model.MediaMetadata.Track;
+import com.github.talebipour.moviehelper.model.MediaMetadata.TrackType;
+import com.github.talebipour.moviehelper.util.media.EbmlReader.Element;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads Info and Tracks elements of a Matroska segment. Top level elements before the first Cluster are walked by
+ * their headers; Info or Tracks which are written after the media data are found through the SeekHead.
+ */
+class MatroskaMetadataReader {
+
+    /**
+     * Upper bound of a top level element which is read into memory, Tracks with large codec private data are cut.
+     */
+    private static final int MAX_ELEMENT_SIZE = 1024 * 1024;
+
+    private final EbmlReader reader;
+    private final MediaMetadata metadata = new MediaMetadata(Container.MATROSKA);
+    private final Map<Long, Long> seekPositions = new HashMap<>();
+    private final Map<Long, ContentCompression> compressions = new HashMap<>();
+    private long timecodeScale = DEFAULT_TIMECODE_SCALE;
+    private long clustersPosition = -1;
+    private long segmentEnd;
+    private boolean infoRead;
+    private boolean tracksRead;
+
+    MatroskaMetadataReader(EbmlReader reader) {
+        this.reader = reader;
+    }
+
+    MediaMetadata read() throws IOException {
+        Element segment = segment(reader);
+        segmentEnd = Math.min(segment.end(), reader.size());
+        long position = segment.dataPosition;
+        while (!(infoRead && tracksRead) && position < segmentEnd) {
+            Element element = reader.element(position);
+            if (element == null || element.id == CLUSTER || element.size == EbmlReader.UNKNOWN_SIZE) {
+                clustersPosition = position;
+                break;
+            }
+            readTopLevel(element);
+            position = element.end();
+        }
+        for (long id : new long[]{INFO, TRACKS}) {
+            Long seekPosition = seekPositions.get(id);
+            if (seekPosition != null && !(id == INFO ? infoRead : tracksRead)) {
+                Element element = reader.element(segment.dataPosition + seekPosition);
+                if (element != null && element.id == id) {
+                    readTopLevel(element);
+                }
+            }
+        }
+        if (!tracksRead) {
+            throw new IOException("Tracks element not found.");
+        }
+        if (clustersPosition < 0) {
+            clustersPosition = position;
+        }
+        return metadata;
+    }
+
+    long getTimecodeScale() {
+        return timecodeScale;
+    }
+
+    /**
+     * Position where walking the segment stopped, no Cluster comes before it.
+     */
+    long getClustersPosition() {
+        return clustersPosition;
+    }
+
+    long getSegmentEnd() {
+        return segmentEnd;
+    }
+
+    /**
+     * Compression of the frames of a track or null if they are stored as is.
+     */
+    ContentCompression getCompression(long trackNumber) {
+        return compressions.get(trackNumber);
+    }
+
+    /**
+     * Check the EBML header and return the Segment element which follows it.
+     */
+    static Element segment(EbmlReader reader) throws IOException {
+        Element ebml = reader.element(0);
+        if (ebml == null || ebml.id != EBML) {
+            throw new IOException("Not an EBML file.");
+        }
+        Element segment = reader.element(ebml.end());
+        if (segment == null || segment.id != SEGMENT) {
+            throw new IOException("Segment element not found.");
+        }
+        return segment;
+    }
+
+    private void readTopLevel(Element element) throws IOException {
+        if (element.id == SEEK_HEAD) {
+            EbmlReader.children(reader.data(element, MAX_ELEMENT_SIZE), this::readSeekHead);
+        } else if (element.id == INFO) {
+            readInfo(reader.data(element, MAX_ELEMENT_SIZE));
+            infoRead = true;
+        } else if (element.id == TRACKS) {
+            EbmlReader.children(reader.data(element, MAX_ELEMENT_SIZE), (id, data) -> {
+                if (id == TRACK_ENTRY) {
+                    readTrack(data);
+                }
+            });
+            tracksRead = true;
+        }
+    }
+
+    private void readSeekHead(long id, ByteBuffer data) throws IOException {
+        if (id != SEEK) {
+            return;
+        }
+        long[] seek = new long[]{-1, -1};
+        EbmlReader.children(data, (childId, childData) -> {
+            if (childId == SEEK_ID) {
+                seek[0] = EbmlReader.readUnsigned(childData);
+            } else if (childId == SEEK_POSITION) {
+                seek[1] = EbmlReader.readUnsigned(childData);
+            }
+        });
+        if (seek[0] >= 0 && seek[1] >= 0) {
+            seekPositions.putIfAbsent(seek[0], seek[1]);
+        }
+    }
+
+    private void readInfo(ByteBuffer data) throws IOException {
+        double[] duration = new double[1];
+        EbmlReader.children(data, (id, childData) -> {
+            if (id == TIMECODE_SCALE) {
+                timecodeScale = EbmlReader.readUnsigned(childData);
+            } else if (id == DURATION) {
+                duration[0] = EbmlReader.readFloat(childData);
+            }
+        });
+        metadata.setDurationSeconds(duration[0] * timecodeScale / 1e9);
+    }
+
+    private void readTrack(ByteBuffer data) throws IOException {
+        Track track = new Track();
+        // Language element is omitted when it has the default value.
+        track.setLanguage("eng");
+        boolean[] bcp47 = new boolean[1];
+        ContentCompression[] compression = new ContentCompression[1];
+        EbmlReader.children(data, (id, childData) -> {
+            if (id == TRACK_NUMBER) {
+                track.setNumber(EbmlReader.readUnsigned(childData));
+            } else if (id == TRACK_TYPE) {
+                track.setType(trackType((int) EbmlReader.readUnsigned(childData)));
+            } else if (id == CODEC_ID) {
+                track.setCodec(EbmlReader.readString(childData));
+            } else if (id == LANGUAGE && !bcp47[0]) {
+                track.setLanguage(EbmlReader.readString(childData));
+            } else if (id == LANGUAGE_BCP47) {
+                track.setLanguage(EbmlReader.readString(childData));
+                bcp47[0] = true;
+            } else if (id == NAME) {
+                track.setName(EbmlReader.readString(childData));
+            } else if (id == VIDEO) {
+                readVideo(childData);
+            } else if (id == CONTENT_ENCODINGS) {
+                compression[0] = readContentEncodings(childData);
+            }
+        });
+        if (compression[0] != null) {
+            compressions.put(track.getNumber(), compression[0]);
+        }
+        metadata.getTracks().add(track);
+    }
+
+    private static ContentCompression readContentEncodings(ByteBuffer data) throws IOException {
+        ContentCompression compression = new ContentCompression();
+        EbmlReader.children(data, (id, encoding) -> {
+            if (id != CONTENT_ENCODING) {
+                return;
+            }
+            EbmlReader.children(encoding, (childId, childData) -> {
+                if (childId == CONTENT_ENCRYPTION) {
+                    compression.encrypted = true;
+                } else if (childId == CONTENT_COMPRESSION) {
+                    compression.present = true;
+                    EbmlReader.children(childData, (settingId, settingData) -> {
+                        if (settingId == CONTENT_COMP_ALGO) {
+                            compression.algorithm = (int) EbmlReader.readUnsigned(settingData);
+                        } else if (settingId == CONTENT_COMP_SETTINGS) {
+                            compression.settings = new byte[settingData.remaining()];
+                            settingData.get(compression.settings);
+                        }
+                    });
+                }
+            });
+        });
+        return compression.present || compression.encrypted ? compression : null;
+    }
+
+    private void readVideo(ByteBuffer data) throws IOException {
+        int[] size = new int[2];
+        EbmlReader.children(data, (id, childData) -> {
+            if (id == PIXEL_WIDTH) {
+                size[0] = (int) EbmlReader.readUnsigned(childData);
+            } else if (id == PIXEL_HEIGHT) {
+                size[1] = (int) EbmlReader.readUnsigned(childData);
+            }
+        });
+        if (metadata.getWidth() == 0) {
+            metadata.setWidth(size[0]);
+            metadata.setHeight(size[1]);
+        }
+    }
+
+    private static TrackType trackType(int type) {
+        switch (type) {
+            case TRACK_TYPE_VIDEO:
+                return TrackType.VIDEO;
+            case TRACK_TYPE_AUDIO:
+                return TrackType.AUDIO;
+            case TRACK_TYPE_SUBTITLE:
+                return TrackType.SUBTITLE;
+            default:
+                return TrackType.OTHER;
+        }
+    }
+
+    static class ContentCompression {
+        private boolean present;
+        int algorithm = COMPRESSION_ZLIB;
+        byte[] settings = new byte[0];
+        boolean encrypted;
+    }
+}
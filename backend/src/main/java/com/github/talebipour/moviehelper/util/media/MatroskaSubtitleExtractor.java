@@ -0,0 +1,317 @@
+package com.github.talebipour.moviehelper.util.media;
+
+import static com.github.talebipour.moviehelper.util.media.Matroska.*;
+
+import com.github.talebipour.moviehelper.exception.InvalidInputException;
+import com.github.talebipour.moviehelper.model.Job;
+import com.github.talebipour.moviehelper.model.MediaMetadata;
+import com.github.talebipour.moviehelper.model.MediaMetadata.Track;
+import com.github.talebipour.moviehelper.model.MediaMetadata.TrackType;
+import com.github.talebipour.moviehelper.util.BufferPool;
+import com.github.talebipour.moviehelper.util.media.EbmlReader.Element;
+import com.github.talebipour.moviehelper.util.media.MatroskaMetadataReader.ContentCompression;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Extracts a text subtitle track of a Matroska file into SRT format. Clusters are read in one sequential pass, only
+ * headers of video and audio blocks are read and their data is skipped, so memory use does not depend on file size.
+ * Frames are read into a buffer of {@link BufferPool} and block headers into one small buffer, so blocks are read
+ * without allocations.
+ */
+@Component
+public class MatroskaSubtitleExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatroskaSubtitleExtractor.class);
+
+    private static final String CODEC_SRT = "S_TEXT/UTF8";
+    private static final Set<String> CODECS_ASS = Set.of("S_TEXT/ASS", "S_TEXT/SSA", "S_ASS", "S_SSA");
+    private static final Set<Long> LEVEL_1_IDS = Set.of(CLUSTER, CUES, CHAPTERS, TAGS, ATTACHMENTS, SEEK_HEAD, INFO,
+                                                        TRACKS);
+    private static final Pattern ASS_OVERRIDE_PATTERN = Pattern.compile("\\{[^}]*}");
+    /**
+     * Upper bound of one subtitle frame, larger frames are not text and are skipped.
+     */
+    private static final int MAX_FRAME_SIZE = 256 * 1024;
+    /**
+     * Duration of a cue which is stored in a SimpleBlock without duration.
+     */
+    private static final long DEFAULT_DURATION_MILLIS = 3000;
+    /**
+     * Track number, timecode and flags of a block.
+     */
+    private static final int MAX_BLOCK_HEADER_SIZE = 11;
+
+    private final BufferPool bufferPool;
+
+    public MatroskaSubtitleExtractor(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Write the subtitle track to the output file in SRT format.
+     *
+     * @param trackNumber Matroska track number or null for the first text subtitle track
+     * @return number of written cues
+     * @throws InvalidInputException if the file has no such text subtitle track
+     */
+    public int extract(Path movie, Long trackNumber, Path output) throws IOException {
+        return extract(movie, trackNumber, output, null);
+    }
+
+    /**
+     * Extract as part of a job, progress of the job is the read position in the file and it can be cancelled between
+     * clusters.
+     */
+    public int extract(Path movie, Long trackNumber, Path output, Job job) throws IOException {
+        long start = System.currentTimeMillis();
+        ByteBuffer frameBuffer = bufferPool.acquire();
+        try (FileChannel channel = FileChannel.open(movie, StandardOpenOption.READ);
+             Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            EbmlReader reader = new EbmlReader(channel);
+            MatroskaMetadataReader metadataReader = new MatroskaMetadataReader(reader);
+            MediaMetadata metadata;
+            try {
+                metadata = metadataReader.read();
+            } catch (IOException e) {
+                throw new InvalidInputException("Not a Matroska file: " + e.getMessage());
+            }
+            Track track = findTrack(metadata, trackNumber)
+                    .orElseThrow(() -> new InvalidInputException("No text subtitle track found."));
+            ContentCompression compression = metadataReader.getCompression(track.getNumber());
+            if (!isSupported(compression)) {
+                throw new InvalidInputException("Unsupported content encoding of track " + track.getNumber());
+            }
+            Extraction extraction = new Extraction(reader, track, compression, metadataReader.getTimecodeScale(),
+                                                   writer, job, frameBuffer);
+            try {
+                extraction.run(metadataReader.getClustersPosition(), metadataReader.getSegmentEnd());
+            } finally {
+                extraction.close();
+            }
+            logger.info("Extracted {} cues of track {} from {} in {} ms.", extraction.cues, track.getNumber(), movie,
+                        System.currentTimeMillis() - start);
+            return extraction.cues;
+        } finally {
+            bufferPool.release(frameBuffer);
+        }
+    }
+
+    private static boolean isSupported(ContentCompression compression) {
+        if (compression == null) {
+            return true;
+        }
+        return !compression.encrypted && (compression.algorithm == COMPRESSION_ZLIB
+                                          || compression.algorithm == COMPRESSION_HEADER_STRIPPING);
+    }
+
+    private static Optional<Track> findTrack(MediaMetadata metadata, Long trackNumber) {
+        return metadata.getTracks().stream()
+                .filter(track -> track.getType() == TrackType.SUBTITLE)
+                .filter(track -> CODEC_SRT.equals(track.getCodec()) || CODECS_ASS.contains(track.getCodec()))
+                .filter(track -> trackNumber == null || track.getNumber() == trackNumber)
+                .findFirst();
+    }
+
+    private static class Extraction {
+        private final EbmlReader reader;
+        private final Track track;
+        private final ContentCompression compression;
+        private final long timecodeScale;
+        private final Writer writer;
+        private final boolean ass;
+        private final Job job;
+        private final ByteBuffer header = ByteBuffer.allocate(MAX_BLOCK_HEADER_SIZE);
+        private final ByteBuffer frameBuffer;
+        private Inflater inflater;
+        private ByteBuffer inflated;
+        private int cues;
+
+        private Extraction(EbmlReader reader, Track track, ContentCompression compression, long timecodeScale,
+                           Writer writer, Job job, ByteBuffer frameBuffer) {
+            this.reader = reader;
+            this.track = track;
+            this.compression = compression;
+            this.timecodeScale = timecodeScale;
+            this.writer = writer;
+            this.ass = CODECS_ASS.contains(track.getCodec());
+            this.job = job;
+            this.frameBuffer = frameBuffer;
+        }
+
+        private void close() {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+
+        private void run(long position, long segmentEnd) throws IOException {
+            if (job != null) {
+                job.setTotal(segmentEnd);
+            }
+            while (position < segmentEnd) {
+                if (job != null) {
+                    job.checkCancelled();
+                    job.setDone(position);
+                }
+                Element element = reader.element(position);
+                if (element == null) {
+                    return;
+                }
+                if (element.id == CLUSTER) {
+                    position = readCluster(element, segmentEnd);
+                } else if (element.size == EbmlReader.UNKNOWN_SIZE) {
+                    return;
+                } else {
+                    position = element.end();
+                }
+            }
+        }
+
+        /**
+         * Read blocks of a cluster and return the position after it. A cluster of unknown size ends at the next
+         * top level element.
+         */
+        private long readCluster(Element cluster, long segmentEnd) throws IOException {
+            long end = Math.min(cluster.end(), segmentEnd);
+            long clusterTimecode = 0;
+            long position = cluster.dataPosition;
+            while (position < end) {
+                Element element = reader.element(position);
+                if (element == null || element.size == EbmlReader.UNKNOWN_SIZE) {
+                    return segmentEnd;
+                }
+                if (cluster.size == EbmlReader.UNKNOWN_SIZE && LEVEL_1_IDS.contains(element.id)) {
+                    return position;
+                }
+                if (element.id == TIMECODE) {
+                    clusterTimecode = EbmlReader.readUnsigned(reader.data(element, 8));
+                } else if (element.id == SIMPLE_BLOCK) {
+                    readBlock(element, clusterTimecode, -1);
+                } else if (element.id == BLOCK_GROUP) {
+                    readBlockGroup(element, clusterTimecode);
+                }
+                position = element.end();
+            }
+            return end;
+        }
+
+        private void readBlockGroup(Element group, long clusterTimecode) throws IOException {
+            Element block = null;
+            long duration = -1;
+            for (long position = group.dataPosition; position < group.end(); ) {
+                Element element = reader.element(position);
+                if (element == null || element.size == EbmlReader.UNKNOWN_SIZE) {
+                    break;
+                }
+                if (element.id == BLOCK) {
+                    block = element;
+                } else if (element.id == BLOCK_DURATION) {
+                    duration = EbmlReader.readUnsigned(reader.data(element, 8));
+                }
+                position = element.end();
+            }
+            if (block != null) {
+                readBlock(block, clusterTimecode, duration);
+            }
+        }
+
+        /**
+         * Read header of a block and write it as a cue if it belongs to the track, data of other blocks is not read.
+         */
+        private void readBlock(Element block, long clusterTimecode, long duration) throws IOException {
+            ByteBuffer header = reader.read(block.dataPosition, (int) Math.min(block.size, MAX_BLOCK_HEADER_SIZE),
+                                            this.header);
+            long number = EbmlReader.readSize(header);
+            if (number != track.getNumber() || header.remaining() < 3) {
+                return;
+            }
+            short relativeTimecode = header.getShort();
+            int flags = header.get() & 0xff;
+            long frameSize = block.size - header.position();
+            if ((flags & 0x06) != 0 || frameSize > MAX_FRAME_SIZE) {
+                // Subtitles are never laced.
+                logger.debug("Skipping block at {} of track {}.", block.dataPosition, number);
+                return;
+            }
+            ByteBuffer frame = reader.read(block.dataPosition + header.position(), (int) frameSize, frameBuffer);
+            long startMillis = (clusterTimecode + relativeTimecode) * timecodeScale / 1_000_000;
+            long endMillis = duration < 0 ? startMillis + DEFAULT_DURATION_MILLIS
+                    : startMillis + duration * timecodeScale / 1_000_000;
+            String text = text(decode(frame));
+            if (!text.isBlank()) {
+                writeCue(startMillis, endMillis, text);
+            }
+        }
+
+        private ByteBuffer decode(ByteBuffer frame) throws IOException {
+            if (compression == null) {
+                return frame;
+            }
+            if (compression.algorithm == COMPRESSION_HEADER_STRIPPING) {
+                return ByteBuffer.allocate(compression.settings.length + frame.remaining())
+                        .put(compression.settings)
+                        .put(frame)
+                        .flip();
+            }
+            if (inflater == null) {
+                inflater = new Inflater();
+                inflated = ByteBuffer.allocate(MAX_FRAME_SIZE);
+            }
+            inflater.reset();
+            inflated.clear();
+            try {
+                inflater.setInput(frame);
+                while (!inflater.finished() && inflated.hasRemaining()) {
+                    int length = inflater.inflate(inflated);
+                    if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                }
+                return inflated.flip();
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid compressed subtitle frame.", e);
+            }
+        }
+
+        /**
+         * Convert a frame to SRT text. ASS frames are
+         * {@code ReadOrder,Layer,Style,Name,MarginL,MarginR,MarginV,Effect,Text} and lose their styling.
+         */
+        private String text(ByteBuffer frame) {
+            String text = StandardCharsets.UTF_8.decode(frame).toString();
+            if (ass) {
+                String[] fields = text.split(",", 9);
+                text = fields[fields.length - 1];
+                text = ASS_OVERRIDE_PATTERN.matcher(text).replaceAll("").replace("\\N", "\n").replace("\\n", "\n")
+                        .replace("\\h", " ");
+            }
+            return text.replace("\r\n", "\n").strip();
+        }
+
+        private void writeCue(long startMillis, long endMillis, String text) throws IOException {
+            cues++;
+            writer.write(cues + "\n" + time(startMillis) + " --> " + time(endMillis) + "\n" + text + "\n\n");
+        }
+
+        private static String time(long millis) {
+            millis = Math.max(millis, 0);
+            return String.format("%02d:%02d:%02d,%03d", millis / 3_600_000, millis / 60_000 % 60, millis / 1000 % 60,
+                                 millis % 1000);
+        }
+    }
+}
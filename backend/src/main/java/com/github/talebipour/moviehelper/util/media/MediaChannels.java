@@ -0,0 +1,24 @@
+package com.github.talebipour.moviehelper.util.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+class MediaChannels {
+
+    private MediaChannels() {
+    }
+
+    /**
+     * Fill the buffer from the given position, it stays partially filled only at end of file.
+     */
+    static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return;
+            }
+            position += read;
+        }
+    }
+}
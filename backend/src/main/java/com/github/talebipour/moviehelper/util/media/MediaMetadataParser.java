@@ -0,0 +1,98 @@
+package com.github.talebipour.moviehelper.util.media;
+
+import com.github.talebipour.moviehelper.model.MediaMetadata;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads duration, resolution and tracks of Matroska and MP4 files. Only container headers are read, so parsing a
+ * large movie costs a few small reads. Results are cached by path and are valid while size and modification time of
+ * the file do not change.
+ */
+@Component
+public class MediaMetadataParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaMetadataParser.class);
+
+    private final Map<Path, CacheEntry> cache;
+
+    public MediaMetadataParser(@Value("${media.metadata.cache.size:10000}") int cacheSize) {
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, CacheEntry> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Get metadata of a movie file.
+     *
+     * @return metadata or empty if the file is not a Matroska or MP4 file or it is corrupted
+     */
+    public Optional<MediaMetadata> getMetadata(Path file) throws IOException {
+        Path path = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+            return Optional.empty();
+        }
+        long modifiedTime = attributes.lastModifiedTime().toMillis();
+        CacheEntry entry = cache.get(path);
+        if (entry == null || entry.size != attributes.size() || entry.modifiedTime != modifiedTime) {
+            entry = new CacheEntry(attributes.size(), modifiedTime, parse(path));
+            cache.put(path, entry);
+        }
+        return Optional.ofNullable(entry.metadata);
+    }
+
+    private MediaMetadata parse(Path path) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(8);
+            MediaChannels.read(channel, magic, 0);
+            magic.flip();
+            if (magic.remaining() < 8) {
+                return null;
+            }
+            MediaMetadata metadata;
+            if ((magic.getInt(0) & 0xffffffffL) == Matroska.EBML) {
+                metadata = new MatroskaMetadataReader(new EbmlReader(channel)).read();
+            } else if (magic.getInt(4) == 0x66747970) { // ftyp
+                metadata = new Mp4MetadataReader(channel).read();
+            } else {
+                return null;
+            }
+            logger.debug("Parsed metadata of {} in {} us.", path, (System.nanoTime() - start) / 1000);
+            return metadata;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            logger.warn("Parsing metadata of {} failed: {}", path, e.toString());
+            return null;
+        }
+    }
+
+    private static class CacheEntry {
+        private final long size;
+        private final long modifiedTime;
+        private final MediaMetadata metadata;
+
+        private CacheEntry(long size, long modifiedTime, MediaMetadata metadata) {
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+            this.metadata = metadata;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.talebipour.moviehelper.util.media;
+
+import com.github.talebipour.moviehelper.model.MediaMetadata;
+import com.github.talebipour.moviehelper.model.MediaMetadata.Container;
+import com.github.talebipour.moviehelper.model.MediaMetadata.Track;
+import com.github.talebipour.moviehelper.model.MediaMetadata.TrackType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the {@code moov} box of an ISO base media file. Only headers of boxes are read while walking the tree and
+ * only the few header boxes which carry metadata are read into memory, sample tables are skipped.
+ */
+class Mp4MetadataReader {
+
+    /**
+     * Upper bound of a header box which is read into memory, all used fields are in its beginning.
+     */
+    private static final int MAX_BOX_SIZE = 256;
+
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(16);
+    private final MediaMetadata metadata = new MediaMetadata(Container.MP4);
+
+    Mp4MetadataReader(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    MediaMetadata read() throws IOException {
+        long size = channel.size();
+        Box box = box(0, size);
+        if (box == null || !box.type.equals("ftyp")) {
+            throw new IOException("Not an MP4 file.");
+        }
+        while (box != null) {
+            if (box.type.equals("moov")) {
+                readMoov(box);
+                return metadata;
+            }
+            box = box(box.end, size);
+        }
+        throw new IOException("moov box not found.");
+    }
+
+    private void readMoov(Box moov) throws IOException {
+        for (Box box = box(moov.dataPosition, moov.end); box != null; box = box(box.end, moov.end)) {
+            if (box.type.equals("mvhd")) {
+                ByteBuffer data = data(box);
+                int version = data.get();
+                data.position(version == 1 ? 20 : 12);
+                long timescale = data.getInt() & 0xffffffffL;
+                long duration = version == 1 ? data.getLong() : data.getInt() & 0xffffffffL;
+                if (timescale > 0) {
+                    metadata.setDurationSeconds((double) duration / timescale);
+                }
+            } else if (box.type.equals("trak")) {
+                readTrak(box);
+            }
+        }
+    }
+
+    private void readTrak(Box trak) throws IOException {
+        Track track = new Track();
+        int width = 0;
+        int height = 0;
+        for (Box box = box(trak.dataPosition, trak.end); box != null; box = box(box.end, trak.end)) {
+            if (box.type.equals("tkhd")) {
+                ByteBuffer data = data(box);
+                int version = data.get();
+                data.position(version == 1 ? 20 : 12);
+                track.setNumber(data.getInt() & 0xffffffffL);
+                // Width and height are 16.16 fixed point numbers at the end of the box.
+                data.position(version == 1 ? 88 : 76);
+                width = data.getInt() >>> 16;
+                height = data.getInt() >>> 16;
+            } else if (box.type.equals("mdia")) {
+                readMdia(box, track);
+            }
+        }
+        if (track.getType() == TrackType.VIDEO && metadata.getWidth() == 0) {
+            metadata.setWidth(width);
+            metadata.setHeight(height);
+        }
+        metadata.getTracks().add(track);
+    }
+
+    private void readMdia(Box mdia, Track track) throws IOException {
+        for (Box box = box(mdia.dataPosition, mdia.end); box != null; box = box(box.end, mdia.end)) {
+            if (box.type.equals("mdhd")) {
+                ByteBuffer data = data(box);
+                int version = data.get();
+                data.position(version == 1 ? 32 : 20);
+                track.setLanguage(language(data.getShort()));
+            } else if (box.type.equals("hdlr")) {
+                ByteBuffer data = data(box);
+                data.position(8);
+                track.setType(trackType(fourCc(data)));
+                data.position(24);
+                String name = EbmlReader.readString(data).trim();
+                if (!name.isEmpty()) {
+                    track.setName(name);
+                }
+            } else if (box.type.equals("minf")) {
+                Box stbl = child(box, "stbl");
+                Box stsd = stbl == null ? null : child(stbl, "stsd");
+                if (stsd != null) {
+                    ByteBuffer data = data(stsd);
+                    // Version, flags and entry count are followed by the first sample entry whose type is the codec.
+                    data.position(12);
+                    track.setCodec(fourCc(data));
+                }
+            }
+        }
+    }
+
+    private Box child(Box parent, String type) throws IOException {
+        for (Box box = box(parent.dataPosition, parent.end); box != null; box = box(box.end, parent.end)) {
+            if (box.type.equals(type)) {
+                return box;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read header of the box at the given position or return null if no complete box header fits before the end.
+     */
+    private Box box(long position, long end) throws IOException {
+        if (position + 8 > end) {
+            return null;
+        }
+        header.clear().limit((int) Math.min(16, end - position));
+        MediaChannels.read(channel, header, position);
+        header.flip();
+        if (header.remaining() < 8) {
+            return null;
+        }
+        long size = header.getInt() & 0xffffffffL;
+        String type = fourCc(header);
+        int headerSize = 8;
+        if (size == 1) {
+            if (header.remaining() < 8) {
+                return null;
+            }
+            size = header.getLong();
+            headerSize = 16;
+        } else if (size == 0) {
+            size = end - position;
+        }
+        if (size < headerSize || position + size > end) {
+            return null;
+        }
+        return new Box(type, position + headerSize, position + size);
+    }
+
+    private ByteBuffer data(Box box) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate((int) Math.min(box.end - box.dataPosition, MAX_BOX_SIZE));
+        MediaChannels.read(channel, data, box.dataPosition);
+        return data.flip();
+    }
+
+    private static String fourCc(ByteBuffer buffer) {
+        byte[] bytes = new byte[4];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Decode ISO 639-2 code which is packed as three 5 bit characters.
+     */
+    private static String language(short packed) {
+        char[] chars = new char[3];
+        for (int i = 0; i < 3; i++) {
+            chars[i] = (char) (((packed >> (10 - 5 * i)) & 0x1f) + 0x60);
+        }
+        String language = new String(chars);
+        return language.equals("und") || packed == 0 ? null : language;
+    }
+
+    private static TrackType trackType(String handler) {
+        switch (handler) {
+            case "vide":
+                return TrackType.VIDEO;
+            case "soun":
+                return TrackType.AUDIO;
+            case "sbtl":
+            case "subt":
+            case "text":
+            case "clcp":
+                return TrackType.SUBTITLE;
+            default:
+                return TrackType.OTHER;
+        }
+    }
+
+    private static class Box {
+        private final String type;
+        private final long dataPosition;
+        private final long end;
+
+        private Box(String type, long dataPosition, long end) {
+            this.type = type;
+            this.dataPosition = dataPosition;
+            this.end = end;
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.github.talebipour.moviehelper.util.opensubtitles;
 
 import com.github.talebipour.moviehelper.model.Subtitle;
+import com.github.talebipour.moviehelper.util.RequestTracer;
+import com.github.talebipour.moviehelper.util.RequestTracer.Span;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -17,6 +20,11 @@ import org.springframework.web.util.UriComponentsBuilder;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Client of OpenSubtitles REST API. It is created on first use, so startup does not pay for building its
+ * {@link RestTemplate}.
+ */
+@Lazy
 @Component
 public class OpenSubtitlesClient {
 
@@ -40,8 +48,13 @@ public class OpenSubtitlesClient {
                 .queryParam("language", language)
                 .encode()
                 .toUriString();
-        ResponseEntity<SearchResponse> response = restTemplate.exchange(url, HttpMethod.GET, requestEntity,
-                SearchResponse.class);
+        ResponseEntity<SearchResponse> response;
+        Span span = RequestTracer.span("http", "GET " + url);
+        try {
+            response = restTemplate.exchange(url, HttpMethod.GET, requestEntity, SearchResponse.class);
+        } finally {
+            span.close();
+        }
         if (response.getStatusCode().isError()) {
             throw new AssertionError("API invocation failed, status:" + response.getStatusCode());
         }
@@ -0,0 +1,47 @@
+package com.github.talebipour.moviehelper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("fast-startup")
+class FastStartupProfileTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testFilesRespond() {
+        assertEquals(HttpStatus.OK, restTemplate.getForEntity("/files", String.class).getStatusCode());
+    }
+
+    /**
+     * Start with the arguments of movie-helper.service and the config.properties which install.sh writes.
+     */
+    @Test
+    void testStartWithServiceArguments() throws IOException {
+        Path media = Files.createDirectories(tempDir.resolve("media"));
+        Path config = Files.writeString(tempDir.resolve("config.properties"), "directory.path=" + media + "\n");
+        try (ConfigurableApplicationContext context = SpringApplication.run(
+                ApplicationLauncher.class, "--spring.config.additional-location=" + config,
+                "--spring.profiles.active=fast-startup", "--server.port=0")) {
+            assertEquals(media.toString(), context.getEnvironment().getProperty("directory.path"));
+        }
+    }
+}
@@ -7,16 +7,23 @@ import static com.github.talebipour.moviehelper.controller.FileProviderControlle
 import static com.github.talebipour.moviehelper.controller.FileProviderController.SUBTITLE_2_NAME;
 import static java.util.Arrays.asList;
 import static org.awaitility.Awaitility.waitAtMost;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.github.talebipour.moviehelper.model.BufferPoolStatistics;
 import com.github.talebipour.moviehelper.model.DownloadStatus;
 import com.github.talebipour.moviehelper.model.DownloadStatus.Status;
+import com.github.talebipour.moviehelper.model.HostConnections;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -32,7 +39,9 @@ import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
@@ -86,6 +95,9 @@ class DownloadControllerTest {
             DownloadStatus lastStatus = lastStatusEntity.getBody().get(0);
             assertEquals(Status.COMPLETED, lastStatus.getStatus());
             assertEquals(100, lastStatus.getProgressPercent());
+            assertEquals(MOVIE_FILE_SIZE, lastStatus.getDownloadedBytes());
+            assertTrue(lastStatus.getNetworkBytesPerSecond() > 0);
+            assertTrue(lastStatus.getDiskBytesPerSecond() > 0);
         });
         Path downloadedFilePath = rootDir.resolve(filename);
         assertTrue(Files.exists(downloadedFilePath));
@@ -94,6 +106,105 @@ class DownloadControllerTest {
         Files.delete(downloadedFilePath);
     }
 
+    @Test
+    public void testDownloadFileChecksum() throws Exception {
+        String url = restTemplate.getRootUri() + "/movie.mkv";
+        String checksum = "sha256:" + sha256Hex(new byte[MOVIE_FILE_SIZE]);
+        DownloadStatus status = restTemplate.postForObject("/download/file?path=&url={url}&checksum={checksum}", null,
+                                                           DownloadStatus.class, url, checksum);
+        assertNotNull(status);
+        waitAtMost(1, TimeUnit.MINUTES).untilAsserted(
+                () -> assertEquals(Status.COMPLETED, getLastStatus(url).getBody().get(0).getStatus()));
+        Files.delete(rootDir.resolve(status.getFile().getName()));
+
+        status = restTemplate.postForObject("/download/file?path=&url={url}&checksum={checksum}", null,
+                                            DownloadStatus.class, url, "sha256:" + sha256Hex(new byte[1]));
+        assertNotNull(status);
+        waitAtMost(1, TimeUnit.MINUTES).untilAsserted(() -> {
+            DownloadStatus lastStatus = getLastStatus(url).getBody().get(0);
+            assertEquals(Status.FAILED, lastStatus.getStatus());
+            assertTrue(lastStatus.getMessage().startsWith("Checksum mismatch"));
+        });
+        Files.delete(rootDir.resolve(status.getFile().getName()));
+
+        ResponseEntity<String> entity = restTemplate.postForEntity("/download/file?path=&url={url}&checksum=crc:00",
+                                                                   null, String.class, url);
+        assertEquals(HttpStatus.BAD_REQUEST, entity.getStatusCode());
+    }
+
+    @Test
+    public void testDownloadFileFromMirrors() throws Exception {
+        String url = restTemplate.getRootUri() + "/mirror/first/movie.mkv";
+        String mirror1 = restTemplate.getRootUri() + "/mirror/second/movie.mkv";
+        String mirror2 = restTemplate.getRootUri() + "/mirror/third/movie.mkv";
+        String checksum = "sha256:" + sha256Hex(FileProviderController.patternedContent());
+        DownloadStatus status = restTemplate.postForObject(
+                "/download/file?path=&url={url}&mirror={mirror1}&mirror={mirror2}&checksum={checksum}", null,
+                DownloadStatus.class, url, mirror1, mirror2, checksum);
+        assertNotNull(status);
+        assertEquals(asList(mirror1, mirror2), status.getMirrors());
+        waitAtMost(1, TimeUnit.MINUTES).untilAsserted(() -> {
+            DownloadStatus lastStatus = getLastStatus(url).getBody().get(0);
+            assertEquals(Status.COMPLETED, lastStatus.getStatus());
+            assertEquals(MOVIE_FILE_SIZE, lastStatus.getDownloadedBytes());
+        });
+        Path downloadedFilePath = rootDir.resolve(status.getFile().getName());
+        assertArrayEquals(FileProviderController.patternedContent(), Files.readAllBytes(downloadedFilePath));
+        Files.delete(downloadedFilePath);
+
+        ResponseEntity<String> entity = restTemplate.postForEntity("/download/file?path=&url={url}&mirror={mirror}",
+                                                                   null, String.class, url,
+                                                                   restTemplate.getRootUri() + "/sample-subtitle.zip");
+        assertEquals(HttpStatus.BAD_REQUEST, entity.getStatusCode());
+    }
+
+    @Test
+    public void testDownloadFileWithoutRangeSupport() throws Exception {
+        String url = restTemplate.getRootUri() + "/no-range/movie.mkv";
+        int requests = FileProviderController.noRangeRequests.get();
+        DownloadStatus status = restTemplate.postForObject("/download/file?path=&url={url}", null,
+                                                           DownloadStatus.class, url);
+        assertNotNull(status);
+        assertFalse(status.isRangeSupported());
+        waitAtMost(1, TimeUnit.MINUTES).untilAsserted(
+                () -> assertEquals(Status.COMPLETED, getLastStatus(url).getBody().get(0).getStatus()));
+        Path downloadedFilePath = rootDir.resolve(status.getFile().getName());
+        assertArrayEquals(FileProviderController.patternedContent(), Files.readAllBytes(downloadedFilePath));
+        // The probe response is the download, the file is not requested again.
+        assertEquals(requests + 1, FileProviderController.noRangeRequests.get());
+        Files.delete(downloadedFilePath);
+
+        List<HostConnections> connections = restTemplate.exchange(
+                "/download/status/connections", HttpMethod.GET, HttpEntity.EMPTY,
+                new ParameterizedTypeReference<List<HostConnections>>() {}).getBody();
+        assertNotNull(connections);
+        assertEquals(1, connections.size());
+        assertTrue(connections.get(0).getRequests() > 0);
+        assertEquals(4, connections.get(0).getMaxActive());
+
+        BufferPoolStatistics buffers = restTemplate.getForObject("/download/status/buffers",
+                                                                 BufferPoolStatistics.class);
+        assertTrue(buffers.getAcquires() > 0);
+        assertTrue(buffers.getHits() > 0);
+        assertEquals(buffers.getHits() * buffers.getBufferSize(), buffers.getReusedBytes());
+    }
+
+    @Test
+    public void testDownloadStatusNotModified() {
+        ResponseEntity<String> response = restTemplate.getForEntity("/download/status", String.class);
+        String etag = response.getHeaders().getETag();
+        assertNotNull(etag);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(etag);
+        response = restTemplate.exchange("/download/status", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    }
+
+    private static String sha256Hex(byte[] content) throws NoSuchAlgorithmException {
+        return String.format("%064x", new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(content)));
+    }
+
     private ResponseEntity<List<DownloadStatus>> getLastStatus(String url) {
         ResponseEntity<List<DownloadStatus>> lastStatusEntity =
                 restTemplate.exchange("/download/status?url=" + url, HttpMethod.GET, HttpEntity.EMPTY,
@@ -0,0 +1,201 @@
+package com.github.talebipour.moviehelper.controller;
+
+import static com.github.talebipour.moviehelper.controller.FileProviderController.originRequests;
+import static com.github.talebipour.moviehelper.controller.FileProviderController.patternedContent;
+import static org.awaitility.Awaitility.waitAtMost;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.talebipour.moviehelper.model.DownloadStatus;
+import com.github.talebipour.moviehelper.model.DownloadStatus.Status;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Downloads from the origin simulator of {@link FileProviderController}, which throttles, delays and drops
+ * responses, so failures of slow or unreliable servers are repeatable without network access.
+ */
+// Connections of truncated responses are closed after the connection timeout.
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = "server.tomcat.connection-timeout=1s")
+class DownloadResilienceTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(DownloadResilienceTest.class);
+
+    @TempDir
+    static Path rootDir;
+
+    private final TestRestTemplate restTemplate;
+
+    @Autowired
+    public DownloadResilienceTest(TestRestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("directory.path", () -> rootDir.toAbsolutePath().toString());
+    }
+
+    @Test
+    public void testResumeAfterResets() throws IOException {
+        // The probe is the first request, the next two are dropped after 3 MB.
+        DownloadStatus status = download("/origin/resets.mkv?resetAfter=3000000&resets=3", Status.COMPLETED);
+        assertEquals(4, originRequests.get("resets.mkv").get());
+        assertDownloaded(status, patternedContent());
+    }
+
+    @Test
+    public void testResetWithoutRangeSupport() throws IOException {
+        DownloadStatus status = download("/origin/no-range-reset.mkv?ranges=false&resetAfter=1000000&resets=10",
+                                         Status.FAILED);
+        assertFalse(status.isRangeSupported());
+        assertNotNull(status.getMessage());
+        assertEquals(1, originRequests.get("no-range-reset.mkv").get());
+        Files.deleteIfExists(rootDir.resolve(status.getFile().getName()));
+    }
+
+    @Test
+    public void testResumeOfChangedFileFailsWithoutReadingIt() {
+        long start = System.nanoTime();
+        // The resumed request gets the whole changed file, reading it would take more than 4 seconds.
+        DownloadStatus status = download("/origin/changed.mkv?size=20000000&rate=4000000&resetAfter=3000000&resets=2"
+                                         + "&changing=true", Status.FAILED);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(status.getMessage().contains("200"), status.getMessage());
+        assertTrue(millis < 4000, "Failed in " + millis + " ms");
+        assertEquals(3, originRequests.get("changed.mkv").get());
+    }
+
+    @Test
+    public void testMirrorWithoutRangeSupportIsRejectedWithoutReadingIt() {
+        String url = restTemplate.getRootUri() + "/origin/ranged.mkv?size=20000000";
+        // The mirror sends the whole file to the probe, reading it would take more than 4 seconds.
+        String mirror = restTemplate.getRootUri() + "/origin/ignoring-mirror.mkv?size=20000000&ranges=false"
+                        + "&rate=4000000";
+        long start = System.nanoTime();
+        ResponseEntity<String> entity = restTemplate.postForEntity("/download/file?path=&url={url}&mirror={mirror}",
+                                                                   null, String.class, url, mirror);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(HttpStatus.BAD_REQUEST, entity.getStatusCode());
+        assertTrue(millis < 4000, "Rejected in " + millis + " ms");
+    }
+
+    @Test
+    public void testMirrorWhichIgnoresRangesIsDroppedWithoutReadingIt() throws IOException {
+        // The mirror answers its probe with 206 and chunk requests with the whole file, reading it takes 5 seconds.
+        String mirror = restTemplate.getRootUri() + "/origin/ignoring-chunks.mkv?size=20000000&rate=4000000"
+                        + "&rangedRequests=1";
+        long start = System.nanoTime();
+        DownloadStatus status = download("/origin/mirrored.mkv?size=20000000", mirror, Status.COMPLETED);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(millis < 4000, "Downloaded in " + millis + " ms");
+        assertDownloaded(status, patternedContent(20_000_000));
+    }
+
+    @Test
+    public void testThrottledDownload() throws IOException {
+        long start = System.nanoTime();
+        DownloadStatus status = download("/origin/throttled.mkv?size=1000000&rate=2000000&latency=200",
+                                         Status.COMPLETED);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // Latency of the probe and of the download, then 1 MB at 2 MB per second.
+        assertTrue(millis >= 850, "Downloaded in " + millis + " ms");
+        assertTrue(status.getNetworkBytesPerSecond() < 3_000_000, status.getNetworkBytesPerSecond() + " B/s");
+        assertDownloaded(status, patternedContent(1_000_000));
+    }
+
+    @Test
+    public void testContentDisposition() throws IOException {
+        Map<String, String> names = Map.of("plain", "plain.mkv", "quoted", "quoted movie.mkv",
+                                           "extended", "extended movie's.mkv");
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            // Name in the URL is another one, so the name comes from Content-Disposition header.
+            String url = "/origin/" + entry.getKey() + ".bin?size=1000&disposition=" + entry.getKey()
+                         + "&filename=" + URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8);
+            DownloadStatus status = download(url, Status.COMPLETED);
+            assertEquals(entry.getValue(), status.getFile().getName());
+            assertDownloaded(status, patternedContent(1000));
+        }
+    }
+
+    /**
+     * Throughput of a large sparse file, which is only run when its size is given, e.g.
+     * {@code ./gradlew :backend:test --tests '*DownloadResilienceTest' -Dorigin.throughput.size=4294967296}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "origin.throughput.size", matches = "\\d+")
+    public void testThroughput() throws IOException {
+        long size = Long.parseLong(System.getProperty("origin.throughput.size"));
+        long start = System.nanoTime();
+        DownloadStatus status = download("/origin/throughput.mkv?sparse=true&size=" + size, Status.COMPLETED);
+        long nanos = System.nanoTime() - start;
+        logger.info("Downloaded {} bytes in {} ms, {} MB/s, network {} MB/s, disk {} MB/s.", size,
+                    TimeUnit.NANOSECONDS.toMillis(nanos), size * 1000 / nanos, status.getNetworkBytesPerSecond() >> 20,
+                    status.getDiskBytesPerSecond() >> 20);
+        Path file = rootDir.resolve(status.getFile().getName());
+        assertEquals(size, Files.size(file));
+        Files.delete(file);
+    }
+
+    private DownloadStatus download(String path, Status expected) {
+        String url = restTemplate.getRootUri() + path;
+        assertNotNull(restTemplate.postForObject("/download/file?path=&url={url}", null, DownloadStatus.class, url));
+        return await(url, expected);
+    }
+
+    private DownloadStatus download(String path, String mirror, Status expected) {
+        String url = restTemplate.getRootUri() + path;
+        assertNotNull(restTemplate.postForObject("/download/file?path=&url={url}&mirror={mirror}", null,
+                                                 DownloadStatus.class, url, mirror));
+        return await(url, expected);
+    }
+
+    private DownloadStatus await(String url, Status expected) {
+        waitAtMost(10, TimeUnit.MINUTES).until(() -> getStatus(url).getStatus() != Status.IN_PROGRESS
+                                                     && getStatus(url).getStatus() != Status.VERIFYING);
+        DownloadStatus status = getStatus(url);
+        assertEquals(expected, status.getStatus(), status.getMessage());
+        return status;
+    }
+
+    private DownloadStatus getStatus(String url) {
+        List<DownloadStatus> statuses = restTemplate.exchange("/download/status?url={url}", HttpMethod.GET,
+                                                              HttpEntity.EMPTY,
+                                                              new ParameterizedTypeReference<List<DownloadStatus>>() {},
+                                                              url).getBody();
+        assertNotNull(statuses);
+        assertEquals(1, statuses.size());
+        return statuses.get(0);
+    }
+
+    private static void assertDownloaded(DownloadStatus status, byte[] content) throws IOException {
+        Path file = rootDir.resolve(status.getFile().getName());
+        assertArrayEquals(content, Files.readAllBytes(file));
+        Files.delete(file);
+    }
+}
@@ -2,18 +2,29 @@ package com.github.talebipour.moviehelper.controller;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.github.talebipour.moviehelper.model.FileModel;
 import com.github.talebipour.moviehelper.model.FileModel.FileType;
+import com.github.talebipour.moviehelper.model.FileOperation;
+import com.github.talebipour.moviehelper.model.FileOperationBatch;
+import com.github.talebipour.moviehelper.model.Job;
+import com.github.talebipour.moviehelper.util.DirectorySizeAggregator;
 import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -23,6 +34,7 @@ import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -37,10 +49,12 @@ class FileControllerTest {
     static Path rootDir;
 
     private TestRestTemplate restTemplate;
+    private DirectorySizeAggregator directorySizeAggregator;
 
     @Autowired
-    public FileControllerTest(TestRestTemplate restTemplate) {
+    public FileControllerTest(TestRestTemplate restTemplate, DirectorySizeAggregator directorySizeAggregator) {
         this.restTemplate = restTemplate;
+        this.directorySizeAggregator = directorySizeAggregator;
     }
 
     @DynamicPropertySource
@@ -80,6 +94,45 @@ class FileControllerTest {
     }
 
 
+    @Test
+    void testListFilesNotModified() throws IOException {
+        Files.createDirectories(rootDir.resolve("etag"));
+        ResponseEntity<String> response = restTemplate.getForEntity("/files?path=etag", String.class);
+        String etag = response.getHeaders().getETag();
+        assertNotNull(etag);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(etag);
+        response = restTemplate.exchange("/files?path=etag", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+
+        restTemplate.delete("/files?path=etag");
+        Files.createDirectories(rootDir.resolve("etag"));
+        Files.createFile(rootDir.resolve("etag/file"));
+        response = restTemplate.exchange("/files?path=etag", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotEquals(etag, response.getHeaders().getETag());
+    }
+
+    @Test
+    void testListFilesModifiedUnderChild() throws IOException {
+        Path season = Files.createDirectories(rootDir.resolve("series/season1"));
+        directorySizeAggregator.scan();
+        ResponseEntity<String> response = restTemplate.getForEntity("/files?path=", String.class);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(response.getHeaders().getETag());
+        response = restTemplate.exchange("/files?path=", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+
+        // Neither the listed directory nor its child is modified, the periodic scan finds the new file.
+        Files.write(season.resolve("episode.mkv"), new byte[1000]);
+        directorySizeAggregator.scan();
+        ResponseEntity<List<FileModel>> listing = restTemplate.exchange(
+                "/files?path=", HttpMethod.GET, new HttpEntity<>(headers), new ParameterizedTypeReference<>() {});
+        assertEquals(HttpStatus.OK, listing.getStatusCode());
+        assertEquals(singletonList(new FileModel("series", "series", FileType.DIRECTORY, 1000)), listing.getBody());
+    }
+
     @Test
     public void testListFileJail() {
         assertEquals(HttpStatus.BAD_REQUEST, getHttpStatus(".."));
@@ -121,8 +174,9 @@ class FileControllerTest {
 
         String movieRegex = "^seriesName.*s(\\d+)e(\\d+).*\\.mkv$";
         String subtitleRegex = "^subtitleName.*s$1e$2.*BlueRay\\.srt$";
-        String url = String.format("/set-subtitle/bulk?path=someSeries&movieRegex=%s&subtitleRegex=%s", movieRegex,
-                                   subtitleRegex);
+        URI url = URI.create(String.format("/set-subtitle/bulk?path=someSeries&movieRegex=%s&subtitleRegex=%s",
+                                           URLEncoder.encode(movieRegex, StandardCharsets.UTF_8),
+                                           URLEncoder.encode(subtitleRegex, StandardCharsets.UTF_8)));
         ResponseEntity<List<List<FileModel>>> response = restTemplate.exchange(url, HttpMethod.POST, HttpEntity.EMPTY,
                                                                               new ParameterizedTypeReference<>() {});
         assertTrue(response.getStatusCode().is2xxSuccessful());
@@ -132,6 +186,36 @@ class FileControllerTest {
         assertEquals(movie2SubContent, Files.readString(seriesDir.resolve(movie2Name + ".srt")));
     }
 
+    @Test
+    public void testSetSubtitleBulkOfMoviesWithSameName() throws IOException {
+        Path dir = Files.createDirectories(rootDir.resolve("sameName"));
+        Files.createFile(dir.resolve("movie.mkv"));
+        Files.createFile(dir.resolve("movie.mp4"));
+        Files.writeString(dir.resolve("movie.srt"), "existing");
+        Files.writeString(dir.resolve("sub.mkv.srt"), "mkv");
+        Files.writeString(dir.resolve("sub.mp4.srt"), "mp4");
+
+        String movieRegex = "^movie\\.(mkv|mp4)$";
+        String subtitleRegex = "^sub\\.$1\\.srt$";
+        URI url = URI.create(String.format("/set-subtitle/bulk?path=sameName&movieRegex=%s&subtitleRegex=%s",
+                                           URLEncoder.encode(movieRegex, StandardCharsets.UTF_8),
+                                           URLEncoder.encode(subtitleRegex, StandardCharsets.UTF_8)));
+        ResponseEntity<List<List<FileModel>>> response = restTemplate.exchange(url, HttpMethod.POST, HttpEntity.EMPTY,
+                                                                              new ParameterizedTypeReference<>() {});
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertEquals(2, response.getBody().size());
+        // Both movies name the same subtitle, so every replaced one is kept under its own backup name.
+        String last = Files.readString(dir.resolve("movie.srt"));
+        assertEquals(Set.of("existing", "mkv", "mp4"),
+                     Set.of(Files.readString(dir.resolve("movie.srt.1")), Files.readString(dir.resolve("movie.srt.2")),
+                            last));
+        for (List<FileModel> models : response.getBody()) {
+            assertEquals("movie.srt", models.get(1).getName());
+            assertEquals(last.length(), models.get(1).getSize());
+        }
+    }
+
     @Test
     public void testDelete() throws IOException {
       Path file = Files.createFile(rootDir.resolve("delete-test-file"));
@@ -141,6 +225,54 @@ class FileControllerTest {
       assertFalse(Files.exists(dir));
     }
 
+    @Test
+    public void testDeleteAsJob() throws IOException {
+        StringBuilder url = new StringBuilder("/files?path=");
+        for (int i = 0; i < 20; i++) {
+            Files.createFile(rootDir.resolve("job-file-" + i));
+            url.append(i == 0 ? "" : "&path=").append("job-file-").append(i);
+        }
+        ResponseEntity<Job> response = restTemplate.exchange(url.toString(), HttpMethod.DELETE, HttpEntity.EMPTY,
+                                                             Job.class);
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        String id = response.getBody().getId();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> restTemplate.getForObject("/jobs/" + id, Job.class)
+                .getStatus() == Job.Status.COMPLETED);
+        Job job = restTemplate.getForObject("/jobs/" + id, Job.class);
+        assertEquals(20, job.getDone());
+        assertEquals(100, job.getProgressPercent());
+        assertFalse(Files.exists(rootDir.resolve("job-file-0")));
+        assertEquals(HttpStatus.NOT_FOUND, restTemplate.getForEntity("/jobs/unknown", String.class).getStatusCode());
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        Path dir = Files.createDirectories(rootDir.resolve("batch"));
+        Files.writeString(dir.resolve("a"), "a");
+        Files.writeString(dir.resolve("b"), "b");
+        List<FileOperation> plan = asList(FileOperation.move("batch/a", "batch/c"),
+                                          FileOperation.move("batch/missing", "batch/d"));
+        ResponseEntity<FileOperationBatch> response = restTemplate.postForEntity("/files/batch?policy=ROLL_BACK",
+                                                                                 plan, FileOperationBatch.class);
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        String id = response.getBody().getId();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> restTemplate.getForObject("/files/batch/" + id,
+                FileOperationBatch.class).getStatus() == FileOperationBatch.Status.ROLLED_BACK);
+        assertTrue(Files.exists(dir.resolve("a")));
+        assertFalse(Files.exists(dir.resolve("c")));
+
+        plan = asList(FileOperation.delete("batch/a"), FileOperation.delete("batch/missing"),
+                      FileOperation.delete("batch/b"));
+        response = restTemplate.postForEntity("/files/batch", plan, FileOperationBatch.class);
+        String continueId = response.getBody().getId();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> restTemplate.getForObject("/files/batch/" + continueId,
+                FileOperationBatch.class).getStatus() == FileOperationBatch.Status.COMPLETED);
+        assertFalse(Files.exists(dir.resolve("a")));
+        assertFalse(Files.exists(dir.resolve("b")));
+        assertEquals(HttpStatus.NOT_FOUND, restTemplate.getForEntity("/files/batch/unknown", String.class)
+                .getStatusCode());
+    }
+
     private List<FileModel> listFiles(String path) {
         ResponseEntity<List<FileModel>> resp = restTemplate.exchange("/files?path=" + path, HttpMethod.GET, null,
                 new ParameterizedTypeReference<List<FileModel>>() {
@@ -0,0 +1,78 @@
+package com.github.talebipour.moviehelper.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = "files.events.batch.millis=50")
+class FileEventControllerTest {
+
+    @TempDir
+    static Path rootDir;
+
+    private final TestRestTemplate restTemplate;
+
+    @Autowired
+    public FileEventControllerTest(TestRestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("directory.path", () -> rootDir.toAbsolutePath().toString());
+    }
+
+    @Test
+    public void testChangesArePushed() throws Exception {
+        Path movies = Files.createDirectories(rootDir.resolve("movies"));
+        HttpClient client = HttpClient.newHttpClient();
+        URI uri = URI.create(restTemplate.getRootUri() + "/files/events?path=movies");
+        HttpRequest request = HttpRequest.newBuilder(uri).build();
+        HttpResponse<Stream<String>> response = client.send(request, BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> response.body().filter(line -> !line.isEmpty()).forEach(lines::add));
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            assertEquals("event:subscribed", lines.poll(10, TimeUnit.SECONDS));
+            assertEquals("data:movies", lines.poll(10, TimeUnit.SECONDS));
+
+            // A file created by another tool.
+            Files.writeString(movies.resolve("movie.mkv"), "movie");
+            assertEquals("event:changes", lines.poll(10, TimeUnit.SECONDS));
+            assertEquals("data:[{\"type\":\"CREATED\",\"path\":\"movies/movie.mkv\"}]",
+                         lines.poll(10, TimeUnit.SECONDS));
+
+            restTemplate.delete("/files?path={path}", "movies/movie.mkv");
+            // The write may be reported as a modification in a later batch.
+            String line;
+            do {
+                line = lines.poll(10, TimeUnit.SECONDS);
+                assertNotNull(line);
+            } while (!line.startsWith("data:") || line.contains("MODIFIED"));
+            assertEquals("data:[{\"type\":\"DELETED\",\"path\":\"movies/movie.mkv\"}]", line);
+        } finally {
+            response.body().close();
+        }
+    }
+}
@@ -2,16 +2,35 @@ package com.github.talebipour.moviehelper.controller;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletResponse;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 @Controller
@@ -27,6 +46,16 @@ public class FileProviderController {
 
     static final int MOVIE_FILE_SIZE = 10_000_000;
 
+    static final AtomicInteger noRangeRequests = new AtomicInteger();
+
+    /**
+     * Requests of every name of the origin simulator.
+     */
+    static final Map<String, AtomicInteger> originRequests = new ConcurrentHashMap<>();
+
+    private static final int ORIGIN_CHUNK_SIZE = 65536;
+    private static final Map<Long, Path> sparseFiles = new HashMap<>();
+
     @GetMapping(value = "/sample-subtitle.zip", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
     @ResponseBody
     public Resource subtitle() throws IOException {
@@ -55,4 +84,153 @@ public class FileProviderController {
         return new FileSystemResource(path);
     }
 
+    /**
+     * Movie with non zero content, every mirror name serves the same file.
+     */
+    @GetMapping(value = "/mirror/{name}/movie.mkv", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @ResponseBody
+    public Resource mirrorMovie(@PathVariable String name) {
+        return new ByteArrayResource(patternedContent());
+    }
+
+    /**
+     * Movie of a server which ignores Range header and always sends the whole file.
+     */
+    @GetMapping(value = "/no-range/movie.mkv", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @ResponseBody
+    public byte[] noRangeMovie() {
+        noRangeRequests.incrementAndGet();
+        return patternedContent();
+    }
+
+    /**
+     * Origin server simulator, every name is a separate file with its own request counter. Content is the pattern of
+     * {@link #patternedContent()} extended to the requested size, or zeros read from a sparse file, so multi-GB files
+     * do not use memory or disk space.
+     *
+     * @param ranges whether Range and If-Range headers are honored
+     * @param disposition {@code plain}, {@code quoted} or {@code extended} filename of Content-Disposition header, or
+     *                    none to leave the name to the URL
+     * @param filename name in Content-Disposition header, the name in the URL by default
+     * @param rate upper bound of bytes per second, zero for no limit
+     * @param latency milliseconds to wait before the response
+     * @param resetAfter bytes of a response after which it stops, negative to never stop. Tomcat closes the connection
+     *                   of a truncated response after its connection timeout, so the client sees a dropped connection.
+     * @param resets number of first requests of the name which are dropped
+     * @param changing whether the ETag changes on every request, so If-Range never matches
+     * @param rangedRequests number of first requests of the name whose Range header is honored, later ones get the
+     *                       whole file
+     */
+    @GetMapping("/origin/{name}")
+    public void origin(@PathVariable String name,
+                       @RequestParam(defaultValue = "" + MOVIE_FILE_SIZE) long size,
+                       @RequestParam(defaultValue = "true") boolean ranges,
+                       @RequestParam(defaultValue = "false") boolean sparse,
+                       @RequestParam(defaultValue = "") String disposition,
+                       @RequestParam(required = false) String filename,
+                       @RequestParam(defaultValue = "0") long rate,
+                       @RequestParam(defaultValue = "0") long latency,
+                       @RequestParam(defaultValue = "-1") long resetAfter,
+                       @RequestParam(defaultValue = "1") int resets,
+                       @RequestParam(defaultValue = "false") boolean changing,
+                       @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int rangedRequests,
+                       @RequestHeader HttpHeaders headers,
+                       HttpServletResponse response) throws IOException, InterruptedException {
+        int request = originRequests.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+        Thread.sleep(latency);
+        String etag = "\"" + name + "-" + size + (changing ? "-" + request : "") + "\"";
+        long start = 0;
+        long end = size;
+        String ifRange = headers.getFirst(HttpHeaders.IF_RANGE);
+        if (ranges && request <= rangedRequests && !headers.getRange().isEmpty()
+            && (ifRange == null || ifRange.equals(etag))) {
+            HttpRange range = headers.getRange().get(0);
+            start = range.getRangeStart(size);
+            end = range.getRangeEnd(size) + 1;
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + size);
+        }
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setContentLengthLong(end - start);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        if (ranges) {
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        }
+        String contentDisposition = contentDisposition(filename == null ? name : filename, disposition);
+        if (contentDisposition != null) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        }
+        long limit = resetAfter >= 0 && request <= resets ? resetAfter : Long.MAX_VALUE;
+        try (FileChannel sparseFile = sparse ? FileChannel.open(sparseFile(size), StandardOpenOption.READ) : null) {
+            send(response.getOutputStream(), sparseFile, start, end, rate, limit);
+        }
+    }
+
+    private static String contentDisposition(String name, String disposition) {
+        switch (disposition) {
+            case "plain":
+                return "attachment; filename=" + name;
+            case "quoted":
+                return "attachment; filename=\"" + name + "\"";
+            case "extended":
+                return "attachment; filename*=UTF-8''" + URLEncoder.encode(name, StandardCharsets.UTF_8)
+                        .replace("+", "%20");
+            default:
+                return null;
+        }
+    }
+
+    private static void send(OutputStream out, FileChannel sparseFile, long start, long end, long rate, long limit)
+            throws IOException, InterruptedException {
+        ByteBuffer chunk = ByteBuffer.allocate(ORIGIN_CHUNK_SIZE);
+        long startNanos = System.nanoTime();
+        long position = start;
+        while (position < end) {
+            int length = (int) Math.min(chunk.capacity(), Math.min(end - position, limit - (position - start)));
+            if (length <= 0) {
+                out.flush();
+                return;
+            }
+            chunk.clear().limit(length);
+            if (sparseFile == null) {
+                for (int i = 0; i < length; i++) {
+                    chunk.put(i, (byte) ((position + i) % 251));
+                }
+            } else {
+                sparseFile.read(chunk, position);
+            }
+            out.write(chunk.array(), 0, length);
+            position += length;
+            if (rate > 0) {
+                long aheadNanos = (position - start) * 1_000_000_000 / rate - (System.nanoTime() - startNanos);
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            }
+        }
+    }
+
+    private static synchronized Path sparseFile(long size) throws IOException {
+        Path path = sparseFiles.get(size);
+        if (path == null) {
+            path = Files.createTempFile("sparseMovie", "mkv");
+            path.toFile().deleteOnExit();
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                file.setLength(size);
+            }
+            sparseFiles.put(size, path);
+        }
+        return path;
+    }
+
+    static byte[] patternedContent() {
+        return patternedContent(MOVIE_FILE_SIZE);
+    }
+
+    static byte[] patternedContent(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        return content;
+    }
+
 }
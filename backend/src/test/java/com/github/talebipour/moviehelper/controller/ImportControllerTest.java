@@ -0,0 +1,91 @@
+package com.github.talebipour.moviehelper.controller;
+
+import static org.awaitility.Awaitility.waitAtMost;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.github.talebipour.moviehelper.model.ImportedFile;
+import com.github.talebipour.moviehelper.model.ImportedFile.Type;
+import com.github.talebipour.moviehelper.util.MiniDlna;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+        properties = {"import.watch.paths=incoming", "import.stable.millis=300", "minidlna.reload.command=true",
+                "minidlna.reload.delay.millis=100"})
+class ImportControllerTest {
+
+    @TempDir
+    static Path rootDir;
+
+    private final TestRestTemplate restTemplate;
+    private final MiniDlna miniDlna;
+
+    @Autowired
+    public ImportControllerTest(TestRestTemplate restTemplate, MiniDlna miniDlna) {
+        this.restTemplate = restTemplate;
+        this.miniDlna = miniDlna;
+    }
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) throws IOException {
+        Files.createDirectories(rootDir.resolve("incoming"));
+        registry.add("directory.path", () -> rootDir.toAbsolutePath().toString());
+    }
+
+    @Test
+    public void testMovieIsPairedWithSubtitle() throws Exception {
+        Path movie = rootDir.resolve("incoming/Movie.2020.720p.mkv");
+        // The movie is copied in two parts, it is imported when the copy is done.
+        Files.write(movie, new byte[100_000]);
+        Files.writeString(rootDir.resolve("incoming/Movie.2020.720p.English.srt"), "1\nsubtitle\n");
+        Thread.sleep(100);
+        Files.write(movie, new byte[100_000], StandardOpenOption.APPEND);
+
+        Path subtitle = rootDir.resolve("incoming/Movie.2020.720p.srt");
+        waitAtMost(10, TimeUnit.SECONDS).until(() -> Files.exists(subtitle));
+        assertEquals("1\nsubtitle\n", Files.readString(subtitle));
+        assertFalse(Files.exists(rootDir.resolve("incoming/Movie.2020.720p.English.srt")));
+        waitAtMost(10, TimeUnit.SECONDS).until(() -> miniDlna.getReloadCount() > 0);
+
+        ImportedFile imported = waitAtMost(10, TimeUnit.SECONDS).until(
+                () -> findImport("incoming/Movie.2020.720p.mkv"), file -> file != null);
+        assertEquals(Type.MOVIE, imported.getType());
+        assertNotNull(imported.getHash());
+    }
+
+    @Test
+    public void testNewDirectoryIsWatched() throws IOException {
+        Path season = Files.createDirectories(rootDir.resolve("incoming/Series S01"));
+        Files.write(season.resolve("Series.S01E01.mp4"), new byte[1000]);
+        Files.writeString(season.resolve("subtitle.srt"), "1\nepisode\n");
+
+        Path subtitle = season.resolve("Series.S01E01.srt");
+        waitAtMost(10, TimeUnit.SECONDS).until(() -> Files.exists(subtitle));
+        assertFalse(Files.exists(season.resolve("subtitle.srt")));
+        // Whichever of them is paired first, the movie is recorded with its subtitle.
+        ImportedFile imported = waitAtMost(10, TimeUnit.SECONDS).until(
+                () -> findImport("incoming/Series S01/Series.S01E01.mp4"), file -> file != null);
+        assertEquals(Type.MOVIE, imported.getType());
+        assertEquals("incoming/Series S01/Series.S01E01.srt", imported.getPairedWith());
+    }
+
+    private ImportedFile findImport(String path) {
+        ImportedFile[] imports = restTemplate.getForObject("/imports", ImportedFile[].class);
+        assertNotNull(imports);
+        return Arrays.stream(imports).filter(file -> file.getPath().equals(path)).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.talebipour.moviehelper.controller;
+
+import static com.github.talebipour.moviehelper.controller.FileProviderController.patternedContent;
+import static org.awaitility.Awaitility.waitAtMost;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.talebipour.moviehelper.model.DownloadStatus;
+import com.github.talebipour.moviehelper.model.DownloadStatus.Status;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+        properties = {"downloader.stream.wait.millis=200", "downloader.mirror.chunk.size=500000",
+                      "downloader.progressive.window.chunks=2"})
+class ProgressiveDownloadTest {
+
+    private static final int SIZE = 3_000_000;
+
+    @TempDir
+    static Path rootDir;
+
+    private final TestRestTemplate restTemplate;
+
+    @Autowired
+    public ProgressiveDownloadTest(TestRestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("directory.path", () -> rootDir.toAbsolutePath().toString());
+    }
+
+    @Test
+    public void testStreamWhileDownloading() throws IOException {
+        // Three seconds at one megabyte per second.
+        String url = restTemplate.getRootUri() + "/origin/streamed.mkv?size=" + SIZE + "&rate=1000000";
+        start(url);
+        waitAtMost(1, TimeUnit.MINUTES).until(() -> getStatus(url).getReadableBytes() > 0);
+
+        ResponseEntity<byte[]> head = stream(url, "bytes=0-99999");
+        assertEquals(HttpStatus.PARTIAL_CONTENT, head.getStatusCode());
+        assertEquals("bytes 0-99999/" + SIZE, head.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOf(patternedContent(SIZE), 100_000), head.getBody());
+
+        ResponseEntity<byte[]> tail = stream(url, "bytes=2900000-");
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, tail.getStatusCode());
+        assertEquals("bytes */" + SIZE, tail.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(Status.IN_PROGRESS, getStatus(url).getStatus());
+
+        // The whole file is sent as the download catches up.
+        ResponseEntity<byte[]> whole = stream(url, null);
+        assertEquals(HttpStatus.OK, whole.getStatusCode());
+        assertArrayEquals(patternedContent(SIZE), whole.getBody());
+        awaitCompleted(url);
+        Files.delete(rootDir.resolve("streamed.mkv"));
+    }
+
+    @Test
+    public void testProgressiveMirrors() throws IOException {
+        String url = restTemplate.getRootUri() + "/origin/progressive.mkv?size=" + SIZE + "&rate=2000000";
+        String mirror = restTemplate.getRootUri() + "/origin/progressive-mirror.mkv?size=" + SIZE + "&rate=2000000";
+        assertNotNull(restTemplate.postForObject("/download/file?path=&progressive=true&url={url}&mirror={mirror}",
+                                                 null, DownloadStatus.class, url, mirror));
+        ResponseEntity<byte[]> whole = stream(url, null);
+        assertEquals(HttpStatus.OK, whole.getStatusCode());
+        assertArrayEquals(patternedContent(SIZE), whole.getBody());
+        DownloadStatus status = awaitCompleted(url);
+        assertTrue(status.isProgressive());
+        assertEquals(SIZE, status.getReadableBytes());
+        Files.delete(rootDir.resolve("progressive.mkv"));
+    }
+
+    private void start(String url) {
+        assertNotNull(restTemplate.postForObject("/download/file?path=&progressive=true&url={url}", null,
+                                                 DownloadStatus.class, url));
+    }
+
+    private ResponseEntity<byte[]> stream(String url, String range) {
+        waitAtMost(1, TimeUnit.MINUTES).until(() -> getStatus(url).getFile().getSize() > 0);
+        HttpHeaders headers = new HttpHeaders();
+        if (range != null) {
+            headers.set(HttpHeaders.RANGE, range);
+        }
+        return restTemplate.exchange("/download/stream?url={url}", HttpMethod.GET, new HttpEntity<>(headers),
+                                     byte[].class, url);
+    }
+
+    private DownloadStatus awaitCompleted(String url) {
+        waitAtMost(1, TimeUnit.MINUTES).until(() -> getStatus(url).getStatus() == Status.COMPLETED
+                                                    || getStatus(url).getStatus() == Status.FAILED);
+        DownloadStatus status = getStatus(url);
+        assertEquals(Status.COMPLETED, status.getStatus(), status.getMessage());
+        return status;
+    }
+
+    private DownloadStatus getStatus(String url) {
+        List<DownloadStatus> statuses = restTemplate.exchange("/download/status?url={url}", HttpMethod.GET,
+                                                              HttpEntity.EMPTY,
+                                                              new ParameterizedTypeReference<List<DownloadStatus>>() {},
+                                                              url).getBody();
+        assertNotNull(statuses);
+        assertEquals(1, statuses.size());
+        return statuses.get(0);
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.talebipour.moviehelper.controller;
+
+import static com.github.talebipour.moviehelper.controller.FileProviderController.patternedContent;
+import static org.awaitility.Awaitility.waitAtMost;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import com.github.talebipour.moviehelper.model.DownloadStatus;
+import com.github.talebipour.moviehelper.model.DownloadStatus.Status;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Downloads into a staging directory which are moved into the library when they finish.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+class StagingDownloadTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private final TestRestTemplate restTemplate;
+
+    @Autowired
+    public StagingDownloadTest(TestRestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) throws IOException {
+        Path library = Files.createDirectories(tempDir.resolve("library"));
+        registry.add("directory.path", () -> library.toAbsolutePath().toString());
+        registry.add("downloader.staging.path", () -> tempDir.resolve("staging").toAbsolutePath().toString());
+    }
+
+    @Test
+    public void testDownloadIsMovedToLibrary() throws IOException {
+        Files.writeString(tempDir.resolve("library/staged.mkv"), "existing");
+        String url = restTemplate.getRootUri() + "/origin/staged.mkv?size=2000000";
+        assertNotNull(restTemplate.postForObject("/download/file?path=&url={url}", null, DownloadStatus.class, url));
+        waitAtMost(1, TimeUnit.MINUTES).until(() -> getStatus(url).getStatus() == Status.COMPLETED
+                                                    || getStatus(url).getStatus() == Status.FAILED);
+        DownloadStatus status = getStatus(url);
+        assertEquals(Status.COMPLETED, status.getStatus(), status.getMessage());
+        assertEquals("staged.mkv.2", status.getFile().getName());
+        assertArrayEquals(patternedContent(2_000_000), Files.readAllBytes(tempDir.resolve("library/staged.mkv.2")));
+        try (Stream<Path> staged = Files.list(tempDir.resolve("staging"))) {
+            assertEquals(0, staged.count());
+        }
+    }
+
+    private DownloadStatus getStatus(String url) {
+        List<DownloadStatus> statuses = restTemplate.exchange("/download/status?url={url}", HttpMethod.GET,
+                                                              HttpEntity.EMPTY,
+                                                              new ParameterizedTypeReference<List<DownloadStatus>>() {},
+                                                              url).getBody();
+        assertNotNull(statuses);
+        assertEquals(1, statuses.size());
+        return statuses.get(0);
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.talebipour.moviehelper.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.talebipour.moviehelper.model.RequestTrace;
+import com.github.talebipour.moviehelper.model.TraceSpan;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+        properties = {"tracing.slow.millis=0", "minidlna.reload.command=true"})
+class TraceControllerTest {
+
+    @TempDir
+    static Path rootDir;
+
+    private final TestRestTemplate restTemplate;
+
+    @Autowired
+    public TraceControllerTest(TestRestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("directory.path", () -> rootDir.toAbsolutePath().toString());
+    }
+
+    @Test
+    public void testSpansOfSlowRequests() throws IOException {
+        Path season = Files.createDirectories(rootDir.resolve("season"));
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(season.resolve("episode" + i + ".mkv"), "episode");
+        }
+        restTemplate.getForObject("/files?path=season", String.class);
+        restTemplate.postForObject("/reload-minidlna", null, String.class);
+
+        Map<String, RequestTrace> traces = getSlowRequests();
+        RequestTrace listing = traces.get("GET /files?path=season");
+        assertNotNull(listing);
+        assertEquals(200, listing.getStatus());
+        Map<String, TraceSpan> spans = listing.getSpans().stream()
+                .collect(Collectors.toMap(TraceSpan::getName, Function.identity()));
+        assertEquals(1, spans.get("fs.list").getCount());
+        assertEquals(season.toString(), spans.get("fs.list").getSlowestDetail());
+        // Stat of the directory for its ETag and of each episode.
+        assertEquals(4, spans.get("fs.stat").getCount());
+
+        RequestTrace reload = traces.get("POST /reload-minidlna");
+        assertNotNull(reload);
+        assertEquals("process", reload.getSpans().get(0).getName());
+        assertTrue(reload.getDurationMillis() >= 0);
+    }
+
+    private Map<String, RequestTrace> getSlowRequests() {
+        RequestTrace[] traces = restTemplate.getForObject("/traces/slow", RequestTrace[].class);
+        assertNotNull(traces);
+        return Arrays.stream(traces).collect(Collectors.toMap(trace -> trace.getMethod() + " " + trace.getPath(),
+                                                              Function.identity(), (latest, earlier) -> latest));
+    }
+}
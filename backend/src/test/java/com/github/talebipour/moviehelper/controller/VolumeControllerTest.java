@@ -0,0 +1,77 @@
+package com.github.talebipour.moviehelper.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.talebipour.moviehelper.model.FileModel;
+import com.github.talebipour.moviehelper.model.FileModel.FileType;
+import com.github.talebipour.moviehelper.model.VolumeIoStatistics;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+class VolumeControllerTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private final TestRestTemplate restTemplate;
+
+    @Autowired
+    public VolumeControllerTest(TestRestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) throws IOException {
+        Path media = Files.createDirectories(tempDir.resolve("media"));
+        Path usb = Files.createDirectories(tempDir.resolve("usb-disk"));
+        registry.add("directory.path", () -> media.toAbsolutePath().toString());
+        registry.add("directory.roots", () -> "usb=" + usb.toAbsolutePath());
+    }
+
+    @Test
+    public void testNamedRoots() throws IOException {
+        Files.createFile(tempDir.resolve("media/local.mkv"));
+        Files.createDirectories(tempDir.resolve("usb-disk/series"));
+        Files.createFile(tempDir.resolve("usb-disk/series/movie.mkv"));
+        Files.createFile(tempDir.resolve("usb-disk/series/subtitle.srt"));
+
+        assertEquals(List.of(new FileModel("usb", "usb", FileType.DIRECTORY, 0),
+                             new FileModel("local.mkv", "local.mkv", FileType.REGULAR, 0)), listFiles(""));
+        assertEquals(List.of(new FileModel("series", "usb/series", FileType.DIRECTORY, 0)), listFiles("usb"));
+
+        ResponseEntity<String> response = restTemplate.postForEntity(
+                "/set-subtitle/single?subtitle=usb/series/subtitle.srt&movie=usb/series/movie.mkv", null, String.class);
+        assertTrue(response.getStatusCode().is2xxSuccessful());
+        assertTrue(Files.isRegularFile(tempDir.resolve("usb-disk/series/movie.srt")));
+
+        List<VolumeIoStatistics> statistics = restTemplate.exchange(
+                "/volumes/io", HttpMethod.GET, HttpEntity.EMPTY,
+                new ParameterizedTypeReference<List<VolumeIoStatistics>>() {}).getBody();
+        assertNotNull(statistics);
+        assertEquals(2, statistics.size());
+        assertEquals("usb", statistics.get(1).getName());
+        assertTrue(statistics.get(1).getCompleted() > 0);
+    }
+
+    private List<FileModel> listFiles(String path) {
+        return restTemplate.exchange("/files?path={path}", HttpMethod.GET, HttpEntity.EMPTY,
+                                     new ParameterizedTypeReference<List<FileModel>>() {}, path).getBody();
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.talebipour.moviehelper.load;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Latencies of the requests of one endpoint, percentiles are computed from all recorded latencies.
+ */
+class LatencyStatistics {
+
+    private final String endpoint;
+    private long[] latencies = new long[1024];
+    private int count;
+    private int errors;
+
+    LatencyStatistics(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    synchronized void record(long nanos, boolean error) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+        if (error) {
+            errors++;
+        }
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+
+    synchronized int getErrors() {
+        return errors;
+    }
+
+    /**
+     * Latency in milliseconds which the given percent of requests did not exceed.
+     */
+    synchronized double percentile(double percent) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100 * count) - 1;
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    /**
+     * Add the statistics as {@code <endpoint>.<name>} properties, which is the format of a baseline file too.
+     */
+    void store(Properties properties, double seconds) {
+        properties.setProperty(endpoint + ".requests", String.valueOf(getCount()));
+        properties.setProperty(endpoint + ".errors", String.valueOf(getErrors()));
+        properties.setProperty(endpoint + ".throughput", format(getCount() / seconds));
+        properties.setProperty(endpoint + ".p50", format(percentile(50)));
+        properties.setProperty(endpoint + ".p95", format(percentile(95)));
+        properties.setProperty(endpoint + ".p99", format(percentile(99)));
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.talebipour.moviehelper.load;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Drives concurrent clients against a generated media tree and reports latency percentiles and throughput of every
+ * endpoint. It is excluded from {@code test} and run by {@code ./gradlew :backend:loadTest}, settings are system
+ * properties:
+ * <ul>
+ * <li>{@code load.clients}, {@code load.duration} and {@code load.warmup} seconds</li>
+ * <li>{@code load.mix}, weights of endpoints, e.g. {@code files:70,status:25,subtitle:5}</li>
+ * <li>{@code load.directories} and {@code load.files}, size of the media tree</li>
+ * <li>{@code load.report}, where the results are written</li>
+ * <li>{@code load.baseline}, results of an earlier run which p95, p99 and throughput may not be worse than by
+ * {@code load.tolerance} percent</li>
+ * </ul>
+ * Reports and baselines have the same format, so a report is made the baseline by copying it.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = "logging.level.com.github.talebipour=WARN")
+class LoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final long MOVIE_SIZE = 700L * 1024 * 1024;
+
+    @TempDir
+    static Path rootDir;
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final AtomicLong subtitleCounter = new AtomicLong();
+
+    @DynamicPropertySource
+    static void registerProperties(DynamicPropertyRegistry registry) {
+        registry.add("directory.path", () -> rootDir.toAbsolutePath().toString());
+    }
+
+    @Test
+    void testLoad() throws Exception {
+        int clients = Integer.getInteger("load.clients", 50);
+        long durationSeconds = Long.getLong("load.duration", 30);
+        long warmupSeconds = Long.getLong("load.warmup", 5);
+        int directories = Integer.getInteger("load.directories", 20);
+        int files = Integer.getInteger("load.files", 25);
+        Map<String, Integer> mix = parseMix(System.getProperty("load.mix", "files:70,status:25,subtitle:5"));
+        generateTree(directories, files);
+        logger.warn("Running {} clients for {} s with mix {} on {} directories of {} movies.", clients,
+                    durationSeconds, mix, directories, files);
+
+        Map<String, LatencyStatistics> statistics = new LinkedHashMap<>();
+        mix.keySet().forEach(endpoint -> statistics.put(endpoint, new LatencyStatistics(endpoint)));
+        List<String> weighted = new ArrayList<>();
+        mix.forEach((endpoint, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(endpoint);
+            }
+        });
+        long measureStart = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        int movies = directories * files;
+        for (int i = 0; i < clients; i++) {
+            int client = i;
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    String endpoint = weighted.get(random.nextInt(weighted.size()));
+                    // Clients set subtitles of distinct movies, so they do not conflict with each other.
+                    int movie = endpoint.equals("subtitle")
+                            ? (client + clients * random.nextInt(Math.max(1, movies / clients))) % movies
+                            : random.nextInt(movies);
+                    long start = System.nanoTime();
+                    boolean error = !send(endpoint, movie / files, movie % files);
+                    long finish = System.nanoTime();
+                    if (start >= measureStart) {
+                        statistics.get(endpoint).record(finish - start, error);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(warmupSeconds + durationSeconds + 60, TimeUnit.SECONDS));
+
+        Properties report = new Properties();
+        for (LatencyStatistics endpoint : statistics.values()) {
+            endpoint.store(report, durationSeconds);
+            logger.warn("{}: {} requests, {} errors, {}/s, p50 {} ms, p95 {} ms, p99 {} ms", endpoint.getEndpoint(),
+                        endpoint.getCount(), endpoint.getErrors(), report.get(endpoint.getEndpoint() + ".throughput"),
+                        report.get(endpoint.getEndpoint() + ".p50"), report.get(endpoint.getEndpoint() + ".p95"),
+                        report.get(endpoint.getEndpoint() + ".p99"));
+        }
+        Path reportPath = Paths.get(System.getProperty("load.report", "build/load-report.properties"));
+        Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(reportPath)) {
+            report.store(writer, "clients=" + clients + " duration=" + durationSeconds + " mix=" + mix);
+        }
+        logger.warn("Load report is written to {}", reportPath.toAbsolutePath());
+
+        for (LatencyStatistics endpoint : statistics.values()) {
+            assertEquals(0, endpoint.getErrors(), endpoint.getEndpoint() + " had errors.");
+        }
+        String baseline = System.getProperty("load.baseline");
+        if (baseline != null && !baseline.isEmpty()) {
+            List<String> regressions = compare(report, Paths.get(baseline),
+                                               Double.parseDouble(System.getProperty("load.tolerance", "20")));
+            assertTrue(regressions.isEmpty(), "Regressions against " + baseline + ": " + regressions);
+        }
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (!List.of("files", "status", "subtitle").contains(parts[0])) {
+                throw new IllegalArgumentException("Unknown endpoint " + parts[0]);
+            }
+            weights.put(parts[0], parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+        }
+        return weights;
+    }
+
+    /**
+     * Create directories of sparse movie files with a subtitle each, like a season of a series.
+     */
+    private static void generateTree(int directories, int files) throws IOException {
+        for (int d = 0; d < directories; d++) {
+            Path dir = Files.createDirectories(rootDir.resolve(directory(d)));
+            for (int f = 0; f < files; f++) {
+                try (RandomAccessFile movie = new RandomAccessFile(dir.resolve(movie(f)).toFile(), "rw")) {
+                    movie.setLength(MOVIE_SIZE);
+                }
+                Files.writeString(dir.resolve(String.format("Series.S%02dE%02d.srt", d, f)), subtitle(f));
+            }
+        }
+    }
+
+    private static String directory(int index) {
+        return String.format("Series S%02d", index);
+    }
+
+    private static String movie(int index) {
+        return String.format("Series.E%02d.720p.mkv", index);
+    }
+
+    private static String subtitle(long index) {
+        return index + "\n00:00:01,000 --> 00:00:02,000\nSubtitle " + index + "\n\n";
+    }
+
+    /**
+     * Send one request of the endpoint.
+     *
+     * @return whether the response is successful
+     */
+    private boolean send(String endpoint, int directory, int file) {
+        String dir = directory(directory);
+        HttpRequest request;
+        try {
+            switch (endpoint) {
+                case "files":
+                    request = HttpRequest.newBuilder(uri("/files?path=" + encode(dir))).build();
+                    break;
+                case "status":
+                    request = HttpRequest.newBuilder(uri("/download/status")).build();
+                    break;
+                default:
+                    // Every request moves another new subtitle to the movie, the previous one becomes a backup.
+                    String subtitle = dir + "/new-" + subtitleCounter.incrementAndGet() + ".srt";
+                    Files.writeString(rootDir.resolve(subtitle), subtitle(file));
+                    request = HttpRequest.newBuilder(uri("/set-subtitle/single?subtitle=" + encode(subtitle)
+                                                         + "&movie=" + encode(dir + "/" + movie(file))))
+                            .POST(HttpRequest.BodyPublishers.noBody())
+                            .build();
+            }
+            int status = client.send(request, BodyHandlers.discarding()).statusCode();
+            return status >= 200 && status < 300;
+        } catch (IOException e) {
+            logger.warn("{} request failed: {}", endpoint, e.toString());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private URI uri(String pathAndQuery) {
+        return URI.create("http://localhost:" + port + pathAndQuery);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /**
+     * Compare latencies and throughput with the baseline.
+     *
+     * @return description of every value which is worse than the baseline by more than the tolerance
+     */
+    private static List<String> compare(Properties report, Path baselinePath, double tolerancePercent)
+            throws IOException {
+        Properties baseline = new Properties();
+        try (Reader reader = Files.newBufferedReader(baselinePath)) {
+            baseline.load(reader);
+        }
+        double factor = 1 + tolerancePercent / 100;
+        List<String> regressions = new ArrayList<>();
+        for (String key : baseline.stringPropertyNames()) {
+            String current = report.getProperty(key);
+            if (current == null) {
+                continue;
+            }
+            double expected = Double.parseDouble(baseline.getProperty(key));
+            double actual = Double.parseDouble(current);
+            boolean regressed = key.endsWith(".throughput") ? actual * factor < expected
+                    : (key.endsWith(".p95") || key.endsWith(".p99")) && actual > expected * factor;
+            if (regressed) {
+                regressions.add(key + " " + actual + " (baseline " + expected + ")");
+            }
+        }
+        return regressions;
+    }
+}
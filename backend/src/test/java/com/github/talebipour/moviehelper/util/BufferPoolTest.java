@@ -0,0 +1,68 @@
+package com.github.talebipour.moviehelper.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.talebipour.moviehelper.model.BufferPoolStatistics;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class BufferPoolTest {
+
+    @Test
+    void testStatistics() {
+        BufferPool pool = new BufferPool(5000, 1, false, 0, 0, 0);
+        assertEquals(8192, pool.getBufferSize());
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        assertTrue(first.isDirect());
+        assertEquals(8192, first.capacity());
+        pool.release(first);
+        pool.release(second);
+        assertSame(first, pool.acquire());
+
+        BufferPoolStatistics statistics = pool.getStatistics();
+        assertEquals(3, statistics.getAcquires());
+        assertEquals(1, statistics.getHits());
+        assertEquals(33, statistics.getHitRatePercent());
+        assertEquals(2 * (8192 + BufferPool.ALIGNMENT), statistics.getAllocatedBytes());
+        assertEquals(8192, statistics.getReusedBytes());
+        assertEquals(1, statistics.getDiscards());
+        assertEquals(0, statistics.getPooled());
+    }
+
+    @Test
+    void testAdaptiveSizing() {
+        BufferPool pool = new BufferPool(65536, 4, true, 16384, 1048576, 100);
+        ByteBuffer old = pool.acquire();
+        // 40 MB/s fills 4 MB in 100 ms, more than the maximum size.
+        pool.recordThroughput(40_000_000, TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1048576, pool.getBufferSize());
+        pool.release(old);
+        assertEquals(0, pool.getStatistics().getPooled());
+        assertNotSame(old, pool.acquire());
+        assertEquals(1048576, pool.acquire().capacity());
+
+        // Transfers shorter than a few buffers are ignored.
+        pool.recordThroughput(100_000, TimeUnit.SECONDS.toNanos(10));
+        assertEquals(1048576, pool.getBufferSize());
+        for (int i = 0; i < 20; i++) {
+            pool.recordThroughput(5_000_000, TimeUnit.SECONDS.toNanos(50));
+        }
+        assertEquals(16384, pool.getBufferSize());
+        assertTrue(pool.getStatistics().getResizes() > 2);
+        assertTrue(pool.getStatistics().isAdaptive());
+    }
+
+    @Test
+    void testFixedSize() {
+        BufferPool pool = new BufferPool(65536, 4, false, 16384, 1048576, 100);
+        pool.recordThroughput(40_000_000, TimeUnit.SECONDS.toNanos(1));
+        assertEquals(65536, pool.getBufferSize());
+        assertFalse(pool.getStatistics().isAdaptive());
+    }
+}
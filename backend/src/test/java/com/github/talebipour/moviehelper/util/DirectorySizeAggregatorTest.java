@@ -0,0 +1,108 @@
+package com.github.talebipour.moviehelper.util;
+
+import static org.awaitility.Awaitility.waitAtMost;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DirectorySizeAggregatorTest {
+
+    @TempDir
+    Path rootDir;
+
+    private DirectorySizeAggregator aggregator;
+
+    @BeforeEach
+    void setup() {
+        aggregator = new DirectorySizeAggregator(new FileUtil(rootDir.toString(), "", 1, 10), 2, 0);
+    }
+
+    @AfterEach
+    void shutdown() {
+        aggregator.shutdown();
+    }
+
+    @Test
+    void testScanAndIncrementalChanges() throws IOException {
+        Path season = Files.createDirectories(rootDir.resolve("series/season1"));
+        Files.write(season.resolve("e1.mkv"), new byte[100]);
+        Files.write(season.resolve("e2.mkv"), new byte[200]);
+        Files.write(rootDir.resolve("series/poster.jpg"), new byte[10]);
+        aggregator.scan();
+
+        assertEquals(300, aggregator.getSize(season, null).getAsLong());
+        assertEquals(310, aggregator.getSize(rootDir.resolve("series"), null).getAsLong());
+        assertEquals(310, aggregator.getSize(rootDir, null).getAsLong());
+
+        aggregator.fileChanged(season.resolve("e3.mkv"), 50);
+        assertEquals(350, aggregator.getSize(season, null).getAsLong());
+        assertEquals(360, aggregator.getSize(rootDir, null).getAsLong());
+
+        aggregator.fileMoved(season.resolve("e3.mkv"), rootDir.resolve("e3.mkv"), 50);
+        assertEquals(300, aggregator.getSize(season, null).getAsLong());
+        assertEquals(360, aggregator.getSize(rootDir, null).getAsLong());
+
+        aggregator.directoryRemoved(season);
+        assertFalse(aggregator.getSize(season, null).isPresent());
+        assertEquals(60, aggregator.getSize(rootDir, null).getAsLong());
+    }
+
+    @Test
+    void testRescanOnModifiedTime() throws IOException {
+        Path dir = Files.createDirectories(rootDir.resolve("dir"));
+        aggregator.scan();
+        assertEquals(0, aggregator.getSize(dir, null).getAsLong());
+
+        Files.write(dir.resolve("external.mkv"), new byte[1000]);
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        aggregator.getSize(dir, Files.getLastModifiedTime(dir));
+        waitAtMost(10, TimeUnit.SECONDS).untilAsserted(() -> {
+            assertEquals(1000, aggregator.getSize(dir, null).getAsLong());
+            assertEquals(1000, aggregator.getSize(rootDir, null).getAsLong());
+        });
+    }
+
+    @Test
+    void testRescanDropsRemovedDirectories() throws IOException {
+        Path dir = Files.createDirectories(rootDir.resolve("dir"));
+        Path season = Files.createDirectories(dir.resolve("season/extras"));
+        Files.write(season.resolve("e1.mkv"), new byte[100]);
+        aggregator.scan();
+        assertEquals(100, aggregator.getSize(dir, null).getAsLong());
+
+        Files.delete(season.resolve("e1.mkv"));
+        Files.delete(season);
+        Files.delete(season.getParent());
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        aggregator.getSize(dir, Files.getLastModifiedTime(dir));
+        waitAtMost(10, TimeUnit.SECONDS).untilAsserted(() -> {
+            assertEquals(0, aggregator.getSize(dir, null).getAsLong());
+            assertFalse(aggregator.getSize(season.getParent(), null).isPresent());
+            assertFalse(aggregator.getSize(season, null).isPresent());
+        });
+    }
+
+    @Test
+    void testScanFindsFilesGrownInPlace() throws IOException {
+        Path season = Files.createDirectories(rootDir.resolve("series/season1"));
+        Path episode = Files.write(season.resolve("e1.mkv"), new byte[100]);
+        aggregator.scan();
+        FileTime modifiedTime = Files.getLastModifiedTime(season);
+
+        Files.write(episode, new byte[50], StandardOpenOption.APPEND);
+        assertEquals(modifiedTime, Files.getLastModifiedTime(season));
+        aggregator.scan();
+        assertEquals(150, aggregator.getSize(season, null).getAsLong());
+        assertEquals(150, aggregator.getSize(rootDir, null).getAsLong());
+    }
+}
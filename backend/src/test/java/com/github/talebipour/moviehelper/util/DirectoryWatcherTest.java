@@ -0,0 +1,59 @@
+package com.github.talebipour.moviehelper.util;
+
+import static org.awaitility.Awaitility.waitAtMost;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.github.talebipour.moviehelper.model.FileChange;
+import com.github.talebipour.moviehelper.model.FileChange.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DirectoryWatcherTest {
+
+    @TempDir
+    Path rootDir;
+
+    @Test
+    public void testBatchIsMergedAndShared() throws Exception {
+        FileUtil fileUtil = new FileUtil(rootDir.toString(), "", 1, 10);
+        Path movies = Files.createDirectories(rootDir.resolve("movies"));
+        // Batches are only flushed by the test.
+        DirectoryWatcher watcher = new DirectoryWatcher(fileUtil, TimeUnit.HOURS.toMillis(1), 2, 16);
+        watcher.start();
+        try {
+            List<List<FileChange>> first = new CopyOnWriteArrayList<>();
+            List<List<FileChange>> second = new CopyOnWriteArrayList<>();
+            DirectoryWatcher.Subscription firstSubscription = watcher.subscribe(movies, first::add);
+            DirectoryWatcher.Subscription secondSubscription = watcher.subscribe(movies, second::add);
+            assertEquals(1, watcher.getWatchedDirectories());
+
+            Files.writeString(movies.resolve("movie.mkv"), "movie");
+            Files.writeString(movies.resolve("movie.mkv"), "more movie");
+            Files.writeString(movies.resolve("temp.srt"), "subtitle");
+            Files.delete(movies.resolve("temp.srt"));
+            Thread.sleep(500);
+            watcher.flush();
+
+            waitAtMost(10, TimeUnit.SECONDS).until(() -> first.size() == 1 && second.size() == 1);
+            assertEquals(List.of(Type.CREATED),
+                         first.get(0).stream().map(FileChange::getType).collect(Collectors.toList()));
+            assertEquals("movies/movie.mkv", first.get(0).get(0).getPath());
+            assertSame(first.get(0), second.get(0));
+
+            firstSubscription.close();
+            assertEquals(1, watcher.getWatchedDirectories());
+            secondSubscription.close();
+            assertEquals(0, watcher.getWatchedDirectories());
+        } finally {
+            watcher.shutdown();
+            fileUtil.shutdown();
+        }
+    }
+}
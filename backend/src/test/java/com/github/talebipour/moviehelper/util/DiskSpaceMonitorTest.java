@@ -0,0 +1,37 @@
+package com.github.talebipour.moviehelper.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.talebipour.moviehelper.exception.InsufficientStorageException;
+import com.github.talebipour.moviehelper.model.VolumeUsage;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiskSpaceMonitorTest {
+
+    @TempDir
+    Path rootDir;
+
+    @Test
+    void testReserve() {
+        // Usable space is fixed, so other processes which write into the same file system do not matter.
+        DiskSpaceMonitor monitor = new DiskSpaceMonitor(new FileUtil(rootDir.toString(), "", 1, 10), 60_000,
+                                                        1_000_000, store -> 2_000_000);
+        AtomicLong written = new AtomicLong();
+        monitor.reserve("first", rootDir, 600_000, written::get);
+        assertThrows(InsufficientStorageException.class, () -> monitor.reserve("second", rootDir, 600_000, () -> 0));
+
+        List<VolumeUsage> volumes = monitor.getVolumes();
+        assertEquals(1, volumes.size());
+        assertEquals(600_000, volumes.get(0).getReservedBytes());
+        written.set(200_000);
+        assertEquals(400_000, monitor.getVolumes().get(0).getReservedBytes());
+
+        monitor.release("first");
+        monitor.reserve("second", rootDir, 600_000, () -> 0);
+    }
+}
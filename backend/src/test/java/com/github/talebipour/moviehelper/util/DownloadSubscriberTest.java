@@ -0,0 +1,116 @@
+package com.github.talebipour.moviehelper.util;
+
+import static org.awaitility.Awaitility.waitAtMost;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.talebipour.moviehelper.model.DownloadStatus;
+import com.github.talebipour.moviehelper.model.FileModel;
+import com.github.talebipour.moviehelper.model.FileModel.FileType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DownloadSubscriberTest {
+
+    private static final int SIZE = 100_000;
+
+    @TempDir
+    Path tempDir;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final BufferPool bufferPool = new BufferPool(4096, 4, false, 4096, 4096, 250);
+    private final TestSubscription subscription = new TestSubscription();
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPreallocatedFileIsTruncatedOnCompletion() throws Exception {
+        Path path = tempDir.resolve("movie.mkv");
+        DownloadTask task = task(path);
+        DownloadSubscriber subscriber = new DownloadSubscriber(task, 0, bufferPool, true, FsyncPolicy.BATCH, 8192);
+        subscriber.onSubscribe(subscription);
+        waitAtMost(10, TimeUnit.SECONDS).until(() -> subscription.requested.get() == 1);
+        assertEquals(SIZE, Files.size(path));
+        assertTrue(Arrays.equals(new byte[SIZE], Files.readAllBytes(path)));
+
+        // The body is shorter than the probed size.
+        byte[] content = content(10_000);
+        subscriber.onNext(List.of(ByteBuffer.wrap(content)));
+        waitAtMost(10, TimeUnit.SECONDS).until(() -> subscription.requested.get() == 2);
+        subscriber.onComplete();
+
+        assertEquals(path, subscriber.getBody().toCompletableFuture().get(10, TimeUnit.SECONDS));
+        assertArrayEquals(content, Files.readAllBytes(path));
+        assertEquals(10_000, task.getStatus().getDownloadedBytes());
+    }
+
+    @Test
+    public void testPreallocatedFileIsTruncatedOnFailure() throws Exception {
+        Path path = tempDir.resolve("movie.mkv");
+        DownloadTask task = task(path);
+        DownloadSubscriber subscriber = new DownloadSubscriber(task, 0, bufferPool, true, FsyncPolicy.NONE, 0);
+        subscriber.onSubscribe(subscription);
+        waitAtMost(10, TimeUnit.SECONDS).until(() -> subscription.requested.get() == 1);
+
+        byte[] content = content(10_000);
+        subscriber.onNext(List.of(ByteBuffer.wrap(content)));
+        waitAtMost(10, TimeUnit.SECONDS).until(() -> subscription.requested.get() == 2);
+        subscriber.onError(new IOException("Connection reset"));
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                                            () -> subscriber.getBody().toCompletableFuture().get(10, TimeUnit.SECONDS));
+        assertEquals("Connection reset", e.getCause().getMessage());
+        // Only full buffers are written, the rest of the preallocated file is cut off.
+        assertEquals(8192, task.getStatus().getDownloadedBytes());
+        assertArrayEquals(Arrays.copyOf(content, 8192), Files.readAllBytes(path));
+    }
+
+    private DownloadTask task(Path path) {
+        DownloadStatus status = new DownloadStatus();
+        status.setFile(new FileModel(path.getFileName().toString(), path.getFileName().toString(), FileType.REGULAR,
+                                     SIZE));
+        DownloadTask task = new DownloadTask(status);
+        task.setPath(path);
+        task.setIoExecutor(executor);
+        return task;
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i % 251 + 1);
+        }
+        return content;
+    }
+
+    private static class TestSubscription implements Flow.Subscription {
+        private final AtomicLong requested = new AtomicLong();
+
+        @Override
+        public void request(long n) {
+            requested.addAndGet(n);
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
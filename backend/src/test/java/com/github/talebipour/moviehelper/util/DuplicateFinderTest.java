@@ -0,0 +1,120 @@
+package com.github.talebipour.moviehelper.util;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.talebipour.moviehelper.model.DuplicateGroup;
+import com.github.talebipour.moviehelper.model.DuplicateReport;
+import com.github.talebipour.moviehelper.model.DuplicateReport.Status;
+import com.github.talebipour.moviehelper.model.Job;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DuplicateFinderTest {
+
+    @TempDir
+    Path rootDir;
+
+    @Test
+    void testFindDuplicates() throws IOException {
+        byte[] content = new byte[300_000];
+        Arrays.fill(content, (byte) 7);
+        Files.write(rootDir.resolve("movie.mkv"), content);
+        Files.createDirectories(rootDir.resolve("other"));
+        Files.write(rootDir.resolve("other/movie.mkv"), content);
+        Files.createLink(rootDir.resolve("other/link.mkv"), rootDir.resolve("movie.mkv"));
+        // Same size and same head and tail, only a full digest can tell it apart.
+        content[150_000] = 1;
+        Files.write(rootDir.resolve("movie.mkv.2"), content);
+        Files.write(rootDir.resolve("small"), new byte[10]);
+        Files.write(rootDir.resolve("small2"), new byte[10]);
+
+        DuplicateFinder finder = new DuplicateFinder(new FileUtil(rootDir.toString(), "", 1, 10),
+                                                     new BufferPool(65536, 1, false, 0, 0, 0), null, 100, 100_000);
+        DuplicateReport report = new DuplicateReport(false, 0);
+        finder.run(report, new Job("id", "duplicates", 0));
+        assertEquals(Status.COMPLETED, report.getStatus());
+        assertEquals(1, report.getGroups().size());
+        assertEquals(3, report.getGroups().get(0).getPaths().size());
+        assertFalse(report.getGroups().get(0).isVerified());
+
+        report = new DuplicateReport(true, 0);
+        finder.run(report, new Job("id", "duplicates", 0));
+        List<DuplicateGroup> groups = report.getGroups();
+        assertEquals(1, groups.size());
+        assertTrue(groups.get(0).isVerified());
+        assertEquals(2, groups.get(0).getPaths().size());
+        assertEquals(300_000, report.getReclaimableBytes());
+    }
+
+    @Test
+    void testRestartAfterQueuedSearchIsCancelled() throws InterruptedException {
+        JobManager jobManager = new JobManager(1, 10, 3600000);
+        FileUtil fileUtil = new FileUtil(rootDir.toString(), "", 1, 10);
+        try {
+            DuplicateFinder finder = new DuplicateFinder(fileUtil, new BufferPool(65536, 1, false, 0, 0, 0),
+                                                         jobManager, 100, 100_000);
+            CountDownLatch release = new CountDownLatch(1);
+            jobManager.submit("blocking", job -> release.await(10, TimeUnit.SECONDS));
+
+            DuplicateReport queued = finder.start(false);
+            jobManager.cancel(queued.getJobId());
+            assertEquals(Status.CANCELLED, finder.getReport().orElseThrow().getStatus());
+
+            DuplicateReport restarted = finder.start(false);
+            assertNotEquals(queued.getJobId(), restarted.getJobId());
+            release.countDown();
+            await().atMost(10, TimeUnit.SECONDS).until(() -> restarted.getStatus() == Status.COMPLETED);
+            assertEquals(Status.CANCELLED, queued.getStatus());
+        } finally {
+            jobManager.shutdown();
+            fileUtil.shutdown();
+        }
+    }
+
+    @Test
+    void testBusyVolumeIsRetried() throws Exception {
+        byte[] content = new byte[1000];
+        Files.write(rootDir.resolve("movie.mkv"), content);
+        Files.write(rootDir.resolve("copy.mkv"), content);
+        FileUtil fileUtil = new FileUtil(rootDir.toString(), "", 1, 1);
+        try {
+            DuplicateFinder finder = new DuplicateFinder(fileUtil, new BufferPool(65536, 1, false, 0, 0, 0), null,
+                                                         100, 100_000);
+            // One task runs and one is queued, so the queue of the volume is full.
+            CountDownLatch release = new CountDownLatch(1);
+            Volume volume = fileUtil.getVolume(rootDir);
+            volume.submit(() -> {
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            volume.submit(() -> null);
+            DuplicateReport report = new DuplicateReport(true, 0);
+            CompletableFuture<Void> search = CompletableFuture.runAsync(
+                    () -> finder.run(report, new Job("id", "duplicates", 0)));
+            Thread.sleep(200);
+            assertFalse(search.isDone());
+            release.countDown();
+            search.get(10, TimeUnit.SECONDS);
+            assertEquals(Status.COMPLETED, report.getStatus());
+            assertEquals(1, report.getGroups().size());
+            assertEquals(2, report.getGroups().get(0).getPaths().size());
+        } finally {
+            fileUtil.shutdown();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.talebipour.moviehelper.util;
+
+import static org.awaitility.Awaitility.waitAtMost;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.talebipour.moviehelper.model.FileOperation;
+import com.github.talebipour.moviehelper.model.FileOperationBatch;
+import com.github.talebipour.moviehelper.util.FileOperationEngine.FailurePolicy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileOperationEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRollBackRecoveryUndoesOnlyDoneOperations() throws Exception {
+        Path library = Files.createDirectories(tempDir.resolve("library"));
+        Path state = tempDir.resolve("state");
+        Files.writeString(library.resolve("b.srt"), "moved");
+        Files.writeString(library.resolve("c.srt"), "not moved");
+        Files.writeString(library.resolve("d.srt"), "existing");
+        // The application stopped after moving a.srt to b.srt, c.srt to d.srt never started.
+        Files.createDirectories(state.resolve("journal"));
+        Files.write(state.resolve("journal/batch.journal"), List.of("ROLL_BACK",
+                                                                    "OP\tMOVE\ta.srt\tb.srt",
+                                                                    "OP\tMOVE\tc.srt\td.srt",
+                                                                    "DONE\t0"));
+        FileUtil fileUtil = new FileUtil(library.toString(), "", 1, 10);
+        try {
+            FileOperationEngine engine = new FileOperationEngine(fileUtil, new DirectorySizeAggregator(fileUtil, 1, 0),
+                                                                 state.toString(), 0);
+            engine.recover();
+            assertEquals("moved", Files.readString(library.resolve("a.srt")));
+            assertFalse(Files.exists(library.resolve("b.srt")));
+            assertEquals("not moved", Files.readString(library.resolve("c.srt")));
+            assertEquals("existing", Files.readString(library.resolve("d.srt")));
+            assertFalse(Files.exists(state.resolve("journal/batch.journal")));
+        } finally {
+            fileUtil.shutdown();
+        }
+    }
+
+    @Test
+    public void testFinishedBatchesAreEvicted() throws Exception {
+        Path library = Files.createDirectories(tempDir.resolve("library"));
+        Files.writeString(library.resolve("a.srt"), "subtitle");
+        FileUtil fileUtil = new FileUtil(library.toString(), "", 1, 10);
+        try {
+            FileOperationEngine engine = new FileOperationEngine(fileUtil, new DirectorySizeAggregator(fileUtil, 1, 0),
+                                                                 tempDir.resolve("state").toString(), 0);
+            FileOperationBatch batch = engine.submit(List.of(FileOperation.move("a.srt", "b.srt")),
+                                                     FailurePolicy.CONTINUE);
+            assertTrue(engine.getBatch(batch.getId()).isPresent());
+            waitAtMost(10, TimeUnit.SECONDS).until(() -> engine.getBatch(batch.getId()).isEmpty());
+            assertEquals(FileOperationBatch.Status.COMPLETED, batch.getStatus());
+
+            // Batches which are waited for are not kept.
+            FileOperationBatch executed = engine.execute(List.of(FileOperation.move("b.srt", "c.srt")),
+                                                         FailurePolicy.CONTINUE);
+            assertTrue(engine.getBatch(executed.getId()).isEmpty());
+        } finally {
+            fileUtil.shutdown();
+        }
+    }
+}
@@ -2,10 +2,21 @@ package com.github.talebipour.moviehelper.util;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.github.talebipour.moviehelper.exception.ServiceUnavailableException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class FileUtilTest {
 
+    @TempDir
+    Path tempDir;
+
     @Test
     public void testExtensionAndFilename() {
         String filename = "movie.1080.mp4";
@@ -13,4 +24,62 @@ class FileUtilTest {
         assertEquals("movie.1080", FileUtil.filenameWithoutExtension(filename));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testCopyPermissions() throws IOException {
+        Path movie = Files.createFile(tempDir.resolve("movie.mkv"));
+        Files.setPosixFilePermissions(movie, PosixFilePermissions.fromString("rw-r--r--"));
+        Path subtitle = Files.createTempFile(tempDir, ".extract-", ".srt");
+        FileUtil.copyPermissions(movie, subtitle);
+        assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(subtitle)));
+    }
+
+    @Test
+    public void testNamedRoots() throws IOException {
+        Path media = Files.createDirectories(tempDir.resolve("media"));
+        Path usb = Files.createDirectories(tempDir.resolve("usb-disk"));
+        FileUtil fileUtil = new FileUtil(media.toString(), "usb=" + usb, 1, 1);
+        try {
+            assertEquals(media.resolve("a/movie.mkv"), fileUtil.resolvePath("a/movie.mkv"));
+            assertEquals(usb, fileUtil.resolvePath("usb"));
+            assertEquals(usb.resolve("a/movie.mkv"), fileUtil.resolvePath("usb/a/movie.mkv"));
+            assertEquals("a/movie.mkv", fileUtil.relativize(media.resolve("a/movie.mkv")));
+            assertEquals("usb/a/movie.mkv", fileUtil.relativize(usb.resolve("a/movie.mkv")));
+            assertEquals("usb", fileUtil.relativize(usb));
+            assertEquals("", fileUtil.getVolume(media.resolve("a")).getName());
+            assertEquals("usb", fileUtil.getVolume(usb.resolve("a")).getName());
+            assertEquals(2, fileUtil.getVolumes().size());
+        } finally {
+            fileUtil.shutdown();
+        }
+    }
+
+    @Test
+    public void testSlowVolumeDoesNotBlockOthers() throws Exception {
+        Path media = Files.createDirectories(tempDir.resolve("media"));
+        Path usb = Files.createDirectories(tempDir.resolve("usb-disk"));
+        FileUtil fileUtil = new FileUtil(media.toString(), "usb=" + usb, 1, 1);
+        try {
+            Volume slow = fileUtil.getVolume(usb);
+            CountDownLatch stalled = new CountDownLatch(1);
+            CompletableFuture<Object> running = slow.submit(() -> {
+                try {
+                    stalled.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+            // One task runs and one waits in the queue, the next one is rejected.
+            CompletableFuture<Boolean> queued = slow.submit(() -> true);
+            assertThrows(ServiceUnavailableException.class, () -> slow.call(() -> Files.isDirectory(usb)));
+            assertEquals(1, slow.getStatistics().getRejected());
+
+            assertTrue(fileUtil.getVolume(media).call(() -> Files.isDirectory(media)));
+            stalled.countDown();
+            running.join();
+            assertTrue(queued.join());
+        } finally {
+            fileUtil.shutdown();
+        }
+    }
+}
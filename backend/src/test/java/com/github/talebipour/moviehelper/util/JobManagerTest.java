@@ -0,0 +1,49 @@
+package com.github.talebipour.moviehelper.util;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.talebipour.moviehelper.exception.ServiceUnavailableException;
+import com.github.talebipour.moviehelper.model.Job;
+import com.github.talebipour.moviehelper.model.Job.Status;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class JobManagerTest {
+
+    @Test
+    void testCancel() throws InterruptedException {
+        JobManager manager = new JobManager(1, 1, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        Job running = manager.submit("test", job -> {
+            job.setTotal(1000);
+            started.countDown();
+            while (true) {
+                job.checkCancelled();
+                job.addDone(1);
+                Thread.sleep(1);
+            }
+        });
+        Job queued = manager.submit("test", job -> "never");
+        assertThrows(ServiceUnavailableException.class, () -> manager.submit("test", job -> "rejected"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        manager.cancel(queued.getId());
+        assertEquals(Status.CANCELLED, queued.getStatus());
+        manager.cancel(running.getId());
+        await().atMost(10, TimeUnit.SECONDS).until(() -> running.getStatus() == Status.CANCELLED);
+        assertTrue(running.getDone() > 0);
+
+        Job completed = manager.submit("test", job -> "result");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> completed.getStatus() == Status.COMPLETED);
+        assertEquals("result", completed.getResult());
+        // Finished jobs expire after TTL, which is zero here.
+        await().atMost(10, TimeUnit.SECONDS).until(() -> manager.getJob(completed.getId()).isEmpty());
+        assertFalse(manager.getJobs().contains(running));
+        manager.shutdown();
+    }
+}
@@ -0,0 +1,137 @@
+package com.github.talebipour.moviehelper.util;
+
+import static org.awaitility.Awaitility.waitAtMost;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.talebipour.moviehelper.model.FileModel;
+import com.github.talebipour.moviehelper.model.FileModel.FileType;
+import com.github.talebipour.moviehelper.util.LibraryCache.Listing;
+import com.github.talebipour.moviehelper.util.LibrarySnapshot.Directory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LibraryCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testListingIsServedOnceAfterRestart() throws Exception {
+        Path library = Files.createDirectories(tempDir.resolve("library"));
+        Path movies = Files.createDirectories(library.resolve("movies"));
+        Files.write(movies.resolve("Movie.mkv"), new byte[10]);
+        Files.write(Files.createDirectories(movies.resolve("Series")).resolve("Episode.mp4"), new byte[5]);
+        String snapshotFile = tempDir.resolve("state/library.snapshot").toString();
+        FileUtil fileUtil = new FileUtil(library.toString(), "", 1, 10);
+        try {
+            DirectorySizeAggregator aggregator = new DirectorySizeAggregator(fileUtil, 1, 0);
+            aggregator.scan();
+            LibraryCache cache = new LibraryCache(fileUtil, aggregator, snapshotFile, 0);
+            long modifiedTime = Files.getLastModifiedTime(movies).toMillis();
+            cache.listed(movies, modifiedTime, List.of(model("movies/Series", FileType.DIRECTORY, 5),
+                                                       model("movies/Movie.mkv", FileType.REGULAR, 10)));
+            cache.shutdown();
+            aggregator.shutdown();
+
+            // The movie is deleted while the application is down.
+            Files.delete(movies.resolve("Movie.mkv"));
+            Files.setLastModifiedTime(movies, FileTime.fromMillis(modifiedTime + 10_000));
+
+            DirectorySizeAggregator restarted = new DirectorySizeAggregator(fileUtil, 1, 0);
+            LibraryCache restartedCache = new LibraryCache(fileUtil, restarted, snapshotFile, 0);
+            assertEquals(15, restarted.getSize(library, null).orElseThrow());
+            Optional<Listing> listing = restartedCache.getListing(movies);
+            assertTrue(listing.isPresent());
+            assertEquals(modifiedTime, listing.get().getModifiedTime());
+            assertEquals(List.of("movies/Series", "movies/Movie.mkv"),
+                         listing.get().getFiles().stream().map(FileModel::getPath).collect(Collectors.toList()));
+            assertEquals(5, listing.get().getFiles().get(0).getSize());
+            assertTrue(restartedCache.getListing(movies).isEmpty());
+
+            // The outdated listing is left out of the next snapshot, the sizes are kept.
+            waitAtMost(10, TimeUnit.SECONDS).until(() -> {
+                restartedCache.write();
+                Directory directory = LibrarySnapshot.map(Path.of(snapshotFile)).find("movies").orElseThrow();
+                return !directory.hasListing() && directory.getTotalSize() == 15;
+            });
+            restartedCache.shutdown();
+            restarted.shutdown();
+        } finally {
+            fileUtil.shutdown();
+        }
+    }
+
+    @Test
+    public void testRestoredSizesAreScannedAfterStartup() throws Exception {
+        Path library = Files.createDirectories(tempDir.resolve("library"));
+        Path season = Files.createDirectories(library.resolve("series/season1"));
+        Path episode = Files.write(season.resolve("Episode.mkv"), new byte[10]);
+        String snapshotFile = tempDir.resolve("library.snapshot").toString();
+        FileUtil fileUtil = new FileUtil(library.toString(), "", 1, 10);
+        try {
+            DirectorySizeAggregator aggregator = new DirectorySizeAggregator(fileUtil, 1, 0);
+            aggregator.scan();
+            LibraryCache cache = new LibraryCache(fileUtil, aggregator, snapshotFile, 0);
+            cache.shutdown();
+            aggregator.shutdown();
+
+            // The episode grows in place while the application is down, no directory is modified.
+            Files.write(episode, new byte[90], StandardOpenOption.APPEND);
+
+            DirectorySizeAggregator restarted = new DirectorySizeAggregator(fileUtil, 1, 0);
+            LibraryCache restartedCache = new LibraryCache(fileUtil, restarted, snapshotFile, 0);
+            assertEquals(10, restarted.getSize(library, null).orElseThrow());
+            restarted.scanInBackground();
+            waitAtMost(10, TimeUnit.SECONDS).until(() -> restarted.getSize(library, null).orElseThrow() == 100);
+            assertEquals(100, restarted.getSize(season, null).orElseThrow());
+            restartedCache.shutdown();
+            assertEquals(100, LibrarySnapshot.map(Path.of(snapshotFile)).find("series").orElseThrow()
+                    .getTotalSize());
+            restarted.shutdown();
+        } finally {
+            fileUtil.shutdown();
+        }
+    }
+
+    @Test
+    public void testSnapshotOfOtherRootsIsIgnored() throws Exception {
+        Path library = Files.createDirectories(tempDir.resolve("library"));
+        Path other = Files.createDirectories(tempDir.resolve("other"));
+        String snapshotFile = tempDir.resolve("library.snapshot").toString();
+        FileUtil fileUtil = new FileUtil(library.toString(), "", 1, 10);
+        FileUtil otherFileUtil = new FileUtil(other.toString(), "", 1, 10);
+        try {
+            DirectorySizeAggregator aggregator = new DirectorySizeAggregator(fileUtil, 1, 0);
+            LibraryCache cache = new LibraryCache(fileUtil, aggregator, snapshotFile, 0);
+            cache.listed(library, 0, List.of(model("Movie.mkv", FileType.REGULAR, 10)));
+            cache.shutdown();
+            aggregator.shutdown();
+
+            DirectorySizeAggregator otherAggregator = new DirectorySizeAggregator(otherFileUtil, 1, 0);
+            LibraryCache otherCache = new LibraryCache(otherFileUtil, otherAggregator, snapshotFile, 0);
+            assertTrue(otherCache.getListing(other).isEmpty());
+            otherAggregator.shutdown();
+        } finally {
+            fileUtil.shutdown();
+            otherFileUtil.shutdown();
+        }
+    }
+
+    private static FileModel model(String path, FileType type, long size) {
+        FileModel model = new FileModel();
+        model.setName(Path.of(path).getFileName().toString());
+        model.setPath(path);
+        model.setType(type);
+        model.setSize(size);
+        return model;
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.talebipour.moviehelper.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StagingMoverTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCopy() throws IOException {
+        byte[] content = new byte[3_000_000];
+        new Random(1).nextBytes(content);
+        Path source = Files.write(tempDir.resolve("source"), content);
+        Path target = tempDir.resolve("target");
+        StagingMover.copy(source, target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    void testMoveToUniqueName() throws IOException {
+        Path library = Files.createDirectories(tempDir.resolve("library"));
+        Path staging = tempDir.resolve("staging");
+        FileUtil fileUtil = new FileUtil(library.toString(), "", 1, 1);
+        StagingMover mover = new StagingMover(fileUtil, staging.toString(), 1, 1, 1);
+        try {
+            Files.writeString(library.resolve("movie.mkv"), "existing");
+            Path staged = mover.createStagingFile("movie.mkv");
+            Files.writeString(staged, "downloaded");
+
+            Path moved = mover.move(staged, library, "movie.mkv").join();
+            assertEquals(library.resolve("movie.mkv.2"), moved);
+            assertEquals("downloaded", Files.readString(moved));
+            assertEquals("existing", Files.readString(library.resolve("movie.mkv")));
+            assertFalse(Files.exists(staged));
+            // Readable like any other new file, not only by the owner like a temporary file.
+            assertEquals(Files.getPosixFilePermissions(library.resolve("movie.mkv")),
+                         Files.getPosixFilePermissions(moved));
+        } finally {
+            mover.shutdown();
+            fileUtil.shutdown();
+        }
+    }
+
+    @Test
+    void testMoveFromOtherFileStore() throws IOException {
+        Path shm = Path.of("/dev/shm");
+        assumeTrue(Files.isDirectory(shm) && !Files.getFileStore(shm).equals(Files.getFileStore(tempDir)));
+        Path library = Files.createDirectories(tempDir.resolve("library"));
+        Path staging = Files.createTempDirectory(shm, "staging-");
+        FileUtil fileUtil = new FileUtil(library.toString(), "", 1, 1);
+        StagingMover mover = new StagingMover(fileUtil, staging.toString(), 1, 1, 1);
+        try {
+            Files.writeString(library.resolve("movie.mkv"), "existing");
+            Path staged = mover.createStagingFile("movie.mkv");
+            Files.writeString(staged, "downloaded");
+
+            Path moved = mover.move(staged, library, "movie.mkv").join();
+            assertEquals(library.resolve("movie.mkv.2"), moved);
+            assertEquals("downloaded", Files.readString(moved));
+            assertFalse(Files.exists(staged));
+            try (Stream<Path> files = Files.list(library)) {
+                assertEquals(2, files.count());
+            }
+        } finally {
+            mover.shutdown();
+            fileUtil.shutdown();
+            try (Stream<Path> files = Files.walk(staging)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.talebipour.moviehelper.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.github.talebipour.moviehelper.model.GarbageCollectionReport;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SubtitleStoreTest {
+
+    @TempDir
+    Path rootDir;
+
+    @Test
+    void testStore() throws IOException {
+        SubtitleStore store = new SubtitleStore(new BufferPool(4096, 2, false, 0, 0, 0),
+                                                rootDir.resolve("store").toString());
+        byte[] content = "1\n00:00:01,000 --> 00:00:02,000\nHello\n".getBytes();
+        Path first = rootDir.resolve("first.srt");
+        Path second = rootDir.resolve("second.srt");
+        assertTrue(store.write(first, ByteBuffer.wrap(content)));
+        assertFalse(store.write(first, ByteBuffer.wrap(content)));
+        assertTrue(store.write(second, ByteBuffer.wrap(content)));
+        assertTrue(Files.isSameFile(first, second));
+
+        Path backup = rootDir.resolve("first.srt.1");
+        Files.write(backup, content);
+        store.intern(backup);
+        assertTrue(Files.isSameFile(first, backup));
+        assertEquals(new String(content), Files.readString(backup));
+
+        Path other = rootDir.resolve("other.srt");
+        Files.write(other, "other".getBytes());
+        store.intern(other);
+        Files.delete(other);
+        Files.delete(first);
+        GarbageCollectionReport report = store.collectGarbage();
+        assertEquals(2, report.getBlobs());
+        assertEquals(1, report.getDeletedBlobs());
+        assertEquals(5, report.getFreedBytes());
+        assertTrue(Files.isSameFile(second, backup));
+    }
+
+    @Test
+    void testContentLargerThanBuffer() throws IOException {
+        SubtitleStore store = new SubtitleStore(new BufferPool(4096, 2, false, 0, 0, 0),
+                                                rootDir.resolve("store").toString());
+        byte[] content = new byte[10000];
+        Arrays.fill(content, (byte) 'a');
+        Path file = rootDir.resolve("large.srt");
+        assertTrue(store.write(file, ByteBuffer.wrap(content)));
+        assertFalse(store.write(file, ByteBuffer.wrap(content)));
+        content[9999] = 'b';
+        assertTrue(store.write(file, ByteBuffer.wrap(content)));
+        assertArrayEquals(content, Files.readAllBytes(file));
+    }
+
+    @Test
+    void testLinkedSubtitleIsCopiedOnWrite() throws IOException {
+        SubtitleStore store = new SubtitleStore(new BufferPool(4096, 2, false, 0, 0, 0),
+                                                rootDir.resolve("store").toString());
+        byte[] content = "1\n00:00:01,000 --> 00:00:02,000\nHello\n".getBytes();
+        Path first = rootDir.resolve("first.srt");
+        Path backup = rootDir.resolve("first.srt.1");
+        assertTrue(store.write(first, ByteBuffer.wrap(content)));
+        assertTrue(store.write(backup, ByteBuffer.wrap(content)));
+        assertTrue(Files.isSameFile(first, backup));
+
+        assertTrue(store.write(first, ByteBuffer.wrap("changed".getBytes())));
+        assertEquals("changed", Files.readString(first));
+        assertEquals(new String(content), Files.readString(backup));
+        assertFalse(Files.isSameFile(first, backup));
+    }
+
+    @Test
+    void testStoreOnOtherFileStore() throws IOException {
+        Path shm = Path.of("/dev/shm");
+        assumeTrue(Files.isDirectory(shm) && !Files.getFileStore(shm).equals(Files.getFileStore(rootDir)));
+        Path storeDir = Files.createTempDirectory(shm, "subtitle-store-");
+        try {
+            SubtitleStore store = new SubtitleStore(new BufferPool(4096, 2, false, 0, 0, 0), storeDir.toString());
+            Path file = rootDir.resolve("movie.srt");
+            assertTrue(store.write(file, ByteBuffer.wrap("subtitle".getBytes())));
+            assertEquals("subtitle", Files.readString(file));
+            Path backup = Files.writeString(rootDir.resolve("movie.srt.1"), "subtitle");
+            store.intern(backup);
+            // No blob is written when it can not be linked.
+            try (Stream<Path> files = Files.walk(storeDir)) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(storeDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.talebipour.moviehelper.util.media;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds small Matroska files for tests.
+ */
+class EbmlWriter {
+
+    private EbmlWriter() {
+    }
+
+    static byte[] element(long id, byte[]... children) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (byte[] child : children) {
+            data.writeBytes(child);
+        }
+        return element(id, data.toByteArray());
+    }
+
+    static byte[] element(long id, byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int idLength = 4;
+        while (idLength > 1 && (id >>> (8 * (idLength - 1))) == 0) {
+            idLength--;
+        }
+        for (int i = idLength - 1; i >= 0; i--) {
+            out.write((int) (id >>> (8 * i)));
+        }
+        // Always use 8 byte sizes to keep the writer simple.
+        out.write(0x01);
+        for (int i = 6; i >= 0; i--) {
+            out.write((int) ((long) data.length >>> (8 * i)));
+        }
+        out.writeBytes(data);
+        return out.toByteArray();
+    }
+
+    static byte[] uint(long id, long value) {
+        return element(id, ByteBuffer.allocate(8).putLong(value).array());
+    }
+
+    static byte[] string(long id, String value) {
+        return element(id, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static byte[] floating(long id, double value) {
+        return element(id, ByteBuffer.allocate(8).putDouble(value).array());
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.talebipour.moviehelper.util.media;
+
+import static com.github.talebipour.moviehelper.util.media.EbmlWriter.concat;
+import static com.github.talebipour.moviehelper.util.media.EbmlWriter.element;
+import static com.github.talebipour.moviehelper.util.media.EbmlWriter.uint;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.talebipour.moviehelper.exception.InvalidInputException;
+import com.github.talebipour.moviehelper.util.BufferPool;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MatroskaSubtitleExtractorTest {
+
+    @TempDir
+    Path dir;
+
+    private final MatroskaSubtitleExtractor extractor =
+            new MatroskaSubtitleExtractor(new BufferPool(65536, 1, false, 0, 0, 0));
+
+    @Test
+    void testExtract() throws IOException {
+        Path movie = dir.resolve("movie.mkv");
+        Files.write(movie, MediaMetadataParserTest.sampleMatroska(
+                element(Matroska.CLUSTER, uint(Matroska.TIMECODE, 0),
+                        element(Matroska.SIMPLE_BLOCK, block(1, 0, new byte[10_000])),
+                        element(Matroska.BLOCK_GROUP, element(Matroska.BLOCK, block(2, 1500, "Hello".getBytes())),
+                                uint(Matroska.BLOCK_DURATION, 2000))),
+                element(Matroska.CLUSTER, uint(Matroska.TIMECODE, 3_661_000),
+                        element(Matroska.SIMPLE_BLOCK, block(1, 0, new byte[10_000])),
+                        element(Matroska.BLOCK_GROUP,
+                                element(Matroska.BLOCK, block(2, -1, "Line 1\r\nLine 2".getBytes())),
+                                uint(Matroska.BLOCK_DURATION, 1000)))));
+        Path output = dir.resolve("movie.srt");
+
+        assertEquals(2, extractor.extract(movie, null, output));
+        assertEquals("1\n00:00:01,500 --> 00:00:03,500\nHello\n\n" +
+                     "2\n01:01:00,999 --> 01:01:01,999\nLine 1\nLine 2\n\n", Files.readString(output));
+        assertThrows(InvalidInputException.class, () -> extractor.extract(movie, 1L, output));
+    }
+
+    private static byte[] block(int track, int timecode, byte[] data) {
+        return concat(new byte[]{(byte) (0x80 | track)}, ByteBuffer.allocate(2).putShort((short) timecode).array(),
+                      new byte[]{0}, data);
+    }
+}
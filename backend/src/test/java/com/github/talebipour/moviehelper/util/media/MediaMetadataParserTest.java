@@ -0,0 +1,78 @@
+package com.github.talebipour.moviehelper.util.media;
+
+import static com.github.talebipour.moviehelper.util.media.EbmlWriter.concat;
+import static com.github.talebipour.moviehelper.util.media.EbmlWriter.element;
+import static com.github.talebipour.moviehelper.util.media.EbmlWriter.floating;
+import static com.github.talebipour.moviehelper.util.media.EbmlWriter.string;
+import static com.github.talebipour.moviehelper.util.media.EbmlWriter.uint;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.github.talebipour.moviehelper.model.MediaMetadata;
+import com.github.talebipour.moviehelper.model.MediaMetadata.Container;
+import com.github.talebipour.moviehelper.model.MediaMetadata.TrackType;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MediaMetadataParserTest {
+
+    @TempDir
+    Path dir;
+
+    private final MediaMetadataParser parser = new MediaMetadataParser(100);
+
+    @Test
+    void testMp4() throws IOException, URISyntaxException {
+        Path file = Paths.get(getClass().getResource("/sample-mp4-file-small.mp4").toURI());
+        MediaMetadata metadata = parser.getMetadata(file).orElseThrow();
+        assertEquals(Container.MP4, metadata.getContainer());
+        assertEquals(30.8, metadata.getDurationSeconds(), 0.01);
+        assertEquals(320, metadata.getWidth());
+        assertEquals(240, metadata.getHeight());
+        assertEquals(TrackType.VIDEO, metadata.getTracks().get(0).getType());
+        assertEquals("avc1", metadata.getTracks().get(0).getCodec());
+    }
+
+    @Test
+    void testMatroska() throws IOException {
+        Path file = dir.resolve("movie.mkv");
+        Files.write(file, sampleMatroska());
+        MediaMetadata metadata = parser.getMetadata(file).orElseThrow();
+        assertEquals(Container.MATROSKA, metadata.getContainer());
+        assertEquals(5400, metadata.getDurationSeconds(), 0.001);
+        assertEquals(1920, metadata.getWidth());
+        assertEquals(1080, metadata.getHeight());
+        assertEquals(2, metadata.getTracks().size());
+        assertEquals("V_MPEGH/ISO/HEVC", metadata.getTracks().get(0).getCodec());
+        assertEquals(TrackType.SUBTITLE, metadata.getTracks().get(1).getType());
+        assertEquals("per", metadata.getTracks().get(1).getLanguage());
+        assertSame(metadata, parser.getMetadata(file).orElseThrow());
+
+        Files.write(file, new byte[100]);
+        assertFalse(parser.getMetadata(file).isPresent());
+    }
+
+    static byte[] sampleMatroska(byte[]... clusters) {
+        return concat(element(Matroska.EBML, string(0x4282, "matroska")),
+                      element(Matroska.SEGMENT, concat(
+                              element(Matroska.INFO, uint(Matroska.TIMECODE_SCALE, 1_000_000),
+                                      floating(Matroska.DURATION, 5_400_000)),
+                              element(Matroska.TRACKS,
+                                      element(Matroska.TRACK_ENTRY, uint(Matroska.TRACK_NUMBER, 1),
+                                              uint(Matroska.TRACK_TYPE, Matroska.TRACK_TYPE_VIDEO),
+                                              string(Matroska.CODEC_ID, "V_MPEGH/ISO/HEVC"),
+                                              element(Matroska.VIDEO, uint(Matroska.PIXEL_WIDTH, 1920),
+                                                      uint(Matroska.PIXEL_HEIGHT, 1080))),
+                                      element(Matroska.TRACK_ENTRY, uint(Matroska.TRACK_NUMBER, 2),
+                                              uint(Matroska.TRACK_TYPE, Matroska.TRACK_TYPE_SUBTITLE),
+                                              string(Matroska.CODEC_ID, "S_TEXT/UTF8"),
+                                              string(Matroska.LANGUAGE, "per"))),
+                              concat(clusters))));
+    }
+}
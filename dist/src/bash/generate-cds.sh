@@ -0,0 +1,33 @@
+#!/bin/bash
+# Generate an AppCDS archive of the classes loaded until the first request is served. The archive is only valid for
+# the JVM which creates it, so it is generated on the box which runs the service.
+
+set -e
+
+INSTALL_DIR=${INSTALL_DIR:-/opt/movie-helper}
+PORT=${PORT:-18080}
+CLASS_LIST="$INSTALL_DIR/classes.lst"
+ARCHIVE="$INSTALL_DIR/app.jsa"
+
+source "$INSTALL_DIR/jvm.env"
+
+rm -f "$CLASS_LIST" "$ARCHIVE"
+/usr/bin/java -Xshare:off -XX:DumpLoadedClassList="$CLASS_LIST" -cp "$CLASSPATH" "$MAIN_CLASS" \
+  --spring.config.additional-location="$INSTALL_DIR/config.properties" --spring.profiles.active=fast-startup \
+  --server.port="$PORT" > /dev/null &
+PID=$!
+trap 'kill $PID 2> /dev/null' EXIT
+
+for _ in $(seq 600); do
+  if curl -sf -o /dev/null "http://localhost:$PORT/files"; then
+    break
+  fi
+  sleep 0.5
+done
+kill $PID
+wait $PID || true
+trap - EXIT
+
+/usr/bin/java -Xshare:dump -XX:SharedClassListFile="$CLASS_LIST" -XX:SharedArchiveFile="$ARCHIVE" \
+  -cp "$CLASSPATH" > /dev/null
+echo "Generated $ARCHIVE"
@@ -8,13 +8,27 @@ function print_usage {
 
 function install {
   mkdir -p /opt/movie-helper
-  cp movie-helper.jar /opt/movie-helper/
+  cp movie-helper.jar movie-helper-classes.jar generate-cds.sh startup-benchmark.sh /opt/movie-helper/
   echo "directory.path=$1" > /opt/movie-helper/config.properties
+  write_classpath
+  INSTALL_DIR=/opt/movie-helper /opt/movie-helper/generate-cds.sh || echo "AppCDS archive is not generated."
   cp movie-helper.service /lib/systemd/system/
   systemctl daemon-reload
 }
 
 
+# Classes are loaded from the plain jars, class data sharing can not archive classes of nested jars.
+function write_classpath {
+  rm -rf /opt/movie-helper/app
+  unzip -q /opt/movie-helper/movie-helper.jar "BOOT-INF/lib/*" "META-INF/MANIFEST.MF" -d /opt/movie-helper/app
+  local classpath main_class
+  classpath=/opt/movie-helper/movie-helper-classes.jar$(find /opt/movie-helper/app/BOOT-INF/lib -name "*.jar" \
+    | sort | sed "s/^/:/" | tr -d "\n")
+  main_class=$(sed -n "s/^Start-Class: *//p" /opt/movie-helper/app/META-INF/MANIFEST.MF | tr -d "\r")
+  printf "CLASSPATH=%s\nMAIN_CLASS=%s\n" "$classpath" "$main_class" > /opt/movie-helper/jvm.env
+}
+
+
 if [[ $# -ne 1 ]]; then
   print_usage
   exit 1
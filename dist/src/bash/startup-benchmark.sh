@@ -0,0 +1,47 @@
+#!/bin/bash
+# Measure time from starting the JVM until /files responds, running the packaged jar as is and running the exploded
+# classes with the fast-startup profile and the AppCDS archive.
+#   startup-benchmark.sh [RUNS]
+
+INSTALL_DIR=${INSTALL_DIR:-/opt/movie-helper}
+PORT=${PORT:-18080}
+RUNS=${1:-3}
+
+source "$INSTALL_DIR/jvm.env"
+
+function time_to_first_request {
+  local start end pid
+  start=$(date +%s%N)
+  /usr/bin/java "$@" --spring.config.additional-location="$INSTALL_DIR/config.properties" \
+    --server.port="$PORT" > /dev/null 2>&1 &
+  pid=$!
+  until curl -sf -o /dev/null "http://localhost:$PORT/files"; do
+    if ! kill -0 $pid 2> /dev/null; then
+      echo "failed"
+      return
+    fi
+    sleep 0.05
+  done
+  end=$(date +%s%N)
+  kill $pid
+  wait $pid 2> /dev/null
+  echo $(((end - start) / 1000000))
+}
+
+function benchmark {
+  local name=$1 total=0 result
+  shift
+  for run in $(seq "$RUNS"); do
+    result=$(time_to_first_request "$@")
+    echo "$name run $run: $result ms"
+    if [[ $result == failed ]]; then
+      return
+    fi
+    total=$((total + result))
+  done
+  echo "$name average time to first request: $((total / RUNS)) ms"
+}
+
+benchmark default -jar "$INSTALL_DIR/movie-helper.jar"
+benchmark fast-startup -Xshare:auto -XX:SharedArchiveFile="$INSTALL_DIR/app.jsa" -cp "$CLASSPATH" "$MAIN_CLASS" \
+  --spring.profiles.active=fast-startup